@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.benchmarks;
+
+import org.jmxdatamart.Extractor.Attribute;
+import org.jmxdatamart.Extractor.Bean2DB;
+import org.jmxdatamart.Extractor.BeanSample;
+import org.jmxdatamart.Extractor.MBeanData;
+import org.jmxdatamart.Extractor.SampleLayout;
+import org.jmxdatamart.Extractor.SampleRecord;
+import org.jmxdatamart.common.DBException;
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.HypersqlHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the values of a bean to an HSQL statistics database, one row at a
+ * time and a poll's worth of rows in one transaction. The batched benchmark
+ * reports the time of a whole batch of batchSize rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Bean2DBBenchmark {
+  private static final String TABLE = "Memory";
+  private static final int COLUMNS = 12;
+
+  @Param({"10", "100"})
+  public int batchSize;
+
+  private final HypersqlHandler hsql = new HypersqlHandler();
+  private File directory;
+  private Connection conn;
+  private Bean2DB bd;
+  private MBeanData beanData;
+  private Map<Attribute, Object> values;
+  private SampleRecord record;
+  private List<BeanSample> samples;
+
+  @Setup
+  public void setUp() throws IOException, SQLException, DBException {
+    directory = File.createTempFile("Bean2DBBenchmark", "");
+    directory.delete();
+    directory.mkdir();
+
+    Properties props = new Properties();
+    props.put("username", "sa");
+    props.put("password", "whatever");
+    hsql.loadDriver(hsql.getDriver());
+    conn = hsql.connectDatabase(directory.getPath() + File.separator + "Extractor", props);
+
+    beanData = new MBeanData("java.lang:type=Memory", TABLE, new ArrayList<Attribute>(), true);
+    values = new HashMap<Attribute, Object>();
+    record = new SampleRecord(new SampleLayout());
+    for (int i = 0; i < COLUMNS - 2; ++i) {
+      values.put(new Attribute(null, "Long" + i, DataType.LONG), (long) i * 1000000);
+      record.put("Long" + i, DataType.LONG, (long) i * 1000000);
+    }
+    values.put(new Attribute(null, "Load", DataType.DOUBLE), 0.75);
+    record.put("Load", DataType.DOUBLE, 0.75);
+    values.put(new Attribute(null, "Name", DataType.STRING), "HotSpot");
+    record.put("Name", DataType.STRING, "HotSpot");
+
+    samples = new ArrayList<BeanSample>(batchSize);
+    for (int i = 0; i < batchSize; ++i) {
+      samples.add(new BeanSample(TABLE, values, System.currentTimeMillis()));
+    }
+
+    bd = new Bean2DB();
+    // Create the table and its columns before measuring
+    bd.export2DB(conn, beanData, values);
+  }
+
+  @TearDown(Level.Iteration)
+  public void deleteRows() throws SQLException {
+    Statement st = conn.createStatement();
+    try {
+      st.executeUpdate("delete from " + TABLE);
+    } finally {
+      st.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    bd.closeStatements();
+    hsql.shutdownDatabase(conn);
+    HypersqlHandler.releaseDatabaseResource(null, null, null, conn);
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Benchmark
+  public void singleRow() throws SQLException, DBException {
+    bd.export2DB(conn, beanData, values);
+  }
+
+  @Benchmark
+  public void singleRecord() throws SQLException, DBException {
+    bd.export2DB(conn, TABLE, record, System.currentTimeMillis());
+  }
+
+  @Benchmark
+  public void batched() throws SQLException, DBException {
+    bd.export2DB(conn, samples);
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.benchmarks;
+
+import org.jmxdatamart.Extractor.Attribute;
+import org.jmxdatamart.Extractor.Bean2DB;
+import org.jmxdatamart.Extractor.BeanSample;
+import org.jmxdatamart.Loader.DB2DB;
+import org.jmxdatamart.Loader.Setting;
+import org.jmxdatamart.common.DBException;
+import org.jmxdatamart.common.DBHandler;
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.HypersqlHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading an extractor database with one table into an HSQL data mart.
+ * Every invocation loads it into a new in-memory data mart, so that the
+ * data mart does not grow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DB2DBBenchmark {
+  @Param({"1000"})
+  public int rows;
+
+  @Param({"1", "1000"})
+  public int batchSize;
+
+  private File directory;
+  private File sources;
+  private int dataMarts;
+  private String dataMartName;
+  private DB2DB db2db;
+
+  @Setup
+  public void setUp() throws IOException, SQLException, DBException {
+    directory = File.createTempFile("DB2DBBenchmark", "");
+    directory.delete();
+    sources = new File(directory, "sources");
+    sources.mkdirs();
+    String sourceName = sources.getPath() + File.separator + "Extractor20130101000000";
+
+    Properties props = new Properties();
+    props.put("username", "sa");
+    props.put("password", "whatever");
+    HypersqlHandler hsql = new HypersqlHandler();
+    hsql.loadDriver(hsql.getDriver());
+
+    Connection extractorConnection = hsql.connectDatabase(sourceName, props);
+    Map<Attribute, Object> values = new HashMap<Attribute, Object>();
+    values.put(new Attribute(null, "used", DataType.LONG), 123456789L);
+    values.put(new Attribute(null, "committed", DataType.LONG), 987654321L);
+    values.put(new Attribute(null, "load", DataType.DOUBLE), 0.75);
+    values.put(new Attribute(null, "name", DataType.STRING), "HotSpot");
+    List<BeanSample> samples = new ArrayList<BeanSample>(rows);
+    for (int i = 0; i < rows; ++i) {
+      samples.add(new BeanSample("Memory", values, i * 1000L));
+    }
+    Bean2DB bd = new Bean2DB();
+    bd.export2DB(extractorConnection, samples);
+    bd.closeStatements();
+    hsql.shutdownDatabase(extractorConnection);
+    DBHandler.releaseDatabaseResource(null, null, null, extractorConnection);
+  }
+
+  @Setup(Level.Invocation)
+  public void newDataMart() throws IOException {
+    dataMartName = "mem:DB2DBBenchmark" + ++dataMarts;
+    File ini = new File(directory, "loader.ini");
+    Writer writer = new FileWriter(ini);
+    try {
+      writer.write("Source.type = Hsqldb\n"
+              + "Source.user = sa\n"
+              + "Source.password = whatever\n"
+              + "Target.type = Hsqldb\n"
+              + "Target.databasename = " + dataMartName + "\n"
+              + "Target.user = sa\n"
+              + "Target.password = whatever\n"
+              + "Load.batchSize = " + batchSize + "\n");
+    } finally {
+      writer.close();
+    }
+    db2db = new DB2DB(new Setting(ini.getPath()), sources);
+  }
+
+  @TearDown(Level.Invocation)
+  public void dropDataMart() throws SQLException {
+    Connection conn = DriverManager.getConnection("jdbc:hsqldb:" + dataMartName, "sa", "whatever");
+    new HypersqlHandler().shutdownDatabase(conn);
+    DBHandler.releaseDatabaseResource(null, null, null, conn);
+  }
+
+  @TearDown
+  public void tearDown() {
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Benchmark
+  public void loadData() throws SQLException, DBException {
+    db2db.loadData();
+  }
+}
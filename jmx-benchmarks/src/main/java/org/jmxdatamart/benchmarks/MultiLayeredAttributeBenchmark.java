@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.benchmarks;
+
+import org.jmxdatamart.Extractor.Attribute;
+import org.jmxdatamart.Extractor.MXBean.MultiLayeredAttribute;
+import org.jmxdatamart.Extractor.MXBean.MXNameParser;
+import org.jmxdatamart.Extractor.SampleLayout;
+import org.jmxdatamart.Extractor.SampleRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walking attribute paths through the open data of MXBeans, and parsing them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiLayeredAttributeBenchmark {
+  private MultiLayeredAttribute mla;
+  private ObjectName gc;
+  private ObjectName car;
+  private ObjectName random;
+  private Attribute lastGcInfo;
+  private Attribute lastGcUsed;
+  private Attribute carMap;
+  private Attribute randomValues;
+  private SampleRecord record;
+
+  @Setup
+  public void setUp() throws JMException {
+    MBeanServer mbs = TestServerFixture.register();
+    mla = new MultiLayeredAttribute(mbs);
+    gc = TestServerFixture.collectedGarbageCollector();
+    car = new ObjectName(TestServerFixture.CAR_BEAN);
+    random = new ObjectName(TestServerFixture.RANDOM_BEAN);
+
+    // Every memory pool before and after the collection, a TabularData of CompositeData
+    lastGcInfo = new Attribute("LastGcInfo.memoryUsage*.*.*", null, null);
+    // A single value, found without scanning the rows
+    lastGcUsed = new Attribute("LastGcInfo.memoryUsageAfterGc." + firstMemoryPool(mbs) + ".used", null, null);
+    carMap = new Attribute("Map.*.*", null, null);
+    randomValues = new Attribute("Value*", null, null);
+    record = new SampleRecord(new SampleLayout());
+  }
+
+  private String firstMemoryPool(MBeanServer mbs) throws JMException {
+    CompositeData info = (CompositeData) mbs.getAttribute(gc, "LastGcInfo");
+    TabularData usage = (TabularData) info.get("memoryUsageAfterGc");
+    return (String) ((List<?>) usage.keySet().iterator().next()).get(0);
+  }
+
+  @Benchmark
+  public Map<Attribute, Object> lastGcInfo() {
+    return mla.getAll(gc, lastGcInfo);
+  }
+
+  @Benchmark
+  public SampleRecord lastGcInfoIntoRecord() {
+    record.reset();
+    mla.getAll(gc, lastGcInfo, record);
+    return record;
+  }
+
+  @Benchmark
+  public Map<Attribute, Object> lastGcInfoLiteral() {
+    return mla.getAll(gc, lastGcUsed);
+  }
+
+  @Benchmark
+  public Map<Attribute, Object> carMap() {
+    return mla.getAll(car, carMap);
+  }
+
+  @Benchmark
+  public Map<Attribute, Object> dynamicBean() {
+    return mla.getAll(random, randomValues);
+  }
+
+  @Benchmark
+  public List<String> parseLiteral() {
+    return new MXNameParser().parse("LastGcInfo.memoryUsageAfterGc.PS Old Gen.used");
+  }
+
+  @Benchmark
+  public List<String> parsePattern() {
+    return new MXNameParser().parse("LastGcInfo.memoryUsage*.*.u?ed");
+  }
+
+  @Benchmark
+  public List<String> parseEscaped() {
+    return new MXNameParser().parse("Map.\"key.with.dots\".Power");
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.benchmarks;
+
+import org.jmxdatamart.JMXTestServer.CarBean;
+import org.jmxdatamart.JMXTestServer.RandomValueDynamicMBean;
+import org.jmxdatamart.JMXTestServer.TestBean;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The JMXTestServer beans, registered on the platform MBean server of the
+ * benchmark JVM
+ */
+final class TestServerFixture {
+  static final String CAR_BEAN = "org.jmxdatamart:name=CarBean";
+  static final String TEST_BEAN = "com.personal.JMXTestServer:name=TestBean1";
+  static final String RANDOM_BEAN = "org.jmxdatamart:name=RandomValueDynamicMBean";
+  static final int RANDOM_ATTRIBUTES = 20;
+
+  private TestServerFixture() {
+  }
+
+  /**
+   * Register the beans, unless a previous benchmark in the same JVM already
+   * did
+   */
+  static synchronized MBeanServer register() throws JMException {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    if (!mbs.isRegistered(new ObjectName(CAR_BEAN))) {
+      mbs.registerMBean(new CarBean(), new ObjectName(CAR_BEAN));
+
+      TestBean tb = new TestBean();
+      tb.setA(42);
+      tb.setB(-1);
+      mbs.registerMBean(tb, new ObjectName(TEST_BEAN));
+
+      RandomValueDynamicMBean random = new RandomValueDynamicMBean();
+      for (int i = 0; i < RANDOM_ATTRIBUTES; ++i) {
+        random.setAttribute(new Attribute("Value" + i, i));
+      }
+      mbs.registerMBean(random, new ObjectName(RANDOM_BEAN));
+    }
+    return mbs;
+  }
+
+  /**
+   * @return a garbage collector that has collected at least once, so that
+   * its LastGcInfo is not null
+   */
+  static ObjectName collectedGarbageCollector() throws JMException {
+    System.gc();
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc.getCollectionCount() > 0) {
+        return new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",name=" + gc.getName());
+      }
+    }
+    throw new IllegalStateException("No garbage collector has run");
+  }
+}
@@ -31,6 +31,7 @@ import java.sql.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
 
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +42,10 @@ import org.slf4j.LoggerFactory;
 public abstract class DBHandler {
 
   private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DBHandler.class);
+  // The schema of each database, read once, shared by its open connections and kept up to date by addTable and addColumn
+  private static final Map<String, SchemaCatalog> catalogs = new HashMap<String, SchemaCatalog>();
+  // The database each open connection has looked up its catalog for
+  private static final Map<Connection, String> catalogUsers = new WeakHashMap<Connection, String>();
 
   public abstract boolean databaseExists(String databaseName, java.util.Properties p);
 
@@ -89,6 +94,7 @@ public abstract class DBHandler {
       sql.append(column.isPrimaryKey() ? addPK : ")");
       ps = conn.prepareStatement(sql.toString());
       ps.executeUpdate();
+      getCatalog(conn).addTable(tableName, column.getFieldName());
     } catch (DBException de) {
       logger.error("Can't connect to database.", de);
     } catch (SQLException se) {
@@ -124,6 +130,7 @@ public abstract class DBHandler {
 
       ps = conn.prepareStatement(sql.toString());
       ps.executeUpdate();
+      getCatalog(conn).addColumn(tableName, column.getFieldName());
     } catch (SQLException se) {
       logger.error("Can't create column:" + se.getMessage(), se);
     } finally {
@@ -262,7 +269,31 @@ public abstract class DBHandler {
   }
 
   /**
-   * Check if a given table exits in a given database
+   * @return the schema catalog of the connection's database, read from the
+   * database metadata by the first connection to it
+   */
+  private static SchemaCatalog getCatalog(Connection conn) throws SQLException {
+    synchronized (catalogs) {
+      String database = catalogUsers.get(conn);
+      if (database == null) {
+        DatabaseMetaData metaData = conn.getMetaData();
+        database = metaData.getURL() + ";" + metaData.getUserName();
+        catalogUsers.put(conn, database);
+      }
+      SchemaCatalog catalog = catalogs.get(database);
+      if (catalog == null) {
+        catalog = SchemaCatalog.load(conn);
+        catalogs.put(database, catalog);
+      }
+      return catalog;
+    }
+  }
+
+  /**
+   * Check if a given table exits in a given database. Tables are looked up
+   * in the catalog of the database, and only a table that is not in it is
+   * looked for in the database metadata, in case it was created without
+   * addTable or by another process.
    *
    * @param tableName is the table looking for
    * @param conn is the given database connection
@@ -270,34 +301,22 @@ public abstract class DBHandler {
    * @throws SQLException
    */
   public static boolean tableExists(String tableName, Connection conn) {
-    ResultSet tableNames = null;
     try {
       checkConnection(conn);
-
-      String[] names = {"TABLE"};
-      tableNames = conn.getMetaData().getTables(null, null, null, names);
-
-      while (tableNames.next()) {
-        String tab = tableNames.getString("TABLE_NAME");
-        if (tab.equalsIgnoreCase(tableName)) {
-          tableNames.close();
-          return true;
-        }
-      }
-      tableNames.close();
-      return false;
+      SchemaCatalog catalog = getCatalog(conn);
+      return catalog.hasTable(tableName) || catalog.refreshTable(conn, tableName);
     } catch (DBException de) {
       logger.error("Can't connect to database.", de);
       throw new RuntimeException(de);
     } catch (SQLException se) {
       return false;
-    } finally {
-      releaseDatabaseResource(tableNames, null, null, null);
     }
   }
 
   /**
-   * Check if a given column exists in a given table
+   * Check if a given column exists in a given table, through the catalog of
+   * the database like {@link #tableExists(String, Connection)}, reading the
+   * table's columns again when it is not in the catalog
    *
    * @param columnName is the column looking for
    * @param tableName is the given table name
@@ -306,26 +325,18 @@ public abstract class DBHandler {
    * @throws SQLException
    */
   public static boolean columnExists(String columnName, String tableName, Connection conn) {
-    if (!tableExists(tableName, conn)) {
-      return false;
-    }
-
-    ResultSet columnNames = null;
     try {
-      columnNames = conn.getMetaData().getColumns(null, null, tableName.toUpperCase(), columnName.toUpperCase());
-      while (columnNames.next()) {
-        String col = columnNames.getString("COLUMN_NAME");
-        if (col.equalsIgnoreCase(columnName)) {
-          columnNames.close();
-          return true;
-        }
+      checkConnection(conn);
+      SchemaCatalog catalog = getCatalog(conn);
+      if (catalog.hasColumn(tableName, columnName)) {
+        return true;
       }
-      columnNames.close();
-      return false;
+      return catalog.refreshTable(conn, tableName) && catalog.hasColumn(tableName, columnName);
+    } catch (DBException de) {
+      logger.error("Can't connect to database.", de);
+      throw new RuntimeException(de);
     } catch (SQLException se) {
       return false;
-    } finally {
-      releaseDatabaseResource(columnNames, null, null, null);
     }
   }
 
@@ -371,6 +382,13 @@ public abstract class DBHandler {
     //Connection
     try {
       if (conn != null) {
+        synchronized (catalogs) {
+          // The catalog goes with the last connection to the database, which may be recreated
+          String database = catalogUsers.remove(conn);
+          if (database != null && !catalogUsers.containsValue(database)) {
+            catalogs.remove(database);
+          }
+        }
         conn.close();
       }
     } catch (SQLException sqle) {
@@ -22,13 +22,37 @@ public class HypersqlHandler extends DBHandler {
   }
 
   public void shutdownDatabase(Connection conn) {
+    Statement st = null;
     try {
       if (conn == null || conn.isClosed()) {
         return;
       }
-      conn.createStatement().execute("SHUTDOWN");
+      st = conn.createStatement();
+      st.execute("SHUTDOWN");
     } catch (SQLException se) {
       logger.error("Can't shutdown the database:" + se.getMessage(), se);
+    } finally {
+      releaseDatabaseResource(null, st, null, null);
+    }
+  }
+
+  /**
+   * Write the database to its .script file and reset its .log file, without
+   * closing it
+   * @param conn an open connection to the database
+   */
+  public void checkpointDatabase(Connection conn) {
+    Statement st = null;
+    try {
+      if (conn == null || conn.isClosed()) {
+        return;
+      }
+      st = conn.createStatement();
+      st.execute("CHECKPOINT");
+    } catch (SQLException se) {
+      logger.error("Can't checkpoint the database:" + se.getMessage(), se);
+    } finally {
+      releaseDatabaseResource(null, st, null, null);
     }
   }
 
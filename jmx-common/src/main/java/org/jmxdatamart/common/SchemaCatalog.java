@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.common;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The tables and columns of a database, shared by the connections to it, so
+ * that checking whether they exist doesn't scan the database metadata every
+ * time. Names are kept in upper case, like the checks compare them.
+ */
+final class SchemaCatalog {
+  private final Map<String, Set<String>> tables = new HashMap<String, Set<String>>();
+
+  /**
+   * Read the tables and their columns with one metadata call each
+   */
+  static SchemaCatalog load(Connection conn) throws SQLException {
+    SchemaCatalog catalog = new SchemaCatalog();
+    ResultSet rs = conn.getMetaData().getTables(null, null, null, new String[]{"TABLE"});
+    try {
+      while (rs.next()) {
+        catalog.tables.put(rs.getString("TABLE_NAME").toUpperCase(), new HashSet<String>());
+      }
+    } finally {
+      rs.close();
+    }
+
+    rs = conn.getMetaData().getColumns(null, null, null, null);
+    try {
+      while (rs.next()) {
+        Set<String> columns = catalog.tables.get(rs.getString("TABLE_NAME").toUpperCase());
+        if (columns != null) {
+          columns.add(rs.getString("COLUMN_NAME").toUpperCase());
+        }
+      }
+    } finally {
+      rs.close();
+    }
+    return catalog;
+  }
+
+  synchronized boolean hasTable(String tableName) {
+    return tables.containsKey(tableName.toUpperCase());
+  }
+
+  synchronized boolean hasColumn(String tableName, String columnName) {
+    Set<String> columns = tables.get(tableName.toUpperCase());
+    return columns != null && columns.contains(columnName.toUpperCase());
+  }
+
+  synchronized void addTable(String tableName, String columnName) {
+    Set<String> columns = new HashSet<String>();
+    columns.add(columnName.toUpperCase());
+    tables.put(tableName.toUpperCase(), columns);
+  }
+
+  synchronized void addColumn(String tableName, String columnName) {
+    Set<String> columns = tables.get(tableName.toUpperCase());
+    if (columns != null) {
+      columns.add(columnName.toUpperCase());
+    }
+  }
+
+  /**
+   * Read the columns of a table again, for a table created without going
+   * through the catalog since it was loaded
+   * @return whether the table exists
+   */
+  synchronized boolean refreshTable(Connection conn, String tableName) throws SQLException {
+    Set<String> columns = new HashSet<String>();
+    ResultSet rs = conn.getMetaData().getColumns(null, null, tableName.toUpperCase(), null);
+    try {
+      while (rs.next()) {
+        // The name is a pattern, in which the _ of a table name matches any character
+        if (rs.getString("TABLE_NAME").equalsIgnoreCase(tableName)) {
+          columns.add(rs.getString("COLUMN_NAME").toUpperCase());
+        }
+      }
+    } finally {
+      rs.close();
+    }
+    if (columns.isEmpty()) {
+      tables.remove(tableName.toUpperCase());
+      return false;
+    }
+    tables.put(tableName.toUpperCase(), columns);
+    return true;
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodings of {@link SegmentFormat#COMPRESSED} blocks, which work on the
+ * raw 64 bit form of each value: the value itself for integers, chars,
+ * booleans and dictionary indexes, milliseconds for dates and the IEEE bits
+ * for floating point numbers.
+ * <ul>
+ * <li>timestamps are stored as their delta-of-delta, with a variable number
+ * of bits as in Facebook's Gorilla, so that polls taken at a steady rate
+ * take a bit each</li>
+ * <li>integers and dates are stored as zig-zag varints of their delta to the
+ * previous value</li>
+ * <li>floating point numbers are XOR-ed with the previous value and only the
+ * meaningful bits of the result are kept, as in Facebook's Gorilla</li>
+ * <li>the rest are stored as zig-zag varints</li>
+ * </ul>
+ */
+final class SegmentCodec {
+
+  private SegmentCodec() {
+  }
+
+  static byte[] encodeTimestamps(long[] timestamps, int count) {
+    BitOutput out = new BitOutput(count / 4 + 16);
+    long previousDelta = 0;
+    for (int i = 0; i < count; ++i) {
+      if (i == 0) {
+        out.write(timestamps[i], 64);
+        continue;
+      }
+      long delta = timestamps[i] - timestamps[i - 1];
+      long deltaOfDelta = delta - previousDelta;
+      previousDelta = delta;
+
+      if (deltaOfDelta == 0) {
+        out.write(0, 1);
+      } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+        out.write(0x2, 2);
+        out.write(deltaOfDelta, 7);
+      } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+        out.write(0x6, 3);
+        out.write(deltaOfDelta, 9);
+      } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+        out.write(0xE, 4);
+        out.write(deltaOfDelta, 12);
+      } else {
+        out.write(0xF, 4);
+        out.write(deltaOfDelta, 64);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  static void decodeTimestamps(ByteBuffer buffer, long[] timestamps, int count) {
+    BitInput in = new BitInput(buffer);
+    long previousDelta = 0;
+    for (int i = 0; i < count; ++i) {
+      if (i == 0) {
+        timestamps[i] = in.read(64);
+        continue;
+      }
+      int bits;
+      if (in.read(1) == 0) {
+        bits = 0;
+      } else if (in.read(1) == 0) {
+        bits = 7;
+      } else if (in.read(1) == 0) {
+        bits = 9;
+      } else if (in.read(1) == 0) {
+        bits = 12;
+      } else {
+        bits = 64;
+      }
+      previousDelta += bits == 0 ? 0 : signExtend(in.read(bits), bits);
+      timestamps[i] = timestamps[i - 1] + previousDelta;
+    }
+  }
+
+  private static long signExtend(long value, int bits) {
+    return bits == 64 ? value : (value << (64 - bits)) >> (64 - bits);
+  }
+
+  static byte[] encode(DataType type, long[] raw, int count) {
+    switch (type) {
+      case FLOAT:
+      case DOUBLE:
+        return encodeXor(raw, count);
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case DATETIME:
+        return encodeDelta(raw, count);
+      default:
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count + 16);
+        for (int i = 0; i < count; ++i) {
+          writeVarLong(out, raw[i]);
+        }
+        return out.toByteArray();
+    }
+  }
+
+  static void decode(DataType type, ByteBuffer in, long[] raw, int count) {
+    switch (type) {
+      case FLOAT:
+      case DOUBLE:
+        decodeXor(in, raw, count);
+        break;
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case DATETIME:
+        long previous = 0;
+        for (int i = 0; i < count; ++i) {
+          previous += readVarLong(in);
+          raw[i] = previous;
+        }
+        break;
+      default:
+        for (int i = 0; i < count; ++i) {
+          raw[i] = readVarLong(in);
+        }
+    }
+  }
+
+  private static byte[] encodeDelta(long[] raw, int count) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(count + 16);
+    long previous = 0;
+    for (int i = 0; i < count; ++i) {
+      writeVarLong(out, raw[i] - previous);
+      previous = raw[i];
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] encodeXor(long[] raw, int count) {
+    BitOutput out = new BitOutput(count + 16);
+    long previous = 0;
+    int previousLeading = -1;
+    int previousTrailing = 0;
+    for (int i = 0; i < count; ++i) {
+      if (i == 0) {
+        out.write(raw[i], 64);
+        previous = raw[i];
+        continue;
+      }
+
+      long xor = raw[i] ^ previous;
+      previous = raw[i];
+      if (xor == 0) {
+        out.write(0, 1);
+        continue;
+      }
+      out.write(1, 1);
+
+      int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+      int trailing = Long.numberOfTrailingZeros(xor);
+      if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+        // The meaningful bits fit in the window of the previous value
+        out.write(0, 1);
+        out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+      } else {
+        int meaningful = 64 - leading - trailing;
+        out.write(1, 1);
+        out.write(leading, 5);
+        out.write(meaningful - 1, 6);
+        out.write(xor >>> trailing, meaningful);
+        previousLeading = leading;
+        previousTrailing = trailing;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static void decodeXor(ByteBuffer buffer, long[] raw, int count) {
+    BitInput in = new BitInput(buffer);
+    long previous = 0;
+    int previousLeading = 0;
+    int previousTrailing = 0;
+    for (int i = 0; i < count; ++i) {
+      if (i == 0) {
+        previous = in.read(64);
+      } else if (in.read(1) != 0) {
+        if (in.read(1) != 0) {
+          previousLeading = (int) in.read(5);
+          int meaningful = (int) in.read(6) + 1;
+          previousTrailing = 64 - previousLeading - meaningful;
+        }
+        previous ^= in.read(64 - previousLeading - previousTrailing) << previousTrailing;
+      }
+      raw[i] = previous;
+    }
+  }
+
+  static void writeVarLong(ByteArrayOutputStream out, long value) {
+    long zigzag = (value << 1) ^ (value >> 63);
+    while ((zigzag & ~0x7FL) != 0) {
+      out.write((int) ((zigzag & 0x7F) | 0x80));
+      zigzag >>>= 7;
+    }
+    out.write((int) zigzag);
+  }
+
+  static long readVarLong(ByteBuffer in) {
+    long zigzag = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      zigzag |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  private static class BitOutput {
+    private final ByteArrayOutputStream out;
+    private int current;
+    private int used;
+
+    BitOutput(int size) {
+      out = new ByteArrayOutputStream(size);
+    }
+
+    /**
+     * Write the lowest bits of value, most significant first
+     */
+    void write(long value, int bits) {
+      for (int i = bits - 1; i >= 0; --i) {
+        current = (current << 1) | (int) ((value >>> i) & 1);
+        if (++used == 8) {
+          out.write(current);
+          current = 0;
+          used = 0;
+        }
+      }
+    }
+
+    byte[] toByteArray() {
+      if (used > 0) {
+        out.write(current << (8 - used));
+        current = 0;
+        used = 0;
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static class BitInput {
+    private final ByteBuffer in;
+    private int current;
+    private int left;
+
+    BitInput(ByteBuffer in) {
+      this.in = in;
+    }
+
+    long read(int bits) {
+      long value = 0;
+      for (int i = 0; i < bits; ++i) {
+        if (left == 0) {
+          current = in.get() & 0xFF;
+          left = 8;
+        }
+        value = (value << 1) | ((current >>> --left) & 1);
+      }
+      return value;
+    }
+  }
+}
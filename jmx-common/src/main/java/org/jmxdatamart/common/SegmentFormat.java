@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.common;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Layout of the columnar segment files the extractor can write instead of an
+ * HSQL database. A segment holds the rows of a single table:
+ * <pre>
+ * header:  MAGIC, VERSION, header length, table name, encoding,
+ *          column count, (column name, DataType name) per column
+ * block:   BLOCK_MAGIC, block length, row count, timestamps,
+ *          per column: [new dictionary entries,] null bitmap, values
+ * ...
+ * footer:  FOOTER_MAGIC, block count,
+ *          (offset, row count, first and last timestamp) per block,
+ *          offset of the footer, FOOTER_MAGIC
+ * </pre>
+ * Numeric, boolean, char and date values are stored with a fixed width,
+ * strings as an index into a dictionary that grows with each block. The
+ * footer is only written when a segment is closed, segments without one are
+ * read block by block up to the last complete block. With the COMPRESSED
+ * encoding the timestamps and the values of each column are instead stored
+ * as a length followed by the output of {@link SegmentCodec}.
+ */
+public final class SegmentFormat {
+  public static final int MAGIC = 0x4A4D5853;         // "JMXS"
+  public static final int VERSION = 1;
+  public static final int BLOCK_MAGIC = 0x424C4B31;   // "BLK1"
+  public static final int FOOTER_MAGIC = 0x46545231;  // "FTR1"
+
+  /**
+   * Values written as they are
+   */
+  public static final byte PLAIN = 0;
+
+  /**
+   * Timestamps and values compressed by {@link SegmentCodec}, each column
+   * prefixed with its length in bytes
+   */
+  public static final byte COMPRESSED = 1;
+
+  /**
+   * Suffix of segment files
+   */
+  public static final String SEGMENT_SUFFIX = ".seg";
+
+  /**
+   * Suffix of the directory holding the segments of one extractor run
+   */
+  public static final String DIRECTORY_SUFFIX = ".segments";
+
+  /**
+   * Name of the column timestamps are loaded into, as in the HSQL files
+   */
+  public static final String TIME_COLUMN = "time";
+
+  private SegmentFormat() {
+  }
+
+  /**
+   * @return how many bytes a value of the given type takes in a block
+   */
+  public static int widthOf(DataType type) {
+    switch (type) {
+      case BYTE:
+      case BOOLEAN:
+        return 1;
+      case SHORT:
+      case CHAR:
+        return 2;
+      case INT:
+      case FLOAT:
+      case STRING:      // dictionary index
+        return 4;
+      case LONG:
+      case DOUBLE:
+      case DATETIME:
+        return 8;
+      default:
+        throw new IllegalArgumentException("Can not store " + type + " in a segment");
+    }
+  }
+
+  /**
+   * @return the file of a table's segment with the given sequence number
+   */
+  public static File segmentFile(File directory, String tableName, int sequence) {
+    return new File(directory, String.format("%s.%06d%s", tableName, sequence, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * @return the segment files in a directory, in the order they were written
+   * for each table
+   */
+  public static List<File> listSegments(File directory) {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    if (files == null) {
+      return new ArrayList<File>();
+    }
+    Arrays.sort(files);
+    return new ArrayList<File>(Arrays.asList(files));
+  }
+
+  /**
+   * @return whether the file is a directory of segments
+   */
+  public static boolean isSegmentDirectory(File file) {
+    return file.isDirectory() && file.getName().endsWith(DIRECTORY_SUFFIX);
+  }
+}
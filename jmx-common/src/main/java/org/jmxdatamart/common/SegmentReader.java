@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.common;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads back the rows of a segment file written by {@link SegmentWriter},
+ * one row at a time:
+ * <pre>
+ * while (reader.next()) {
+ *   reader.getTimestamp();
+ *   reader.getValue(column);
+ * }
+ * </pre>
+ * Segments that were not closed, for instance because the extractor died,
+ * are read up to their last complete block.
+ */
+public class SegmentReader implements Closeable {
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(SegmentReader.class);
+  private final File file;
+  private final FileChannel channel;
+  private final String tableName;
+  private final List<FieldAttribute> columns;
+  private final DataType[] types;
+  private final int[] widths;
+  private final byte encoding;
+  private final List<Long> blockOffsets = new ArrayList<Long>();
+  private final List<String> dictionary = new ArrayList<String>();
+  private boolean sealed;
+  private long rowCount = -1;
+
+  private int nextBlock;
+  private int rowsInBlock;
+  private int row = -1;
+  private long[] timestamps = new long[0];
+  private ByteBuffer[] values;
+  private byte[][] nulls;
+
+  public SegmentReader(File file) throws IOException {
+    this.file = file;
+    this.channel = new FileInputStream(file).getChannel();
+    try {
+      ByteBuffer prefix = read(0, 12);
+      if (prefix == null || prefix.getInt() != SegmentFormat.MAGIC) {
+        throw new IOException(file + " is not a segment file");
+      }
+      int version = prefix.getInt();
+      if (version != SegmentFormat.VERSION) {
+        throw new IOException(file + " has unsupported segment version " + version);
+      }
+      int headerLength = prefix.getInt();
+      ByteBuffer header = read(12, headerLength);
+      if (header == null) {
+        throw new IOException(file + " has a truncated header");
+      }
+
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+      tableName = in.readUTF();
+      encoding = in.readByte();
+      if (encoding != SegmentFormat.PLAIN && encoding != SegmentFormat.COMPRESSED) {
+        throw new IOException(file + " has unsupported encoding " + encoding);
+      }
+      int columnCount = in.readInt();
+      List<FieldAttribute> cols = new ArrayList<FieldAttribute>(columnCount);
+      types = new DataType[columnCount];
+      widths = new int[columnCount];
+      for (int i = 0; i < columnCount; ++i) {
+        String name = in.readUTF();
+        types[i] = DataType.valueOf(in.readUTF());
+        widths[i] = SegmentFormat.widthOf(types[i]);
+        cols.add(new FieldAttribute(name, types[i], false));
+      }
+      columns = Collections.unmodifiableList(cols);
+      values = new ByteBuffer[columnCount];
+      nulls = new byte[columnCount][];
+
+      if (!readFooter()) {
+        scanBlocks(12 + headerLength);
+      }
+
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    } catch (RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * @return name and type of each value of a row, without the timestamp
+   */
+  public List<FieldAttribute> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return whether the segment was closed properly and has a footer index
+   */
+  public boolean isSealed() {
+    return sealed;
+  }
+
+  /**
+   * @return the number of rows in the segment, or -1 if it has no footer
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Move to the next row
+   * @return false if there are no more rows
+   */
+  public boolean next() throws IOException {
+    while (++row >= rowsInBlock) {
+      if (nextBlock >= blockOffsets.size()) {
+        return false;
+      }
+      readBlock(blockOffsets.get(nextBlock++));
+    }
+    return true;
+  }
+
+  /**
+   * @return when the current row was sampled, in milliseconds
+   */
+  public long getTimestamp() {
+    return timestamps[row];
+  }
+
+  /**
+   * @return the value of a column in the current row, null if it is missing
+   */
+  public Object getValue(int column) {
+    if ((nulls[column][row / 8] & (1 << (row % 8))) != 0) {
+      return null;
+    }
+    ByteBuffer b = values[column];
+    int p = row * widths[column];
+    switch (types[column]) {
+      case BYTE:
+        return b.get(p);
+      case SHORT:
+        return b.getShort(p);
+      case INT:
+        return b.getInt(p);
+      case LONG:
+        return b.getLong(p);
+      case FLOAT:
+        return b.getFloat(p);
+      case DOUBLE:
+        return b.getDouble(p);
+      case BOOLEAN:
+        return b.get(p) != 0;
+      case CHAR:
+        return b.getChar(p);
+      case DATETIME:
+        return new java.sql.Timestamp(b.getLong(p));
+      case STRING:
+        return dictionary.get(b.getInt(p));
+      default:
+        throw new IllegalStateException("Unexpected type " + types[column]);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private boolean readFooter() throws IOException {
+    long size = channel.size();
+    ByteBuffer trailer = size >= 12 ? read(size - 12, 12) : null;
+    if (trailer == null) {
+      return false;
+    }
+    long footerOffset = trailer.getLong();
+    if (trailer.getInt() != SegmentFormat.FOOTER_MAGIC || footerOffset < 0 || footerOffset > size - 20) {
+      return false;
+    }
+    ByteBuffer footer = read(footerOffset, (int) (size - 12 - footerOffset));
+    if (footer == null || footer.getInt() != SegmentFormat.FOOTER_MAGIC) {
+      return false;
+    }
+    int blockCount = footer.getInt();
+    long rows = 0;
+    for (int i = 0; i < blockCount; ++i) {
+      blockOffsets.add(footer.getLong());
+      rows += footer.getInt();
+      footer.getLong();     // first and last timestamp of the block
+      footer.getLong();
+    }
+    rowCount = rows;
+    sealed = true;
+    return true;
+  }
+
+  private void scanBlocks(long position) throws IOException {
+    long size = channel.size();
+    ByteBuffer prefix;
+    while ((prefix = read(position, 8)) != null && prefix.getInt() == SegmentFormat.BLOCK_MAGIC) {
+      int length = prefix.getInt();
+      if (position + 8 + length > size) {
+        logger.warn("Ignoring the truncated last block of {}", file);
+        break;
+      }
+      blockOffsets.add(position);
+      position += 8 + length;
+    }
+  }
+
+  private void readBlock(long offset) throws IOException {
+    ByteBuffer prefix = read(offset, 8);
+    if (prefix == null || prefix.getInt() != SegmentFormat.BLOCK_MAGIC) {
+      throw new IOException(file + " has no block at " + offset);
+    }
+    ByteBuffer block = read(offset + 8, prefix.getInt());
+    if (block == null) {
+      throw new IOException(file + " has a truncated block at " + offset);
+    }
+
+    rowsInBlock = block.getInt();
+    row = -1;
+    if (timestamps.length < rowsInBlock) {
+      timestamps = new long[rowsInBlock];
+    }
+    if (encoding == SegmentFormat.COMPRESSED) {
+      SegmentCodec.decodeTimestamps(slice(block, block.getInt()), timestamps, rowsInBlock);
+    } else {
+      for (int r = 0; r < rowsInBlock; ++r) {
+        timestamps[r] = block.getLong();
+      }
+    }
+
+    for (int c = 0; c < types.length; ++c) {
+      if (types[c] == DataType.STRING) {
+        int added = block.getInt();
+        for (int i = 0; i < added; ++i) {
+          byte[] utf8 = new byte[block.getInt()];
+          block.get(utf8);
+          dictionary.add(new String(utf8, "UTF-8"));
+        }
+      }
+      nulls[c] = new byte[(rowsInBlock + 7) / 8];
+      block.get(nulls[c]);
+
+      if (encoding == SegmentFormat.COMPRESSED) {
+        values[c] = decodeColumn(c, slice(block, block.getInt()));
+      } else {
+        values[c] = slice(block, rowsInBlock * widths[c]);
+      }
+    }
+  }
+
+  /**
+   * @return the next length bytes of block, which is moved past them
+   */
+  private ByteBuffer slice(ByteBuffer block, int length) {
+    ByteBuffer slice = block.slice();
+    slice.limit(length);
+    block.position(block.position() + length);
+    return slice;
+  }
+
+  /**
+   * Decode a compressed column into the layout of a plain one
+   */
+  private ByteBuffer decodeColumn(int c, ByteBuffer encoded) {
+    long[] raw = new long[rowsInBlock];
+    int count = 0;
+    for (int r = 0; r < rowsInBlock; ++r) {
+      if ((nulls[c][r / 8] & (1 << (r % 8))) == 0) {
+        ++count;
+      }
+    }
+    SegmentCodec.decode(types[c], encoded, raw, count);
+
+    ByteBuffer plain = ByteBuffer.allocate(rowsInBlock * widths[c]);
+    int next = 0;
+    for (int r = 0; r < rowsInBlock; ++r) {
+      long value = (nulls[c][r / 8] & (1 << (r % 8))) == 0 ? raw[next++] : 0;
+      switch (widths[c]) {
+        case 1:
+          plain.put((byte) value);
+          break;
+        case 2:
+          plain.putShort((short) value);
+          break;
+        case 4:
+          plain.putInt((int) value);
+          break;
+        default:
+          plain.putLong(value);
+      }
+    }
+    plain.flip();
+    return plain;
+  }
+
+  /**
+   * @return length bytes read from position, or null if the file ends first
+   */
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return null;
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends the rows of a single table to a segment file, see
+ * {@link SegmentFormat} for the layout. Rows are buffered and written
+ * column by column, one block at a time. Not thread safe.
+ */
+public class SegmentWriter implements Closeable {
+  private final FileChannel channel;
+  private final String tableName;
+  private final List<FieldAttribute> columns;
+  private final DataType[] types;
+  private final int blockRows;
+  private final byte encoding;
+  private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+  private final List<long[]> blocks = new ArrayList<long[]>();
+  private final long[] timestamps;
+  private final Object[][] rows;
+  private int buffered;
+  private long position;
+  private long rowCount;
+
+  /**
+   * @param file the segment file, overwritten if it exists
+   * @param tableName the table the rows belong to
+   * @param columns name and type of each value of a row, without the timestamp
+   * @param blockRows how many rows are buffered before they are written
+   */
+  public SegmentWriter(File file, String tableName, List<FieldAttribute> columns, int blockRows) throws IOException {
+    this(file, tableName, columns, blockRows, SegmentFormat.PLAIN);
+  }
+
+  /**
+   * @param encoding {@link SegmentFormat#PLAIN} or {@link SegmentFormat#COMPRESSED}
+   */
+  public SegmentWriter(File file, String tableName, List<FieldAttribute> columns, int blockRows, byte encoding) throws IOException {
+    if (encoding != SegmentFormat.PLAIN && encoding != SegmentFormat.COMPRESSED) {
+      throw new IllegalArgumentException("Unknown segment encoding " + encoding);
+    }
+    this.encoding = encoding;
+    this.tableName = tableName;
+    this.columns = Collections.unmodifiableList(new ArrayList<FieldAttribute>(columns));
+    this.types = new DataType[columns.size()];
+    for (int i = 0; i < types.length; ++i) {
+      types[i] = columns.get(i).getFieldType();
+      SegmentFormat.widthOf(types[i]);      // fail early on unsupported types
+    }
+    this.blockRows = Math.max(1, blockRows);
+    this.timestamps = new long[this.blockRows];
+    this.rows = new Object[this.blockRows][];
+    this.channel = new FileOutputStream(file).getChannel();
+    writeHeader();
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public List<FieldAttribute> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return the bytes written so far, not counting buffered rows
+   */
+  public long size() {
+    return position;
+  }
+
+  /**
+   * @return the rows appended so far, buffered ones included
+   */
+  public long getRowCount() {
+    return rowCount + buffered;
+  }
+
+  /**
+   * @return the bytes written so far plus the buffered rows, at the average
+   * size of the rows already written
+   */
+  public long estimatedSize() {
+    long rowBytes = rowCount > 0 ? position / rowCount : 8 + 8 * types.length;
+    return position + buffered * rowBytes;
+  }
+
+  /**
+   * @param timestamp when the values were sampled, in milliseconds
+   * @param values one value per column, null for missing ones
+   */
+  public void append(long timestamp, Object[] values) throws IOException {
+    if (values.length != types.length) {
+      throw new IllegalArgumentException("Expected " + types.length + " values for " + tableName + " but got " + values.length);
+    }
+    timestamps[buffered] = timestamp;
+    rows[buffered] = values.clone();
+    if (++buffered == blockRows) {
+      flush();
+    }
+  }
+
+  /**
+   * Write the buffered rows as a block
+   */
+  public void flush() throws IOException {
+    if (buffered == 0) {
+      return;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + buffered * (8 + 8 * types.length));
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(buffered);
+    if (encoding == SegmentFormat.COMPRESSED) {
+      byte[] encoded = SegmentCodec.encodeTimestamps(timestamps, buffered);
+      out.writeInt(encoded.length);
+      out.write(encoded);
+    } else {
+      for (int r = 0; r < buffered; ++r) {
+        out.writeLong(timestamps[r]);
+      }
+    }
+    for (int c = 0; c < types.length; ++c) {
+      writeColumn(out, c);
+    }
+    out.flush();
+
+    ByteBuffer block = ByteBuffer.allocate(8 + bytes.size());
+    block.putInt(SegmentFormat.BLOCK_MAGIC).putInt(bytes.size()).put(bytes.toByteArray());
+    block.flip();
+    blocks.add(new long[]{position, buffered, timestamps[0], timestamps[buffered - 1]});
+    write(block);
+
+    rowCount += buffered;
+    for (int r = 0; r < buffered; ++r) {
+      rows[r] = null;
+    }
+    buffered = 0;
+  }
+
+  /**
+   * Write the remaining rows and the footer index, then close the file
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+
+      long footerOffset = position;
+      ByteBuffer footer = ByteBuffer.allocate(8 + blocks.size() * 28 + 12);
+      footer.putInt(SegmentFormat.FOOTER_MAGIC).putInt(blocks.size());
+      for (long[] block : blocks) {
+        footer.putLong(block[0]).putInt((int) block[1]).putLong(block[2]).putLong(block[3]);
+      }
+      footer.putLong(footerOffset).putInt(SegmentFormat.FOOTER_MAGIC);
+      footer.flip();
+      write(footer);
+      channel.force(false);
+
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeUTF(tableName);
+    out.writeByte(encoding);
+    out.writeInt(columns.size());
+    for (FieldAttribute column : columns) {
+      out.writeUTF(column.getFieldName());
+      out.writeUTF(column.getFieldType().name());
+    }
+    out.flush();
+
+    ByteBuffer header = ByteBuffer.allocate(12 + bytes.size());
+    header.putInt(SegmentFormat.MAGIC).putInt(SegmentFormat.VERSION).putInt(bytes.size()).put(bytes.toByteArray());
+    header.flip();
+    write(header);
+  }
+
+  private void writeColumn(DataOutputStream out, int c) throws IOException {
+    DataType type = types[c];
+    if (type == DataType.STRING) {
+      List<String> added = new ArrayList<String>();
+      for (int r = 0; r < buffered; ++r) {
+        Object value = rows[r][c];
+        if (value != null && !dictionary.containsKey(value.toString())) {
+          dictionary.put(value.toString(), dictionary.size());
+          added.add(value.toString());
+        }
+      }
+      out.writeInt(added.size());
+      for (String s : added) {
+        byte[] utf8 = s.getBytes("UTF-8");
+        out.writeInt(utf8.length);
+        out.write(utf8);
+      }
+    }
+
+    byte[] nulls = new byte[(buffered + 7) / 8];
+    for (int r = 0; r < buffered; ++r) {
+      if (rows[r][c] == null) {
+        nulls[r / 8] |= 1 << (r % 8);
+      }
+    }
+    out.write(nulls);
+
+    if (encoding == SegmentFormat.COMPRESSED) {
+      long[] raw = new long[buffered];
+      int count = 0;
+      for (int r = 0; r < buffered; ++r) {
+        if (rows[r][c] != null) {
+          raw[count++] = toRaw(type, rows[r][c]);
+        }
+      }
+      byte[] encoded = SegmentCodec.encode(type, raw, count);
+      out.writeInt(encoded.length);
+      out.write(encoded);
+      return;
+    }
+
+    for (int r = 0; r < buffered; ++r) {
+      writeValue(out, type, rows[r][c]);
+    }
+  }
+
+  private long toRaw(DataType type, Object value) {
+    switch (type) {
+      case FLOAT:
+        return Float.floatToIntBits(((Number) value).floatValue());
+      case DOUBLE:
+        return Double.doubleToLongBits(((Number) value).doubleValue());
+      case BOOLEAN:
+        return (Boolean) value ? 1 : 0;
+      case CHAR:
+        return (Character) value;
+      case DATETIME:
+        return ((Date) value).getTime();
+      case STRING:
+        return dictionary.get(value.toString());
+      default:
+        return ((Number) value).longValue();
+    }
+  }
+
+  private void writeValue(DataOutputStream out, DataType type, Object value) throws IOException {
+    switch (type) {
+      case BYTE:
+        out.writeByte(value == null ? 0 : ((Number) value).byteValue());
+        break;
+      case SHORT:
+        out.writeShort(value == null ? 0 : ((Number) value).shortValue());
+        break;
+      case INT:
+        out.writeInt(value == null ? 0 : ((Number) value).intValue());
+        break;
+      case LONG:
+        out.writeLong(value == null ? 0 : ((Number) value).longValue());
+        break;
+      case FLOAT:
+        out.writeFloat(value == null ? 0 : ((Number) value).floatValue());
+        break;
+      case DOUBLE:
+        out.writeDouble(value == null ? 0 : ((Number) value).doubleValue());
+        break;
+      case BOOLEAN:
+        out.writeBoolean(value != null && (Boolean) value);
+        break;
+      case CHAR:
+        out.writeChar(value == null ? 0 : (Character) value);
+        break;
+      case DATETIME:
+        out.writeLong(value == null ? 0 : ((Date) value).getTime());
+        break;
+      case STRING:
+        out.writeInt(value == null ? -1 : dictionary.get(value.toString()));
+        break;
+      default:
+        throw new IllegalArgumentException("Can not store " + type + " in a segment");
+    }
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer);
+    }
+  }
+}
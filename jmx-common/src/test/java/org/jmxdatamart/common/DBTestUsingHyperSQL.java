@@ -113,5 +113,27 @@ public class DBTestUsingHyperSQL {
 
     }
 
+    @Test
+    public void testSchemaChangedByAnotherConnection(){
+        String name = dbname + "Catalog";
+        Connection conn1 = db.connectDatabase(name, p);
+        Connection conn2 = db.connectDatabase(name, p);
+
+        assertFalse(DBHandler.tableExists(tablename, conn1));
+        assertFalse(DBHandler.tableExists(tablename, conn2));
+
+        DBHandler.addTable(conn1, tablename, databaseType);
+        assertTrue(DBHandler.tableExists(tablename, conn2));
+        assertFalse(DBHandler.columnExists("testcol", tablename, conn2));
+
+        DBHandler.addColumn(conn1, tablename, newcol, databaseType);
+        assertTrue(DBHandler.columnExists("testcol", tablename, conn1));
+        assertTrue(DBHandler.columnExists("testcol", tablename, conn2));
+
+        DBHandler.releaseDatabaseResource(null,null,null,conn2);
+        ((HypersqlHandler)db).shutdownDatabase(conn1);
+        DBHandler.releaseDatabaseResource(null,null,null,conn1);
+    }
+
 
 }
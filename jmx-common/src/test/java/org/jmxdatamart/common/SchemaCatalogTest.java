@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.common;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SchemaCatalogTest {
+
+  @Test
+  public void underscoreInTableNameIsNotAWildcard() throws Exception {
+    Class.forName("org.hsqldb.jdbc.JDBCDriver");
+    Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:SchemaCatalogTest", "sa", "");
+    try {
+      Statement st = conn.createStatement();
+      st.executeUpdate("create table A_B (used bigint)");
+      st.executeUpdate("create table AXB (peak bigint)");
+      st.close();
+
+      SchemaCatalog catalog = SchemaCatalog.load(conn);
+      assertTrue(catalog.refreshTable(conn, "a_b"));
+      assertTrue(catalog.hasColumn("A_B", "used"));
+      assertFalse(catalog.hasColumn("A_B", "peak"));
+      assertFalse(catalog.refreshTable(conn, "A_C"));
+      assertFalse(catalog.hasTable("A_C"));
+    } finally {
+      conn.createStatement().execute("shutdown");
+      conn.close();
+    }
+  }
+
+  @Test
+  public void connectionsToOneDatabaseShareTheCatalog() throws Exception {
+    Class.forName("org.hsqldb.jdbc.JDBCDriver");
+    Connection first = DriverManager.getConnection("jdbc:hsqldb:mem:SchemaCatalogShared", "sa", "");
+    Connection second = DriverManager.getConnection("jdbc:hsqldb:mem:SchemaCatalogShared", "sa", "");
+    try {
+      assertFalse(DBHandler.tableExists("Memory", second));
+      DBHandler.addTable(first, "Memory", new FieldAttribute("testId", DataType.LONG, false), DataType.SupportedDatabase.HSQL);
+      DBHandler.addColumn(first, "Memory", new FieldAttribute("used", DataType.LONG, false), DataType.SupportedDatabase.HSQL);
+      assertTrue(DBHandler.tableExists("Memory", second));
+      assertTrue(DBHandler.columnExists("used", "Memory", second));
+
+      // Changed without going through the catalog, like another process would
+      Statement st = first.createStatement();
+      st.executeUpdate("alter table Memory add peak bigint");
+      st.close();
+      assertTrue(DBHandler.columnExists("peak", "Memory", second));
+    } finally {
+      first.createStatement().execute("shutdown");
+      DBHandler.releaseDatabaseResource(null, null, null, first);
+      DBHandler.releaseDatabaseResource(null, null, null, second);
+    }
+  }
+}
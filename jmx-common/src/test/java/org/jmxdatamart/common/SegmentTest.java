@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.common;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentTest {
+
+  private final List<FieldAttribute> columns = Arrays.asList(
+          new FieldAttribute("used", DataType.LONG, false),
+          new FieldAttribute("ratio", DataType.DOUBLE, false),
+          new FieldAttribute("name", DataType.STRING, false),
+          new FieldAttribute("started", DataType.DATETIME, false),
+          new FieldAttribute("active", DataType.BOOLEAN, false));
+
+  private File write(int rows, int blockRows, boolean close) throws IOException {
+    return write(rows, blockRows, close, SegmentFormat.PLAIN);
+  }
+
+  private File write(int rows, int blockRows, boolean close, byte encoding) throws IOException {
+    File file = File.createTempFile("Memory", SegmentFormat.SEGMENT_SUFFIX);
+    file.deleteOnExit();
+    SegmentWriter writer = new SegmentWriter(file, "Memory", columns, blockRows, encoding);
+    for (int i = 0; i < rows; ++i) {
+      writer.append(1000L * i, new Object[]{(long) i, i / 2.0, i % 2 == 0 ? "even" : null, new Date(i), i % 3 == 0});
+    }
+    if (close) {
+      writer.close();
+    } else {
+      writer.flush();
+    }
+    return file;
+  }
+
+  private int readAll(File file, boolean sealed) throws IOException {
+    SegmentReader reader = new SegmentReader(file);
+    try {
+      assertEquals("Memory", reader.getTableName());
+      assertEquals(columns.size(), reader.getColumns().size());
+      assertEquals(DataType.STRING, reader.getColumns().get(2).getFieldType());
+      assertEquals(sealed, reader.isSealed());
+
+      int i = 0;
+      while (reader.next()) {
+        assertEquals(1000L * i, reader.getTimestamp());
+        assertEquals((long) i, reader.getValue(0));
+        assertEquals(i / 2.0, reader.getValue(1));
+        assertEquals(i % 2 == 0 ? "even" : null, reader.getValue(2));
+        assertEquals((long) i, ((Date) reader.getValue(3)).getTime());
+        assertEquals(i % 3 == 0, reader.getValue(4));
+        ++i;
+      }
+      if (sealed) {
+        assertEquals(i, reader.getRowCount());
+      }
+      return i;
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    assertEquals(25, readAll(write(25, 10, true), true));
+  }
+
+  @Test
+  public void compressedRoundTrip() throws IOException {
+    assertEquals(25, readAll(write(25, 10, true, SegmentFormat.COMPRESSED), true));
+  }
+
+  @Test
+  public void compressedSlowlyChangingSeriesIsSmaller() throws IOException {
+    List<FieldAttribute> counters = Arrays.asList(
+            new FieldAttribute("count", DataType.LONG, false),
+            new FieldAttribute("used", DataType.DOUBLE, false));
+    long[] sizes = new long[2];
+    byte[] encodings = {SegmentFormat.PLAIN, SegmentFormat.COMPRESSED};
+    for (int e = 0; e < encodings.length; ++e) {
+      File file = File.createTempFile("GarbageCollector", SegmentFormat.SEGMENT_SUFFIX);
+      file.deleteOnExit();
+      SegmentWriter writer = new SegmentWriter(file, "GC", counters, 1024, encodings[e]);
+      for (int i = 0; i < 10000; ++i) {
+        writer.append(1381000000000L + 1000L * i, new Object[]{(long) i / 7, 512.0 + (i / 100)});
+      }
+      writer.close();
+      sizes[e] = file.length();
+
+      SegmentReader reader = new SegmentReader(file);
+      for (int i = 0; i < 10000; ++i) {
+        assertTrue(reader.next());
+        assertEquals(1381000000000L + 1000L * i, reader.getTimestamp());
+        assertEquals((long) i / 7, reader.getValue(0));
+        assertEquals(512.0 + (i / 100), reader.getValue(1));
+      }
+      assertFalse(reader.next());
+      reader.close();
+    }
+    assertTrue("plain " + sizes[0] + " compressed " + sizes[1], sizes[1] * 10 < sizes[0]);
+  }
+
+  @Test
+  public void irregularTimestampsAndExtremeValues() {
+    long[] deltas = {0, 1, -64, 63, 64, -65, 255, -256, 256, 2047, -2048, 2048, -2049, 1L << 40, -(1L << 40)};
+    long[] timestamps = new long[deltas.length + 1];
+    timestamps[0] = 1381000000000L;
+    for (int i = 0; i < deltas.length; ++i) {
+      timestamps[i + 1] = timestamps[i] + 1000 + deltas[i];
+    }
+    long[] decoded = new long[timestamps.length];
+    SegmentCodec.decodeTimestamps(ByteBuffer.wrap(SegmentCodec.encodeTimestamps(timestamps, timestamps.length)),
+            decoded, timestamps.length);
+    assertArrayEquals(timestamps, decoded);
+
+    long[] raw = {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, 1,
+      Double.doubleToLongBits(Double.NaN), Double.doubleToLongBits(-0.0), Double.doubleToLongBits(1e300)};
+    for (DataType type : new DataType[]{DataType.LONG, DataType.DOUBLE, DataType.STRING}) {
+      decoded = new long[raw.length];
+      SegmentCodec.decode(type, ByteBuffer.wrap(SegmentCodec.encode(type, raw, raw.length)), decoded, raw.length);
+      assertArrayEquals(raw, decoded);
+    }
+  }
+
+  @Test
+  public void unsealedSegmentIsReadUpToLastCompleteBlock() throws IOException {
+    File file = write(25, 10, false);
+    assertEquals(25, readAll(file, false));
+
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    try {
+      truncated.setLength(truncated.length() - 1);
+    } finally {
+      truncated.close();
+    }
+    assertEquals(20, readAll(file, false));
+  }
+}
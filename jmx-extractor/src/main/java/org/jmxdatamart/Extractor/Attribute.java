@@ -26,6 +26,7 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package org.jmxdatamart.Extractor;
+import org.jmxdatamart.Extractor.MXBean.AttributePath;
 import org.jmxdatamart.common.DataType;
 /**
  * This class contains information related to any given attribute such as name,
@@ -37,6 +38,8 @@ public class Attribute {
     private DataType dataType;
     private String name;
     private String alias;
+    private Boolean changeOnly;
+    private transient volatile AttributePath path;
 
     public Attribute() {
         name = "";
@@ -69,6 +72,20 @@ public class Attribute {
      */
     public void setName(String name) {
         this.name = name;
+        this.path = null;
+    }
+
+    /**
+     * @return the name compiled for extraction, compiled on first use
+     * @throws IllegalArgumentException if the name can not be parsed
+     */
+    public AttributePath getPath() {
+        AttributePath compiled = path;
+        if (compiled == null) {
+            compiled = AttributePath.compile(name);
+            path = compiled;
+        }
+        return compiled;
     }
 
     /**
@@ -84,6 +101,21 @@ public class Attribute {
     public void setAlias(String alias) {
         this.alias = alias;
     }
+
+    /**
+     * @return whether the attribute is only written when its value changes,
+     * or null to do as its bean does
+     */
+    public Boolean getChangeOnly() {
+        return changeOnly;
+    }
+
+    /**
+     * @param changeOnly the changeOnly to set
+     */
+    public void setChangeOnly(Boolean changeOnly) {
+        this.changeOnly = changeOnly;
+    }
     
     /**
      * Check if alias of an attribute is correctly formated
@@ -119,6 +151,7 @@ public class Attribute {
         hash = 97 * hash + (this.dataType != null ? this.dataType.hashCode() : 0);
         hash = 97 * hash + (this.name != null ? this.name.hashCode() : 0);
         hash = 97 * hash + (this.alias != null ? this.alias.hashCode() : 0);
+        hash = 97 * hash + (this.changeOnly != null ? this.changeOnly.hashCode() : 0);
         return hash;
     }
 
@@ -140,6 +173,9 @@ public class Attribute {
         if ((this.alias == null) ? (other.alias != null) : !this.alias.equals(other.alias)) {
             return false;
         }
+        if ((this.changeOnly == null) ? (other.changeOnly != null) : !this.changeOnly.equals(other.changeOnly)) {
+            return false;
+        }
         return true;
     }
 }
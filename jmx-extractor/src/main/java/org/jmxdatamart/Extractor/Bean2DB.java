@@ -12,10 +12,24 @@ import java.util.*;
  *            * dealWIthDynamicBean creates missing table instead of throwing exception
  *            * export2DB now uses DataType's PrepareStatement mechanism
  *            * add schema to allow check table/column existance faster
+ *            * export2DB caches its insert statements per table and column list
+ *            * export2DB takes SampleRecords, binding numbers without boxing
+ *            * batched export2DB takes the records of the samples too
  */
 public class Bean2DB {
   
   private Map<String, Set<String>> schema = new TreeMap<String, Set<String>>();
+  private final Map<InsertKey, PreparedStatement> statements = new HashMap<InsertKey, PreparedStatement>();
+  private Connection statementConnection;
+  // Copies of a record share its layout, and fallback records come and go with theirs
+  private final Map<SampleLayout, RecordColumns> recordColumns = new WeakHashMap<SampleLayout, RecordColumns>();
+
+  private static final Comparator<Map.Entry<Attribute, Object>> COLUMN_ORDER = new Comparator<Map.Entry<Attribute, Object>>() {
+    @Override
+    public int compare(Map.Entry<Attribute, Object> o1, Map.Entry<Attribute, Object> o2) {
+      return o1.getKey().getAlias().compareTo(o2.getKey().getAlias());
+    }
+  };
 
   //get rid of the . : =, which are illegal for a table name
   public String convertIllegalTableName(String tablename) {
@@ -31,11 +45,11 @@ public class Bean2DB {
    * create columns for attributes that appears the first time
    * @param conn
    * @param tableName
-   * @param result
+   * @param columns
    * @throws SQLException
    * @throws DBException 
    */
-  private void dealWithDynamicBean(Connection conn, String tableName, Map<Attribute, Object> result) throws SQLException, DBException {
+  private void dealWithDynamicBean(Connection conn, String tableName, Collection<Attribute> columns) throws SQLException, DBException {
     if (!tableExists(tableName)) {
       HypersqlHandler.addTable(
               conn,
@@ -47,11 +61,12 @@ public class Bean2DB {
     String sql;
     boolean bl = conn.getAutoCommit();
     conn.setAutoCommit(false);
-    for (Map.Entry<Attribute, Object> m : result.entrySet()) {
-      if (!columnExists(m.getKey().getAlias(), tableName)) {
-        sql = "Alter table " + tableName + " add " + m.getKey().getAlias() + " " + m.getKey().getDataType().getHsqlType();  // BUG: not a portable solution
+    for (Attribute m : columns) {
+      if (!columnExists(m.getAlias(), tableName)) {
+        sql = "Alter table " + tableName + " add " + m.getAlias() + " " + m.getDataType().getHsqlType();  // BUG: not a portable solution
         conn.createStatement().executeUpdate(sql);
-        schema.get(tableName).add(m.getKey().getAlias());
+        schema.get(tableName).add(m.getAlias());
+        invalidateStatements(tableName);
       }
     }
     conn.commit();
@@ -70,30 +85,15 @@ public class Bean2DB {
    */
   public void export2DB(Connection conn, MBeanData mbd, Map<Attribute, Object> result) throws SQLException, DBException {
 
-    String tablename = mbd.getAlias() == null ? convertIllegalTableName(mbd.getName()) : mbd.getAlias();
+    String tablename = getTableName(mbd);
     //deal with dynamic bean
-    dealWithDynamicBean(conn, tablename, result);
-
-    PreparedStatement ps = null;
-
-    StringBuilder insertstring = new StringBuilder();
-    insertstring.append("insert into ").append(tablename).append(" (");
-    StringBuilder insertvalue = new StringBuilder();
-    insertvalue.append(" values(");
+    dealWithDynamicBean(conn, tablename, result.keySet());
 
-    for (Map.Entry<Attribute, Object> m : result.entrySet()) {
-      insertstring.append(((Attribute) m.getKey()).getAlias()).append(",");
-      insertvalue.append("?,");
-    }
-
-    String sql = insertstring.append("time)").toString();
-    sql += insertvalue.append("?)").toString();
-    //System.out.println(sql);
-    ps = conn.prepareStatement(sql);
+    List<Map.Entry<Attribute, Object>> columns = sortedColumns(result);
+    PreparedStatement ps = getInsertStatement(conn, tablename, columns);
 
-    //need to think about how to avoid retrieving the map twice
     int i = 0;
-    for (Map.Entry<Attribute, Object> m : result.entrySet()) {
+    for (Map.Entry<Attribute, Object> m : columns) {
       m.getKey().getDataType().addToSqlPreparedStatement(ps, ++i, m.getValue());
     }
     ps.setTimestamp(++i, new Timestamp((new java.util.Date()).getTime()));
@@ -107,12 +107,226 @@ public class Bean2DB {
     } catch (SQLException e) {
       conn.rollback();
     } finally {
-      ps.close();
+      ps.clearParameters();
       conn.setAutoCommit(bl);
     }
 
   }
 
+  /**
+   * Insert a whole poll's worth of samples in a single transaction, sending
+   * the rows of each table and column list to the database as one batch
+   *
+   * @param conn the SQL connection
+   * @param samples data to be inserted
+   * @throws SQLException if the batch could not be written, in which case
+   * none of it is. The same holds for a value that fails to bind with a
+   * runtime exception
+   * @throws DBException
+   */
+  public void export2DB(Connection conn, List<BeanSample> samples) throws SQLException, DBException {
+    Map<InsertKey, List<BeanSample>> batches = new LinkedHashMap<InsertKey, List<BeanSample>>();
+    Map<BeanSample, RecordColumns> sampleColumns = new IdentityHashMap<BeanSample, RecordColumns>();
+    for (BeanSample sample : samples) {
+      RecordColumns columns = columnsOf(conn, sample.getTableName(), sample.getRecord());
+      sampleColumns.put(sample, columns);
+
+      List<BeanSample> batch = batches.get(columns.key);
+      if (batch == null) {
+        batch = new ArrayList<BeanSample>();
+        batches.put(columns.key, batch);
+      }
+      batch.add(sample);
+    }
+
+    boolean bl = conn.getAutoCommit();
+    // The statements are cached, rows left in their batches would be sent again by the next poll
+    List<PreparedStatement> batched = new ArrayList<PreparedStatement>();
+    boolean committed = false;
+    try {
+      conn.setAutoCommit(false);
+      for (Map.Entry<InsertKey, List<BeanSample>> batch : batches.entrySet()) {
+        PreparedStatement ps = getInsertStatement(conn, batch.getKey());
+        batched.add(ps);
+        for (BeanSample sample : batch.getValue()) {
+          bind(ps, sampleColumns.get(sample), sample.getRecord(), sample.getTimestamp());
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      conn.commit();
+      committed = true;
+    } finally {
+      try {
+        if (!committed) {
+          conn.rollback();
+          for (PreparedStatement ps : batched) {
+            ps.clearBatch();
+            ps.clearParameters();
+          }
+        }
+      } finally {
+        conn.setAutoCommit(bl);
+      }
+    }
+  }
+
+  /**
+   * Insert the values of a record. The columns of the insert statement are
+   * only worked out again when the record's layout or its set of present
+   * values changes, and numeric values are bound straight from its
+   * primitive arrays, so writing a record in steady state does not allocate
+   * for them.
+   *
+   * @param conn the SQL connection
+   * @param tablename the table to insert into
+   * @param record data to be inserted
+   * @param timestamp when the data was extracted
+   * @throws SQLException if the row could not be written
+   * @throws DBException
+   */
+  public void export2DB(Connection conn, String tablename, SampleRecord record, long timestamp) throws SQLException, DBException {
+    RecordColumns columns = columnsOf(conn, tablename, record);
+    PreparedStatement ps = getInsertStatement(conn, columns.key);
+    bind(ps, columns, record, timestamp);
+
+    boolean bl = conn.getAutoCommit();
+    try {
+      conn.setAutoCommit(false);
+      ps.executeUpdate();
+      conn.commit();
+    } catch (SQLException e) {
+      conn.rollback();
+      throw e;
+    } finally {
+      ps.clearParameters();
+      conn.setAutoCommit(bl);
+    }
+  }
+
+  /**
+   * @return the columns the present values of a record are inserted into,
+   * creating the missing ones when they are worked out again
+   */
+  private RecordColumns columnsOf(Connection conn, String tablename, SampleRecord record) throws SQLException, DBException {
+    RecordColumns columns = recordColumns.get(record.getLayout());
+    if (columns == null || !columns.matches(tablename, record)) {
+      columns = new RecordColumns(tablename, record);
+      dealWithDynamicBean(conn, tablename, columns.attributes);
+      recordColumns.put(record.getLayout(), columns);
+    }
+    return columns;
+  }
+
+  private void bind(PreparedStatement ps, RecordColumns columns, SampleRecord record, long timestamp) throws SQLException {
+    int i = 0;
+    for (int slot : columns.slots) {
+      DataType type = record.getAttribute(slot).getDataType();
+      switch (type) {
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+          ps.setLong(++i, record.getLong(slot));
+          break;
+        case FLOAT:
+        case DOUBLE:
+          ps.setDouble(++i, record.getDouble(slot));
+          break;
+        default:
+          type.addToSqlPreparedStatement(ps, ++i, record.getValue(slot));
+      }
+    }
+    ps.setTimestamp(++i, new Timestamp(timestamp));
+  }
+
+  /**
+   * @param mbd a bean
+   * @return the name of the table the bean's values are written to
+   */
+  public String getTableName(MBeanData mbd) {
+    return mbd.getAlias() == null ? convertIllegalTableName(mbd.getName()) : mbd.getAlias();
+  }
+
+  /**
+   * Order the values of a bean by column name, so that the same set of
+   * columns always produces the same insert statement
+   */
+  private List<Map.Entry<Attribute, Object>> sortedColumns(Map<Attribute, Object> result) {
+    List<Map.Entry<Attribute, Object>> columns = new ArrayList<Map.Entry<Attribute, Object>>(result.entrySet());
+    Collections.sort(columns, COLUMN_ORDER);
+    return columns;
+  }
+
+  private List<String> columnNames(List<Map.Entry<Attribute, Object>> columns) {
+    List<String> aliases = new ArrayList<String>(columns.size());
+    for (Map.Entry<Attribute, Object> m : columns) {
+      aliases.add(m.getKey().getAlias());
+    }
+    return aliases;
+  }
+
+  /**
+   * Return the cached insert statement for the given table and columns,
+   * preparing it if this is the first time they are seen on conn
+   */
+  private PreparedStatement getInsertStatement(Connection conn, String tablename,
+                                              List<Map.Entry<Attribute, Object>> columns) throws SQLException {
+    return getInsertStatement(conn, new InsertKey(tablename, columnNames(columns)));
+  }
+
+  private PreparedStatement getInsertStatement(Connection conn, InsertKey key) throws SQLException {
+    if (conn != statementConnection) {
+      closeStatements();
+      statementConnection = conn;
+    }
+
+    PreparedStatement ps = statements.get(key);
+    if (ps == null) {
+      StringBuilder insertstring = new StringBuilder();
+      insertstring.append("insert into ").append(key.tablename).append(" (");
+      StringBuilder insertvalue = new StringBuilder();
+      insertvalue.append(" values(");
+
+      for (String alias : key.columns) {
+        insertstring.append(alias).append(",");
+        insertvalue.append("?,");
+      }
+
+      String sql = insertstring.append("time)").toString();
+      sql += insertvalue.append("?)").toString();
+      ps = conn.prepareStatement(sql);
+      statements.put(key, ps);
+    }
+    return ps;
+  }
+
+  /**
+   * Close the cached insert statements of a table, because its columns changed
+   */
+  private void invalidateStatements(String tablename) {
+    Iterator<Map.Entry<InsertKey, PreparedStatement>> it = statements.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<InsertKey, PreparedStatement> entry = it.next();
+      if (entry.getKey().tablename.equals(tablename)) {
+        DBHandler.releaseDatabaseResource(null, null, entry.getValue(), null);
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Close all cached insert statements. Must be called before the connection
+   * they were prepared on is closed.
+   */
+  public void closeStatements() {
+    for (PreparedStatement ps : statements.values()) {
+      DBHandler.releaseDatabaseResource(null, null, ps, null);
+    }
+    statements.clear();
+    statementConnection = null;
+  }
+
   /**
    * Generate MBean tables from a settings
    *
@@ -181,4 +395,81 @@ public class Bean2DB {
   private boolean columnExists(String alias, String tableName) {
     return schema.get(tableName).contains(alias);
   }
+
+  /**
+   * The slots of a record that were present when it was last written, in
+   * column order, and the insert statement they are written with
+   */
+  private static class RecordColumns {
+    private final int version;
+    private final boolean[] present;
+    private final int[] slots;
+    private final List<Attribute> attributes;
+    private final InsertKey key;
+
+    private RecordColumns(String tablename, final SampleRecord record) {
+      version = record.getVersion();
+      present = new boolean[record.size()];
+      List<Integer> ordered = new ArrayList<Integer>();
+      for (int slot = 0; slot < record.size(); ++slot) {
+        present[slot] = record.isPresent(slot);
+        if (present[slot]) {
+          ordered.add(slot);
+        }
+      }
+      Collections.sort(ordered, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return record.getAttribute(o1).getAlias().compareTo(record.getAttribute(o2).getAlias());
+        }
+      });
+      slots = new int[ordered.size()];
+      attributes = new ArrayList<Attribute>(ordered.size());
+      List<String> aliases = new ArrayList<String>(ordered.size());
+      for (int i = 0; i < slots.length; ++i) {
+        slots[i] = ordered.get(i);
+        attributes.add(record.getAttribute(slots[i]));
+        aliases.add(record.getAttribute(slots[i]).getAlias());
+      }
+      key = new InsertKey(tablename, aliases);
+    }
+
+    private boolean matches(String tablename, SampleRecord record) {
+      if (version != record.getVersion()
+              || present.length != record.size()
+              || !key.tablename.equals(tablename)) {
+        return false;
+      }
+      for (int slot = 0; slot < present.length; ++slot) {
+        if (present[slot] != record.isPresent(slot)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static class InsertKey {
+    private final String tablename;
+    private final List<String> columns;
+
+    private InsertKey(String tablename, List<String> columns) {
+      this.tablename = tablename;
+      this.columns = columns;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * tablename.hashCode() + columns.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof InsertKey)) {
+        return false;
+      }
+      InsertKey other = (InsertKey) obj;
+      return tablename.equals(other.tablename) && columns.equals(other.columns);
+    }
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The values extracted from one bean at one point in time, together with the
+ * table they are written to. The values are kept in a record that belongs to
+ * the sample, so it can be queued and written later.
+ */
+public class BeanSample {
+  private final String tableName;
+  private final SampleRecord record;
+  private final long timestamp;
+  private final Set<String> changeOnly;
+
+  public BeanSample(String tableName, Map<Attribute, Object> values, long timestamp) {
+    this(tableName, values, timestamp, Collections.<String>emptySet());
+  }
+
+  /**
+   * @param changeOnly the aliases of the values only written when they change
+   */
+  public BeanSample(String tableName, Map<Attribute, Object> values, long timestamp, Set<String> changeOnly) {
+    this(tableName, SampleRecord.of(values), timestamp, changeOnly);
+  }
+
+  /**
+   * @param record the values, which must not be refilled while the sample
+   * may still be written, e.g. a {@link SampleRecord#copy()}
+   * @param changeOnly the aliases of the values only written when they change
+   */
+  public BeanSample(String tableName, SampleRecord record, long timestamp, Set<String> changeOnly) {
+    this.tableName = tableName;
+    this.record = record;
+    this.timestamp = timestamp;
+    this.changeOnly = changeOnly;
+  }
+
+  /**
+   * @return the table the sample is written to
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * @return the extracted values
+   */
+  public SampleRecord getRecord() {
+    return record;
+  }
+
+  /**
+   * @return the extracted values as a new map
+   */
+  public Map<Attribute, Object> getValues() {
+    return record.toMap();
+  }
+
+  /**
+   * @return when the sample was taken, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return the aliases of the values that are only written when they change
+   */
+  public Set<String> getChangeOnlyAliases() {
+    return changeOnly;
+  }
+
+  @Override
+  public String toString() {
+    return tableName + "@" + timestamp + ": " + record.toMap();
+  }
+}
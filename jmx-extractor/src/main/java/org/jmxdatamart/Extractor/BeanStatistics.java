@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the statistics of a single MBean, as exposed by
+ * {@link ExtractorStatsMXBean#getBeans()}
+ */
+public final class BeanStatistics {
+  private final long extractions;
+  private final long lastTimestamp;
+  private final double durationMedian;
+  private final double duration90thPercentile;
+  private final double duration99thPercentile;
+  private final double lastFetchTime;
+  private final double lastWriteTime;
+  private final double totalFetchTime;
+  private final double totalWriteTime;
+  private final long lastValues;
+  private final long failedAttributes;
+  private final long bytesWritten;
+
+  @ConstructorProperties({"extractions", "lastTimestamp", "durationMedian", "duration90thPercentile",
+    "duration99thPercentile", "lastFetchTime", "lastWriteTime", "totalFetchTime", "totalWriteTime",
+    "lastValues", "failedAttributes", "bytesWritten"})
+  public BeanStatistics(long extractions, long lastTimestamp, double durationMedian, double duration90thPercentile,
+          double duration99thPercentile, double lastFetchTime, double lastWriteTime, double totalFetchTime,
+          double totalWriteTime, long lastValues, long failedAttributes, long bytesWritten) {
+    this.extractions = extractions;
+    this.lastTimestamp = lastTimestamp;
+    this.durationMedian = durationMedian;
+    this.duration90thPercentile = duration90thPercentile;
+    this.duration99thPercentile = duration99thPercentile;
+    this.lastFetchTime = lastFetchTime;
+    this.lastWriteTime = lastWriteTime;
+    this.totalFetchTime = totalFetchTime;
+    this.totalWriteTime = totalWriteTime;
+    this.lastValues = lastValues;
+    this.failedAttributes = failedAttributes;
+    this.bytesWritten = bytesWritten;
+  }
+
+  /**
+   * @return the number of cycles the MBean was extracted in
+   */
+  public long getExtractions() {
+    return extractions;
+  }
+
+  /**
+   * @return the time the last cycle extracting the MBean started
+   */
+  public long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  /**
+   * @return the median time to fetch and write the MBean
+   */
+  public double getDurationMedian() {
+    return durationMedian;
+  }
+
+  public double getDuration90thPercentile() {
+    return duration90thPercentile;
+  }
+
+  public double getDuration99thPercentile() {
+    return duration99thPercentile;
+  }
+
+  public double getLastFetchTime() {
+    return lastFetchTime;
+  }
+
+  public double getLastWriteTime() {
+    return lastWriteTime;
+  }
+
+  public double getTotalFetchTime() {
+    return totalFetchTime;
+  }
+
+  public double getTotalWriteTime() {
+    return totalWriteTime;
+  }
+
+  public long getLastValues() {
+    return lastValues;
+  }
+
+  public long getFailedAttributes() {
+    return failedAttributes;
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drops the values of change-only attributes that are the same as the last
+ * value written to their column, and the whole row when nothing else is
+ * left. Every keyframe interval, and at the start of every file, a row with
+ * all values is written anyway, so the series can be rebuilt by carrying the
+ * last value forward from the keyframe.
+ */
+class ChangeFilter {
+  private final long keyframeMillis;
+  private final Map<String, TableState> tables = new HashMap<String, TableState>();
+
+  /**
+   * @param keyframeMillis how often a full row is written, 0 to only write
+   * one at the start of every file
+   */
+  ChangeFilter(long keyframeMillis) {
+    this.keyframeMillis = keyframeMillis;
+  }
+
+  /**
+   * @return the sample without its unchanged values, or null if there is
+   * nothing left to write. The record of the sample is left as it is, the
+   * values that are written are copied if some are dropped.
+   */
+  synchronized BeanSample filter(BeanSample sample) {
+    Set<String> changeOnly = sample.getChangeOnlyAliases();
+    if (changeOnly.isEmpty()) {
+      return sample;
+    }
+
+    TableState state = tables.get(sample.getTableName());
+    if (state == null) {
+      state = new TableState();
+      tables.put(sample.getTableName(), state);
+    }
+
+    boolean keyframe = state.keyframe < 0
+            || (keyframeMillis > 0 && sample.getTimestamp() - state.keyframe >= keyframeMillis);
+    if (keyframe) {
+      state.keyframe = sample.getTimestamp();
+    }
+
+    SampleRecord record = sample.getRecord();
+    SampleRecord changed = null;
+    int kept = 0;
+    for (int slot = 0; slot < record.size(); ++slot) {
+      if (!record.isPresent(slot)) {
+        continue;
+      }
+      String alias = record.getAttribute(slot).getAlias();
+      if (!changeOnly.contains(alias)) {
+        ++kept;
+        continue;
+      }
+      Object value = record.getValue(slot);
+      Object last = state.last.put(alias, value);
+      if (keyframe || value == null || !value.equals(last)) {
+        ++kept;
+      } else {
+        if (changed == null) {
+          changed = record.copy();
+        }
+        changed.remove(slot);
+      }
+    }
+    if (kept == 0) {
+      return null;
+    }
+    if (changed == null) {
+      return sample;
+    }
+    return new BeanSample(sample.getTableName(), changed, sample.getTimestamp(), changeOnly);
+  }
+
+  /**
+   * Forget the values written so far, so that the next sample of every table
+   * is a keyframe
+   */
+  synchronized void reset() {
+    tables.clear();
+  }
+
+  private static class TableState {
+    private final Map<String, Object> last = new HashMap<String, Object>();
+    private long keyframe = -1;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything needed to extract a single concrete MBean, resolved once: its
+ * ObjectName, the alias and table its values are written to and the
+ * attributes to extract, whose paths are already compiled. Pattern beans get
+ * a plan for each MBean matching them, instead of having their MBeanData
+ * renamed for every instance on every poll.
+ */
+public final class ExtractionPlan {
+  private final ObjectName objectName;
+  private final String tableName;
+  private final MBeanData beanData;
+  private final Set<Attribute> changeOnly;
+  private final Set<String> changeOnlyAliases = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final SampleRecord record = new SampleRecord(new SampleLayout());
+  private final AtomicBoolean recordInUse = new AtomicBoolean();
+
+  /**
+   * @param source the bean configuring the MBean, whose attributes and
+   * options are copied
+   */
+  ExtractionPlan(ObjectName objectName, String alias, String tableName, MBeanData source) {
+    this.objectName = objectName;
+    this.tableName = tableName;
+    this.beanData = new MBeanData(
+            objectName.getCanonicalName(),
+            alias,
+            Collections.unmodifiableList(source.getAttributes()),
+            true);
+    this.beanData.setPollingRate(source.getPollingRate());
+    this.beanData.setChangeOnly(source.getChangeOnly());
+    this.beanData.setAggregationWindow(source.getAggregationWindow());
+    this.changeOnly = Collections.unmodifiableSet(beanData.getChangeOnlyAttributes());
+    for (Attribute a : changeOnly) {
+      if (a.getAlias() != null && !a.getAlias().isEmpty()) {
+        changeOnlyAliases.add(a.getAlias());
+      }
+    }
+  }
+
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  public String getName() {
+    return beanData.getName();
+  }
+
+  public String getAlias() {
+    return beanData.getAlias();
+  }
+
+  /**
+   * @return the table the MBean's values are written to
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  public List<Attribute> getAttributes() {
+    return beanData.getAttributes();
+  }
+
+  /**
+   * @return the attributes only written when their value changes
+   */
+  public Set<Attribute> getChangeOnlyAttributes() {
+    return changeOnly;
+  }
+
+  /**
+   * @return the aliases of the columns only written when their value
+   * changes. Columns of change-only attributes without an alias, e.g.
+   * patterns, are added as they are extracted.
+   */
+  public Set<String> getChangeOnlyAliases() {
+    return Collections.unmodifiableSet(changeOnlyAliases);
+  }
+
+  /**
+   * Note the columns added to a layout while extracting an attribute, which
+   * are change-only if the attribute is
+   * @param from the number of columns the layout had before
+   */
+  void addColumns(Attribute attribute, SampleLayout layout, int from) {
+    if (from < layout.size() && changeOnly.contains(attribute)) {
+      for (int slot = from; slot < layout.size(); ++slot) {
+        changeOnlyAliases.add(layout.getColumn(slot).getAlias());
+      }
+    }
+  }
+
+  /**
+   * @return an empty record to extract the MBean's values into, which is the
+   * same one every poll unless it was not released by the previous one, e.g.
+   * because that extraction is still running after its time budget ran out
+   */
+  SampleRecord acquireRecord() {
+    if (recordInUse.compareAndSet(false, true)) {
+      record.reset();
+      return record;
+    }
+    return new SampleRecord(new SampleLayout());
+  }
+
+  /**
+   * Hand a record from {@link #acquireRecord()} back once its values have
+   * been written
+   */
+  void releaseRecord(SampleRecord released) {
+    if (released == record) {
+      recordInUse.set(false);
+    }
+  }
+
+  /**
+   * @return the MBean as a bean of its own, for writers taking MBeanData. It
+   * is shared by every poll and must not be modified.
+   */
+  MBeanData getBeanData() {
+    return beanData;
+  }
+
+  @Override
+  public String toString() {
+    return getName() + " -> " + tableName;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.Extractor.MXBean.MultiLayeredAttribute;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out the {@link ExtractionPlan} of every MBean extracted, creating it
+ * the first time the MBean is seen and dropping it, and the MBean's
+ * statistics, once the MBean server delegate reports the MBean was
+ * unregistered.
+ */
+public class ExtractionPlanRegistry implements NotificationListener {
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(ExtractionPlanRegistry.class);
+  private final MBeanServerConnection mbsc;
+  private final Bean2DB tableNames = new Bean2DB();
+  private final ConcurrentMap<PlanKey, ExtractionPlan> plans = new ConcurrentHashMap<PlanKey, ExtractionPlan>();
+  private final ExtractorStats stats;
+  private final WindowAggregator windows;
+  private boolean listening;
+
+  /**
+   * @param mbsc the MBean server whose unregistrations drop plans, may be
+   * null to keep plans until {@link #close()}
+   */
+  public ExtractionPlanRegistry(MBeanServerConnection mbsc) {
+    this(mbsc, null);
+  }
+
+  /**
+   * @param stats the statistics to drop the beans of dropped plans from,
+   * may be null
+   */
+  public ExtractionPlanRegistry(MBeanServerConnection mbsc, ExtractorStats stats) {
+    this(mbsc, stats, null);
+  }
+
+  /**
+   * @param windows the aggregation windows to let go of the windows of
+   * dropped plans in, may be null
+   */
+  ExtractionPlanRegistry(MBeanServerConnection mbsc, ExtractorStats stats, WindowAggregator windows) {
+    this.mbsc = mbsc;
+    this.stats = stats;
+    this.windows = windows;
+    if (mbsc == null) {
+      return;
+    }
+
+    MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+    filter.enableAllObjectNames();
+    filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+    try {
+      mbsc.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+      listening = true;
+    } catch (Exception ex) {
+      logger.warn("Can not listen for MBean unregistrations, extraction plans will not be dropped", ex);
+    }
+  }
+
+  /**
+   * @param beanData a bean naming a single MBean
+   * @return the plan for the bean, or null if its name is not a valid
+   * ObjectName
+   */
+  public ExtractionPlan getPlan(MBeanData beanData) {
+    PlanKey key = new PlanKey(beanData, null);
+    ExtractionPlan plan = plans.get(key);
+    if (plan == null) {
+      ObjectName on;
+      try {
+        on = new ObjectName(beanData.getName());
+      } catch (MalformedObjectNameException ex) {
+        logger.error("Non standard name for ObjectName " + beanData.getName(), ex);
+        return null;
+      }
+      plan = putIfAbsent(key,
+              new ExtractionPlan(on, beanData.getAlias(), tableNames.getTableName(beanData), beanData));
+    }
+    return plan;
+  }
+
+  /**
+   * @param pattern a pattern bean
+   * @param on an MBean matching the pattern
+   * @return the plan for extracting the MBean with the pattern's attributes
+   */
+  public ExtractionPlan getPlan(MBeanData pattern, ObjectName on) {
+    PlanKey key = new PlanKey(pattern, on);
+    ExtractionPlan plan = plans.get(key);
+    if (plan == null) {
+      String alias = MultiLayeredAttribute.name2alias(on.getCanonicalName());
+      plan = putIfAbsent(key, new ExtractionPlan(on, alias, alias, pattern));
+    }
+    return plan;
+  }
+
+  /**
+   * @return the plan registered for key, which is not the given one if
+   * another thread registered its own first
+   */
+  private ExtractionPlan putIfAbsent(PlanKey key, ExtractionPlan plan) {
+    ExtractionPlan existing = plans.putIfAbsent(key, plan);
+    return existing != null ? existing : plan;
+  }
+
+  /**
+   * Drop the plans of an MBean, its statistics and its aggregation windows
+   * @param on name of the MBean
+   */
+  public void invalidate(ObjectName on) {
+    boolean dropped = false;
+    for (Iterator<ExtractionPlan> it = plans.values().iterator(); it.hasNext();) {
+      ExtractionPlan plan = it.next();
+      if (plan.getObjectName().equals(on)) {
+        it.remove();
+        dropped = true;
+        if (windows != null) {
+          windows.release(plan);
+        }
+      }
+    }
+    if (dropped && stats != null) {
+      stats.removeBean(on.getCanonicalName());
+    }
+  }
+
+  /**
+   * @return how many plans are currently known
+   */
+  public int size() {
+    return plans.size();
+  }
+
+  @Override
+  public void handleNotification(Notification notification, Object handback) {
+    if (notification instanceof MBeanServerNotification) {
+      ObjectName on = ((MBeanServerNotification) notification).getMBeanName();
+      logger.debug("{} unregistered, dropping its extraction plans", on);
+      invalidate(on);
+    }
+  }
+
+  /**
+   * Stop listening for MBean unregistrations and drop every plan
+   */
+  public void close() {
+    if (listening) {
+      try {
+        mbsc.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+      } catch (Exception ex) {
+        logger.debug("While removing MBean unregistration listener", ex);
+      }
+      listening = false;
+    }
+    plans.clear();
+  }
+
+  /**
+   * A configured bean, compared by identity since several beans may share a
+   * name, and the MBean it was resolved to
+   */
+  private static class PlanKey {
+    private final MBeanData beanData;
+    private final ObjectName on;
+
+    private PlanKey(MBeanData beanData, ObjectName on) {
+      this.beanData = beanData;
+      this.on = on;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(beanData) + (on != null ? on.hashCode() : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PlanKey)) {
+        return false;
+      }
+      PlanKey other = (PlanKey) obj;
+      return beanData == other.beanData && (on == null ? other.on == null : on.equals(other.on));
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs an extraction periodically on its own thread. Unlike a
+ * {@link java.util.Timer}, an extraction that overruns its period causes the
+ * polls that came due in the meantime to be skipped rather than run back to
+ * back, and an extraction that throws does not stop later ones from running.
+ * Also records how late each extraction started, how long it ran and how many
+ * polls were skipped, to show when the polling rate is too aggressive.
+ */
+public class ExtractionScheduler {
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(ExtractionScheduler.class);
+  private final ScheduledThreadPoolExecutor executor;
+  private final Runnable task;
+  private final long periodNanos;
+  private final ScheduleMode mode;
+  private final long jitterNanos;
+  private final Random random = new Random();
+
+  private final AtomicLong runs = new AtomicLong();
+  private final AtomicLong failedRuns = new AtomicLong();
+  private final AtomicLong skippedTicks = new AtomicLong();
+  private volatile long lastStartLatencyMillis;
+  private volatile long maxStartLatencyMillis;
+  private volatile long lastRunDurationMillis;
+  private volatile long maxRunDurationMillis;
+
+  private long nextTick;
+
+  /**
+   * @param name name of the thread extractions run on
+   * @param task the extraction
+   * @param periodMillis time between extractions
+   * @param mode how the time between extractions is measured
+   * @param jitterMillis up to how many milliseconds each extraction is
+   * randomly delayed by, so that many extractors do not poll in lock step
+   */
+  public ExtractionScheduler(final String name, Runnable task, long periodMillis, ScheduleMode mode, long jitterMillis) {
+    if (periodMillis <= 0) {
+      throw new IllegalArgumentException("Polling period must be positive: " + periodMillis);
+    }
+    this.task = task;
+    this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+    this.mode = mode;
+    this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, jitterMillis));
+
+    executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * Run the first extraction now and schedule the following ones
+   */
+  public void start() {
+    nextTick = System.nanoTime();
+    scheduleAt(nextTick);
+  }
+
+  /**
+   * Cancel future extractions and wait for a running one to finish
+   */
+  public void stop() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(periodNanos + TimeUnit.SECONDS.toNanos(10), TimeUnit.NANOSECONDS)) {
+        logger.warn("Extraction still running after stopping the scheduler");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void scheduleAt(final long tick) {
+    long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+    final long plannedStart = tick + jitter;
+    if (executor.isShutdown()) {
+      return;
+    }
+    executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        runAndReschedule(plannedStart);
+      }
+    }, plannedStart - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+  private void runAndReschedule(long plannedStart) {
+    long start = System.nanoTime();
+    lastStartLatencyMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, start - plannedStart));
+    maxStartLatencyMillis = Math.max(maxStartLatencyMillis, lastStartLatencyMillis);
+
+    try {
+      task.run();
+    } catch (Throwable t) {
+      // Keep polling, a Timer would have died here
+      failedRuns.incrementAndGet();
+      logger.error("While extracting MBeans", t);
+    }
+
+    long end = System.nanoTime();
+    runs.incrementAndGet();
+    lastRunDurationMillis = TimeUnit.NANOSECONDS.toMillis(end - start);
+    maxRunDurationMillis = Math.max(maxRunDurationMillis, lastRunDurationMillis);
+
+    if (mode == ScheduleMode.FIXED_DELAY) {
+      nextTick = end + periodNanos;
+
+    } else {
+      nextTick += periodNanos;
+      if (nextTick <= end) {
+        long missed = (end - nextTick) / periodNanos + 1;
+        nextTick += missed * periodNanos;
+        skippedTicks.addAndGet(missed);
+        logger.warn("Extraction took {} ms, skipped {} polls", lastRunDurationMillis, missed);
+      }
+    }
+    scheduleAt(nextTick);
+  }
+
+  /**
+   * @return the number of extractions run so far
+   */
+  public long getRuns() {
+    return runs.get();
+  }
+
+  /**
+   * @return the number of extractions that threw
+   */
+  public long getFailedRuns() {
+    return failedRuns.get();
+  }
+
+  /**
+   * @return the number of polls skipped because an extraction overran
+   */
+  public long getSkippedTicks() {
+    return skippedTicks.get();
+  }
+
+  /**
+   * @return how many milliseconds after it was due the last extraction started
+   */
+  public long getLastStartLatencyMillis() {
+    return lastStartLatencyMillis;
+  }
+
+  /**
+   * @return the largest start latency seen so far, in milliseconds
+   */
+  public long getMaxStartLatencyMillis() {
+    return maxStartLatencyMillis;
+  }
+
+  /**
+   * @return how many milliseconds the last extraction ran
+   */
+  public long getLastRunDurationMillis() {
+    return lastRunDurationMillis;
+  }
+
+  /**
+   * @return the longest extraction so far, in milliseconds
+   */
+  public long getMaxRunDurationMillis() {
+    return maxRunDurationMillis;
+  }
+}
@@ -28,9 +28,10 @@
 package org.jmxdatamart.Extractor;
 
 import com.google.inject.Inject;
-import org.jmxdatamart.Extractor.MXBean.MultiLayeredAttribute;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectInstance;
@@ -41,28 +42,71 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Extractor {
 
   private final ExtractorSettings configData;
   private final StatisticsWriter writer;
   private MBeanServerConnection mbsc;
+  private RoundTripCounter roundTrips;
+  private MBeanMetadataCache metadata;
+  private ExtractionPlanRegistry plans;
+  private final WindowAggregator windows = new WindowAggregator();
+  private final ExtractorStats stats = new ExtractorStats();
+  private ObjectName statsName;
+  private WritePipeline pipeline;
+  private ExecutorService workers;
   private final org.slf4j.Logger logger = LoggerFactory.getLogger(Extractor.class);
-  private Timer timer;
+  private final Map<Long, ExtractionScheduler> schedulers = new TreeMap<Long, ExtractionScheduler>();
 
   @Inject
   public Extractor(ExtractorSettings configData, StatisticsWriter writer) {
     this.writer = writer;
     this.configData = configData;
 
-    mbsc = getMBeanServerConnection();
+    roundTrips = new RoundTripCounter(getMBeanServerConnection());
+    mbsc = roundTrips.getConnection();
+    if (configData.getMetadataCacheTtl() > 0) {
+      metadata = new MBeanMetadataCache(mbsc, configData.getMetadataCacheTtl() * 1000);
+    }
+    plans = new ExtractionPlanRegistry(mbsc, stats, windows);
+    if (configData.getExtractionThreads() > 1) {
+      workers = Executors.newFixedThreadPool(configData.getExtractionThreads(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "JMX Statistics Extractor worker " + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    if (configData.getWriteQueueCapacity() > 0) {
+      pipeline = new WritePipeline(writer, configData.getWriteQueueCapacity(), configData.getBackpressurePolicy());
+    }
 
     logger.info("Extracting JMX Statistics to directory {}", configData.getFolderLocation());
 
     if (isPeriodicallyExtracting()) {
+      registerStats();
       periodicallyExtract();
     } else {
       extract();
+      closeWriter();
+      if (workers != null) {
+        workers.shutdown();
+      }
+      plans.close();
     }
   }
 
@@ -90,12 +134,86 @@ public final class Extractor {
     return jmxConn;
   }
 
+  /**
+   * Expose the extractor's own statistics on the platform MBean server,
+   * replacing those of any previous extractor in this JVM
+   */
+  private void registerStats() {
+    try {
+      MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(ExtractorStats.OBJECT_NAME);
+      if (mbs.isRegistered(name)) {
+        mbs.unregisterMBean(name);
+      }
+      mbs.registerMBean(stats, name);
+      statsName = name;
+    } catch (JMException ex) {
+      logger.error("Error while registering " + ExtractorStats.OBJECT_NAME, ex);
+    }
+  }
+
+  private void unregisterStats() {
+    if (statsName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName);
+    } catch (JMException ex) {
+      logger.error("Error while unregistering " + ExtractorStats.OBJECT_NAME, ex);
+    }
+    statsName = null;
+  }
+
+  /**
+   * Start a scheduler for each tier of beans sharing a polling rate, so that
+   * slowly changing beans are not extracted as often as the others
+   */
   private void periodicallyExtract() {
-    boolean isDaemon = true;
-    timer = new Timer("JMX Statistics Extractor", isDaemon);
-    long rate = configData.getPollingRate() * 1000;
-    int delay = 0;
-    timer.scheduleAtFixedRate(new Extract(), delay, rate);
+    for (Map.Entry<Long, List<MBeanData>> tier : getPollingTiers(configData).entrySet()) {
+      final List<MBeanData> beans = tier.getValue();
+      long rate = tier.getKey() * 1000;
+      String name = "JMX Statistics Extractor " + tier.getKey() + "s";
+      schedulers.put(tier.getKey(), new ExtractionScheduler(name, new Runnable() {
+        @Override
+        public void run() {
+          extract(beans);
+        }
+      }, rate, configData.getScheduleMode(), configData.getPollingJitter()));
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        closeWriter();
+      }
+    }));
+    for (ExtractionScheduler scheduler : schedulers.values()) {
+      scheduler.start();
+    }
+  }
+
+  /**
+   * @return the enabled beans grouped by polling rate in seconds, beans
+   * without a rate of their own use the rate of the settings
+   */
+  static Map<Long, List<MBeanData>> getPollingTiers(ExtractorSettings settings) {
+    Map<Long, List<MBeanData>> tiers = new TreeMap<Long, List<MBeanData>>();
+    for (MBeanData beanData : settings.getBeans()) {
+      if (!beanData.isEnable()) {
+        continue;
+      }
+      Long rate = beanData.getPollingRate();
+      if (rate == null || rate <= 0) {
+        rate = settings.getPollingRate();
+      }
+      List<MBeanData> tier = tiers.get(rate);
+      if (tier == null) {
+        tier = new ArrayList<MBeanData>();
+        tiers.put(rate, tier);
+      }
+      tier.add(beanData);
+    }
+    return tiers;
   }
 
   public boolean isPeriodicallyExtracting() {
@@ -103,46 +221,163 @@ public final class Extractor {
   }
 
   void extract() {
+    extract(this.configData.getBeans());
+  }
+
+  /**
+   * Extract the beans, then write them. The writer is only locked once
+   * everything is extracted, so that a tier waiting on a slow MBean server
+   * does not hold up the writes of the other tiers.
+   */
+  private void extract(List<MBeanData> beans) {
+    long pollTime = System.currentTimeMillis();
+    ExtractorStats.Cycle cycle = stats.startCycle();
+    roundTrips.startTally(cycle.getRoundTrips());
 
     try {
-      writer.startWritingStatistics();
+      List<Extraction> extractions = workers != null
+              ? extractInParallel(beans, cycle)
+              : extractSequentially(beans);
+      writeValues(extractions, pollTime, cycle);
 
-      for (MBeanData beanData : this.configData.getBeans()) {
-        if (beanData.isEnable()) {
-          if (!beanData.isPattern()) {
-            writeStatistics(beanData);
+    } finally {
+      roundTrips.stopTally();
+      stats.endCycle(cycle);
+      logger.debug("Extracted with {} MBean server round trips", cycle.getRoundTrips().get());
+    }
+  }
 
-          } else {
-            String originalName = beanData.getName();
-            try {
+  private List<Extraction> extractSequentially(List<MBeanData> beans) {
+    List<Extraction> extractions = new ArrayList<Extraction>();
+    for (MBeanData beanData : beans) {
+      if (beanData.isEnable()) {
+        if (!beanData.isPattern()) {
+          ExtractionPlan plan = plans.getPlan(beanData);
+          if (plan != null) {
+            extractions.add(extractValues(plan));
+          }
 
-              for (ObjectInstance oi : getObjectInstances(beanData)) {
-                String actual = oi.getObjectName().getCanonicalName();
-                beanData.setName(actual);
-                beanData.setAlias(MultiLayeredAttribute.name2alias(actual));
-                writeStatistics(beanData);
-              }
-            } catch (IOException ex) {
-              logger.error("Error while trying to access MBean Server", ex);
+        } else {
+          try {
+            for (ExtractionPlan plan : expandPattern(beanData)) {
+              extractions.add(extractValues(plan));
             }
-            beanData.setName(originalName);
+          } catch (IOException ex) {
+            logger.error("Error while trying to access MBean Server", ex);
           }
         }
       }
+    }
+    return extractions;
+  }
 
-    } catch (StatisticsWriterException ex) {
-      logger.error("Error while importing to HSQL", ex);
-    } finally {
-      writer.doneWritingStatistics();
+  /**
+   * Expand the pattern beans and extract every resulting MBean on the worker
+   * pool. Beans that are not done when the cycle's time budget runs out are
+   * cancelled and reported.
+   * @return the beans extracted in time
+   */
+  private List<Extraction> extractInParallel(List<MBeanData> beans, final ExtractorStats.Cycle cycle) {
+    long deadline = configData.getCycleTimeBudget() > 0
+            ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configData.getCycleTimeBudget())
+            : Long.MAX_VALUE;
+    List<String> slow = new ArrayList<String>();
+
+    List<ExtractionPlan> concrete = new ArrayList<ExtractionPlan>();
+    List<MBeanData> patterns = new ArrayList<MBeanData>();
+    List<Future<List<ExtractionPlan>>> expansions = new ArrayList<Future<List<ExtractionPlan>>>();
+    for (final MBeanData beanData : beans) {
+      if (!beanData.isEnable()) {
+        continue;
+      }
+      if (!beanData.isPattern()) {
+        ExtractionPlan plan = plans.getPlan(beanData);
+        if (plan != null) {
+          concrete.add(plan);
+        }
+      } else {
+        patterns.add(beanData);
+        expansions.add(workers.submit(new Callable<List<ExtractionPlan>>() {
+          @Override
+          public List<ExtractionPlan> call() throws IOException {
+            roundTrips.startTally(cycle.getRoundTrips());
+            try {
+              return expandPattern(beanData);
+            } finally {
+              roundTrips.stopTally();
+            }
+          }
+        }));
+      }
     }
-    logger.info("Extracted");
+    for (int i = 0; i < expansions.size(); ++i) {
+      List<ExtractionPlan> expanded = awaitResult(expansions.get(i), deadline, patterns.get(i).getName(), slow);
+      if (expanded != null) {
+        concrete.addAll(expanded);
+      }
+    }
+
+    List<ExtractionTask> tasks = new ArrayList<ExtractionTask>();
+    List<Future<Extraction>> extractions = new ArrayList<Future<Extraction>>();
+    for (ExtractionPlan plan : concrete) {
+      ExtractionTask task = new ExtractionTask(plan, cycle);
+      tasks.add(task);
+      extractions.add(workers.submit(task));
+    }
+    List<Extraction> extracted = new ArrayList<Extraction>();
+    for (int i = 0; i < extractions.size(); ++i) {
+      ExtractionPlan plan = concrete.get(i);
+      Extraction extraction = awaitResult(extractions.get(i), deadline, plan.getName(), slow);
+      if (extraction != null) {
+        extracted.add(extraction);
+      } else {
+        tasks.get(i).abandon();
+        cycle.bean(plan.getName(), 0, 0, 0, plan.getAttributes().size(), 0);
+      }
+    }
+
+    if (!slow.isEmpty()) {
+      logger.warn("{} MBeans were not extracted within the time budget of {} ms: {}",
+              new Object[]{slow.size(), configData.getCycleTimeBudget(), slow});
+    }
+    return extracted;
+  }
+
+  private <T> T awaitResult(Future<T> future, long deadline, String beanName, List<String> slow) {
+    try {
+      if (deadline == Long.MAX_VALUE) {
+        return future.get();
+      }
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+    } catch (TimeoutException ex) {
+      future.cancel(true);
+      slow.add(beanName);
+    } catch (ExecutionException ex) {
+      logger.error("Error while extracting " + beanName, ex.getCause());
+    } catch (InterruptedException ex) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * @return the plan of each MBean currently matching a pattern bean
+   */
+  private List<ExtractionPlan> expandPattern(MBeanData pattern) throws IOException {
+    List<ExtractionPlan> expanded = new ArrayList<ExtractionPlan>();
+    for (ObjectInstance oi : getObjectInstances(pattern)) {
+      expanded.add(plans.getPlan(pattern, oi.getObjectName()));
+    }
+    return expanded;
   }
 
   private Set<ObjectInstance> getObjectInstances(MBeanData beanData) throws IOException {
     Set<ObjectInstance> instances;
     try {
       ObjectName on = new ObjectName(beanData.getName());
-      instances = mbsc.queryMBeans(on, null);
+      instances = metadata == null ? mbsc.queryMBeans(on, null) : metadata.queryMBeans(on);
 
     } catch (MalformedObjectNameException ex) {
       logger.error("Non standard name for ObjectName " + beanData.getName(), ex);
@@ -151,41 +386,251 @@ public final class Extractor {
     return instances;
   }
 
-  private void writeStatistics(MBeanData beanData) {
-    Map<Attribute, Object> statisticValues = MBeanExtract.extract(beanData, mbsc);
-    writer.writeStatistics(beanData, statisticValues);
+  /**
+   * The values of one MBean, and what it took to extract them
+   */
+  private static final class Extraction {
+    private final ExtractionPlan plan;
+    private final SampleRecord record;
+    private final int failed;
+    private final long fetchNanos;
+
+    Extraction(ExtractionPlan plan, SampleRecord record, int failed, long fetchNanos) {
+      this.plan = plan;
+      this.record = record;
+      this.failed = failed;
+      this.fetchNanos = fetchNanos;
+    }
   }
 
-  public void stop() {
-    logger.info("Stopping JMX Statistics Extractor");
+  /**
+   * Extracts a plan on a worker. Once the extraction is abandoned, because
+   * it overran the cycle's time budget or failed, whichever of the worker and
+   * the extracting thread finishes last hands the plan's record back.
+   */
+  private final class ExtractionTask implements Callable<Extraction> {
+    private final ExtractionPlan plan;
+    private final ExtractorStats.Cycle cycle;
+    private Extraction extraction;
+    private boolean abandoned;
 
-    if (timer != null) {
-      writer.close();
-      timer.cancel();
+    ExtractionTask(ExtractionPlan plan, ExtractorStats.Cycle cycle) {
+      this.plan = plan;
+      this.cycle = cycle;
     }
 
-    logger.info("Stopped JMX Statistics Extractor");
+    @Override
+    public Extraction call() {
+      Extraction extracted;
+      roundTrips.startTally(cycle.getRoundTrips());
+      try {
+        extracted = extractValues(plan);
+      } finally {
+        roundTrips.stopTally();
+      }
+      synchronized (this) {
+        if (!abandoned) {
+          extraction = extracted;
+          return extracted;
+        }
+      }
+      plan.releaseRecord(extracted.record);
+      return null;
+    }
+
+    void abandon() {
+      Extraction late;
+      synchronized (this) {
+        abandoned = true;
+        late = extraction;
+      }
+      if (late != null) {
+        plan.releaseRecord(late.record);
+      }
+    }
   }
 
-  private class Extract extends TimerTask {
+  private Extraction extractValues(ExtractionPlan plan) {
+    long started = System.nanoTime();
+    SampleRecord record = plan.acquireRecord();
+    int failed;
+    boolean extracted = false;
+    try {
+      if (configData.isBatchAttributeFetch()) {
+        failed = MBeanExtract.extractBatched(plan, mbsc, metadata, record);
+      } else {
+        failed = MBeanExtract.extract(plan, mbsc, metadata, record);
+      }
+      extracted = true;
+    } finally {
+      if (!extracted) {
+        plan.releaseRecord(record);
+      }
+    }
+    return new Extraction(plan, record, failed, System.nanoTime() - started);
+  }
 
-    public Extract() {
-      super();
-      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
-        @Override
-        public void run() {
-          writer.close();
+  /**
+   * Write the extracted beans, holding the writer for as long as that takes
+   */
+  private void writeValues(List<Extraction> extractions, long pollTime, ExtractorStats.Cycle cycle) {
+    if (pipeline == null) {
+      writer.startWritingStatistics();
+    }
+    try {
+      for (Extraction extraction : extractions) {
+        try {
+          writeValues(extraction, pollTime, cycle);
+        } catch (StatisticsWriterException ex) {
+          logger.error("Error while importing to HSQL", ex);
         }
-      }));
+      }
+      writeFinishedWindows(pollTime);
+    } finally {
+      if (pipeline == null) {
+        writer.doneWritingStatistics();
+      }
     }
+  }
 
-    @Override
-    public void run() {
+  private void writeValues(Extraction extraction, long pollTime, ExtractorStats.Cycle cycle) {
+    ExtractionPlan plan = extraction.plan;
+    SampleRecord record = extraction.record;
+    long started = System.nanoTime();
+    int values = record.valueCount();
+    long bytes = 0;
+    try {
+      Long window = plan.getBeanData().getAggregationWindow();
+      if (window == null) {
+        window = configData.getAggregationWindow();
+      }
+      if (window > 0) {
+        WindowAggregator.Row row = windows.add(plan, record, pollTime, window * 1000);
+        if (row != null) {
+          write(plan, SampleRecord.of(row.values), row.start);
+          bytes = ExtractorStats.estimateBytes(row.values);
+        }
+      } else {
+        write(plan, record, pollTime);
+        bytes = ExtractorStats.estimateBytes(record);
+      }
+    } finally {
+      plan.releaseRecord(record);
+      cycle.bean(plan.getName(), extraction.fetchNanos, System.nanoTime() - started, values, extraction.failed, bytes);
+    }
+  }
+
+  /**
+   * Write the windows, of any tier, that ended without a sample of a later
+   * window to emit them, like those of beans no longer extracted
+   */
+  private void writeFinishedWindows(long pollTime) {
+    for (Map.Entry<ExtractionPlan, WindowAggregator.Row> window : windows.flush(pollTime).entrySet()) {
       try {
-        extract();
-      } catch (Exception e) {
-        logger.debug("While extracting MBeans", e);
+        write(window.getKey(), SampleRecord.of(window.getValue().values), window.getValue().start);
+      } catch (StatisticsWriterException ex) {
+        logger.error("Error while importing to HSQL", ex);
+      }
+    }
+  }
+
+  private void write(ExtractionPlan plan, SampleRecord record, long timestamp) {
+    if (pipeline == null) {
+      writer.writeStatistics(plan, record, timestamp);
+      return;
+    }
+
+    try {
+      // The plan's record is refilled by the next poll while this one is queued
+      pipeline.put(writer.newSample(plan, record.copy(), timestamp));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      logger.warn("Interrupted while queueing statistics of {}", plan.getName());
+    }
+  }
+
+  /**
+   * @return the queue between extracting and writing statistics, or null if
+   * they are written on the extracting thread
+   */
+  public WritePipeline getWritePipeline() {
+    return pipeline;
+  }
+
+  /**
+   * @return the plans of the beans extracted so far
+   */
+  ExtractionPlanRegistry getPlans() {
+    return plans;
+  }
+
+  /**
+   * @return the statistics of the extractor itself
+   */
+  public ExtractorStats getStats() {
+    return stats;
+  }
+
+  /**
+   * @return the scheduler of each polling rate in seconds, empty when
+   * extracting once
+   */
+  public Map<Long, ExtractionScheduler> getSchedulers() {
+    return Collections.unmodifiableMap(schedulers);
+  }
+
+  /**
+   * Write the windows that are not finished, so that stopping the extractor
+   * does not lose the samples aggregated so far
+   */
+  private void writeOpenWindows() {
+    Map<ExtractionPlan, WindowAggregator.Row> open = windows.drain();
+    if (open.isEmpty()) {
+      return;
+    }
+    if (pipeline == null) {
+      writer.startWritingStatistics();
+    }
+    try {
+      for (Map.Entry<ExtractionPlan, WindowAggregator.Row> window : open.entrySet()) {
+        write(window.getKey(), SampleRecord.of(window.getValue().values), window.getValue().start);
       }
+    } catch (StatisticsWriterException ex) {
+      logger.error("Error while importing to HSQL", ex);
+    } finally {
+      if (pipeline == null) {
+        writer.doneWritingStatistics();
+      }
+    }
+  }
+
+  private void closeWriter() {
+    writeOpenWindows();
+    if (pipeline != null) {
+      pipeline.close();
+    } else {
+      writer.close();
+    }
+  }
+
+  public void stop() {
+    logger.info("Stopping JMX Statistics Extractor");
+
+    if (!schedulers.isEmpty()) {
+      for (ExtractionScheduler scheduler : schedulers.values()) {
+        scheduler.stop();
+      }
+      closeWriter();
     }
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+    if (metadata != null) {
+      metadata.close();
+    }
+    plans.close();
+    unregisterStats();
+
+    logger.info("Stopped JMX Statistics Extractor");
   }
 }
@@ -56,6 +56,27 @@ public class ExtractorSettings {
     private String folderLocation;
     private String url;
     private List<MBeanData> beans;
+    private boolean batchAttributeFetch;
+    private long metadataCacheTtl;
+    private boolean keepDatabaseOpen;
+    private long checkpointInterval;
+    private Integer writeDelayMillis;
+    private boolean batchWrites;
+    private int writeQueueCapacity;
+    private BackpressurePolicy backpressurePolicy;
+    private int extractionThreads;
+    private long cycleTimeBudget;
+    private ScheduleMode scheduleMode;
+    private long pollingJitter;
+    private StorageFormat storageFormat;
+    private long segmentSize;
+    private boolean compressSegments;
+    private Long segmentFlushInterval;
+    private long rotationRows;
+    private long rotationSize;
+    private long rotationInterval;
+    private long keyframeInterval;
+    private long aggregationWindow;
 
     /**
      * @return the pollingRate
@@ -112,6 +133,322 @@ public class ExtractorSettings {
     public void setBeans(List<MBeanData> beans) {
         this.beans = beans;
     }
+
+    /**
+     * @return whether all attributes of a bean are read with a single
+     * getAttributes call instead of one getAttribute call each
+     */
+    public boolean isBatchAttributeFetch() {
+        return batchAttributeFetch;
+    }
+
+    /**
+     * @param batchAttributeFetch the batchAttributeFetch to set
+     */
+    public void setBatchAttributeFetch(boolean batchAttributeFetch) {
+        this.batchAttributeFetch = batchAttributeFetch;
+    }
+
+    /**
+     * @return how many seconds MBean metadata is cached for when no
+     * registration notification arrives, 0 to not cache it at all
+     */
+    public long getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    /**
+     * @param metadataCacheTtl the metadataCacheTtl to set
+     */
+    public void setMetadataCacheTtl(long metadataCacheTtl) {
+        this.metadataCacheTtl = metadataCacheTtl;
+    }
+
+    /**
+     * @return whether the statistics database stays open between polls
+     * instead of being shut down after each one
+     */
+    public boolean isKeepDatabaseOpen() {
+        return keepDatabaseOpen;
+    }
+
+    /**
+     * @param keepDatabaseOpen the keepDatabaseOpen to set
+     */
+    public void setKeepDatabaseOpen(boolean keepDatabaseOpen) {
+        this.keepDatabaseOpen = keepDatabaseOpen;
+    }
+
+    /**
+     * @return how many seconds apart an open statistics database is
+     * checkpointed, 0 to leave it to HSQL
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval the checkpointInterval to set
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @return the hsqldb.write_delay_millis of the statistics database, or
+     * null for HSQL's default
+     */
+    public Integer getWriteDelayMillis() {
+        return writeDelayMillis;
+    }
+
+    /**
+     * @param writeDelayMillis the writeDelayMillis to set
+     */
+    public void setWriteDelayMillis(Integer writeDelayMillis) {
+        this.writeDelayMillis = writeDelayMillis;
+    }
+
+    /**
+     * @return whether all the values of a poll are written in one transaction
+     * with a single timestamp, instead of one transaction per bean
+     */
+    public boolean isBatchWrites() {
+        return batchWrites;
+    }
+
+    /**
+     * @param batchWrites the batchWrites to set
+     */
+    public void setBatchWrites(boolean batchWrites) {
+        this.batchWrites = batchWrites;
+    }
+
+    /**
+     * @return how many samples may wait to be written by a separate writer
+     * thread, 0 to write them on the extracting thread
+     */
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    /**
+     * @param writeQueueCapacity the writeQueueCapacity to set
+     */
+    public void setWriteQueueCapacity(int writeQueueCapacity) {
+        this.writeQueueCapacity = writeQueueCapacity;
+    }
+
+    /**
+     * @return what to do when the write queue is full, BLOCK if not set
+     */
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy == null ? BackpressurePolicy.BLOCK : backpressurePolicy;
+    }
+
+    /**
+     * @param backpressurePolicy the backpressurePolicy to set
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    /**
+     * @return how many beans are extracted in parallel, 0 or 1 to extract
+     * them one after the other
+     */
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+
+    /**
+     * @param extractionThreads the extractionThreads to set
+     */
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * @return how many milliseconds a parallel poll waits for its beans
+     * before giving up on the slow ones, 0 to wait for all of them
+     */
+    public long getCycleTimeBudget() {
+        return cycleTimeBudget;
+    }
+
+    /**
+     * @param cycleTimeBudget the cycleTimeBudget to set
+     */
+    public void setCycleTimeBudget(long cycleTimeBudget) {
+        this.cycleTimeBudget = cycleTimeBudget;
+    }
+
+    /**
+     * @return how periodic extractions are spaced, FIXED_RATE if not set
+     */
+    public ScheduleMode getScheduleMode() {
+        return scheduleMode == null ? ScheduleMode.FIXED_RATE : scheduleMode;
+    }
+
+    /**
+     * @param scheduleMode the scheduleMode to set
+     */
+    public void setScheduleMode(ScheduleMode scheduleMode) {
+        this.scheduleMode = scheduleMode;
+    }
+
+    /**
+     * @return up to how many milliseconds each periodic extraction is
+     * randomly delayed by
+     */
+    public long getPollingJitter() {
+        return pollingJitter;
+    }
+
+    /**
+     * @param pollingJitter the pollingJitter to set
+     */
+    public void setPollingJitter(long pollingJitter) {
+        this.pollingJitter = pollingJitter;
+    }
+
+    /**
+     * @return how statistics are stored, HSQL if not set
+     */
+    public StorageFormat getStorageFormat() {
+        return storageFormat == null ? StorageFormat.HSQL : storageFormat;
+    }
+
+    /**
+     * @param storageFormat the storageFormat to set
+     */
+    public void setStorageFormat(StorageFormat storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
+    /**
+     * @return how many bytes a segment file may grow to before a new one is
+     * started, 0 for no limit
+     */
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @param segmentSize the segmentSize to set
+     */
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return whether segments are written with the compressed encoding,
+     * which pays off when many rows are written per block, i.e. with a long
+     * segment flush interval
+     */
+    public boolean isCompressSegments() {
+        return compressSegments;
+    }
+
+    /**
+     * @param compressSegments the compressSegments to set
+     */
+    public void setCompressSegments(boolean compressSegments) {
+        this.compressSegments = compressSegments;
+    }
+
+    /**
+     * @return how many seconds buffered rows are kept before being written
+     * to the segments as a block, 0 to write them after every poll. Defaults
+     * to a minute; full blocks are written right away.
+     */
+    public long getSegmentFlushInterval() {
+        return segmentFlushInterval != null ? segmentFlushInterval : 60;
+    }
+
+    /**
+     * @param segmentFlushInterval the segmentFlushInterval to set
+     */
+    public void setSegmentFlushInterval(long segmentFlushInterval) {
+        this.segmentFlushInterval = segmentFlushInterval;
+    }
+
+    /**
+     * @return the number of rows after which the statistics file is closed
+     * and a new one started, 0 for no limit
+     */
+    public long getRotationRows() {
+        return rotationRows;
+    }
+
+    /**
+     * @param rotationRows the rotationRows to set
+     */
+    public void setRotationRows(long rotationRows) {
+        this.rotationRows = rotationRows;
+    }
+
+    /**
+     * @return the size in bytes after which the statistics file is closed
+     * and a new one started, 0 for no limit
+     */
+    public long getRotationSize() {
+        return rotationSize;
+    }
+
+    /**
+     * @param rotationSize the rotationSize to set
+     */
+    public void setRotationSize(long rotationSize) {
+        this.rotationSize = rotationSize;
+    }
+
+    /**
+     * @return the number of seconds after which the statistics file is
+     * closed and a new one started, 0 for no limit
+     */
+    public long getRotationInterval() {
+        return rotationInterval;
+    }
+
+    /**
+     * @param rotationInterval the rotationInterval to set
+     */
+    public void setRotationInterval(long rotationInterval) {
+        this.rotationInterval = rotationInterval;
+    }
+
+    /**
+     * @return how many seconds apart a row with every value is written for
+     * beans and attributes that are only written when they change, 0 for
+     * only at the start of every statistics file
+     */
+    public long getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * @param keyframeInterval the keyframeInterval to set
+     */
+    public void setKeyframeInterval(long keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * @return how many seconds of samples of a bean are aggregated into a
+     * single row of minimums, maximums, sums, counts and last values, 0 for
+     * writing every sample
+     */
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    /**
+     * @param aggregationWindow the aggregationWindow to set
+     */
+    public void setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
     
     public ExtractorSettings() {
         XStream xstream = new XStream(new DomDriver());
@@ -149,6 +486,7 @@ public class ExtractorSettings {
             LoggerFactory.getLogger(ExtractorSettings.class).error("Setting is malformated", ex);
             throw new RuntimeException(ex);
         }
+        settings.compileAttributePaths();
         return settings;
         
     }
@@ -168,8 +506,24 @@ public class ExtractorSettings {
             LoggerFactory.getLogger(ExtractorSettings.class).error("Setting is malformated", ex);
             throw new RuntimeException(ex);
         }
+        settings.compileAttributePaths();
         return settings;
     }
+
+    /**
+     * Parse every attribute name up front so that polls do not have to
+     */
+    void compileAttributePaths() {
+        for (MBeanData bData : getBeans()) {
+            for (Attribute atData : bData.getAttributes()) {
+                try {
+                    atData.getPath();
+                } catch (IllegalArgumentException ex) {
+                    LoggerFactory.getLogger(ExtractorSettings.class).error("Can not parse attribute " + atData.getName(), ex);
+                }
+            }
+        }
+    }
     
     @Override
     public String toString() {
@@ -177,6 +531,22 @@ public class ExtractorSettings {
         return  "Rate = " + pollingRate + nl +
                 "Loc = " + folderLocation + nl +
                 "URL = " + url + nl +
+                "Batch = " + batchAttributeFetch + nl +
+                "Metadata TTL = " + metadataCacheTtl + nl +
+                "Keep open = " + keepDatabaseOpen + nl +
+                "Checkpoint = " + checkpointInterval + nl +
+                "Write delay = " + writeDelayMillis + nl +
+                "Batch writes = " + batchWrites + nl +
+                "Write queue = " + writeQueueCapacity + " " + getBackpressurePolicy() + nl +
+                "Threads = " + extractionThreads + nl +
+                "Time budget = " + cycleTimeBudget + nl +
+                "Schedule = " + getScheduleMode() + " jitter " + pollingJitter + nl +
+                "Storage = " + getStorageFormat() + " segment size " + segmentSize
+                        + (compressSegments ? " compressed" : "")
+                        + " flushed every " + getSegmentFlushInterval() + "s" + nl +
+                "Rotation = " + rotationRows + " rows " + rotationSize + " bytes " + rotationInterval + "s" + nl +
+                "Keyframe = " + keyframeInterval + nl +
+                "Aggregation window = " + aggregationWindow + nl +
                 beans.toString();
         
     }
@@ -368,6 +738,27 @@ public class ExtractorSettings {
       hash = 67 * hash + (this.folderLocation != null ? this.folderLocation.hashCode() : 0);
       hash = 67 * hash + (this.url != null ? this.url.hashCode() : 0);
       hash = 67 * hash + (this.beans != null ? this.beans.hashCode() : 0);
+      hash = 67 * hash + (this.batchAttributeFetch ? 1 : 0);
+      hash = 67 * hash + (int) (this.metadataCacheTtl ^ (this.metadataCacheTtl >>> 32));
+      hash = 67 * hash + (this.keepDatabaseOpen ? 1 : 0);
+      hash = 67 * hash + (int) (this.checkpointInterval ^ (this.checkpointInterval >>> 32));
+      hash = 67 * hash + (this.writeDelayMillis != null ? this.writeDelayMillis.hashCode() : 0);
+      hash = 67 * hash + (this.batchWrites ? 1 : 0);
+      hash = 67 * hash + this.writeQueueCapacity;
+      hash = 67 * hash + (this.backpressurePolicy != null ? this.backpressurePolicy.hashCode() : 0);
+      hash = 67 * hash + this.extractionThreads;
+      hash = 67 * hash + (int) (this.cycleTimeBudget ^ (this.cycleTimeBudget >>> 32));
+      hash = 67 * hash + (this.scheduleMode != null ? this.scheduleMode.hashCode() : 0);
+      hash = 67 * hash + (int) (this.pollingJitter ^ (this.pollingJitter >>> 32));
+      hash = 67 * hash + (this.storageFormat != null ? this.storageFormat.hashCode() : 0);
+      hash = 67 * hash + (int) (this.segmentSize ^ (this.segmentSize >>> 32));
+      hash = 67 * hash + (this.compressSegments ? 1 : 0);
+      hash = 67 * hash + (int) (getSegmentFlushInterval() ^ (getSegmentFlushInterval() >>> 32));
+      hash = 67 * hash + (int) (this.rotationRows ^ (this.rotationRows >>> 32));
+      hash = 67 * hash + (int) (this.rotationSize ^ (this.rotationSize >>> 32));
+      hash = 67 * hash + (int) (this.rotationInterval ^ (this.rotationInterval >>> 32));
+      hash = 67 * hash + (int) (this.keyframeInterval ^ (this.keyframeInterval >>> 32));
+      hash = 67 * hash + (int) (this.aggregationWindow ^ (this.aggregationWindow >>> 32));
       return hash;
   }
 
@@ -392,6 +783,69 @@ public class ExtractorSettings {
       if (this.beans != other.beans && (this.beans == null || !this.beans.equals(other.beans))) {
           return false;
       }
+      if (this.batchAttributeFetch != other.batchAttributeFetch) {
+          return false;
+      }
+      if (this.metadataCacheTtl != other.metadataCacheTtl) {
+          return false;
+      }
+      if (this.keepDatabaseOpen != other.keepDatabaseOpen) {
+          return false;
+      }
+      if (this.checkpointInterval != other.checkpointInterval) {
+          return false;
+      }
+      if ((this.writeDelayMillis == null) ? (other.writeDelayMillis != null) : !this.writeDelayMillis.equals(other.writeDelayMillis)) {
+          return false;
+      }
+      if (this.batchWrites != other.batchWrites) {
+          return false;
+      }
+      if (this.writeQueueCapacity != other.writeQueueCapacity) {
+          return false;
+      }
+      if (this.backpressurePolicy != other.backpressurePolicy) {
+          return false;
+      }
+      if (this.extractionThreads != other.extractionThreads) {
+          return false;
+      }
+      if (this.cycleTimeBudget != other.cycleTimeBudget) {
+          return false;
+      }
+      if (this.scheduleMode != other.scheduleMode) {
+          return false;
+      }
+      if (this.pollingJitter != other.pollingJitter) {
+          return false;
+      }
+      if (this.storageFormat != other.storageFormat) {
+          return false;
+      }
+      if (this.segmentSize != other.segmentSize) {
+          return false;
+      }
+      if (this.compressSegments != other.compressSegments) {
+          return false;
+      }
+      if (getSegmentFlushInterval() != other.getSegmentFlushInterval()) {
+          return false;
+      }
+      if (this.rotationRows != other.rotationRows) {
+          return false;
+      }
+      if (this.rotationSize != other.rotationSize) {
+          return false;
+      }
+      if (this.rotationInterval != other.rotationInterval) {
+          return false;
+      }
+      if (this.keyframeInterval != other.keyframeInterval) {
+          return false;
+      }
+      if (this.aggregationWindow != other.aggregationWindow) {
+          return false;
+      }
       return true;
   }
 
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the timing and throughput of every extraction cycle. Each cycle
+ * is measured on the thread extracting it and added once it is done, so
+ * tiers extracting at the same time do not contend until then.
+ */
+public class ExtractorStats implements ExtractorStatsMXBean {
+  public static final String OBJECT_NAME = "org.jmxdatamart:type=ExtractorStats";
+  // Number of most recent cycles, or extractions of a bean, percentiles are computed over
+  static final int CYCLE_HISTORY = 1024;
+  static final int BEAN_HISTORY = 256;
+  // Rough size of a row's timestamp and of values without a fixed size
+  private static final int TIMESTAMP_BYTES = 8;
+  private static final int OBJECT_BYTES = 16;
+
+  private final Durations cycleDurations = new Durations(CYCLE_HISTORY);
+  private final Map<String, BeanStats> beans = new HashMap<String, BeanStats>();
+  private long cycles;
+  private long lastCycleTimestamp;
+  private long lastFetchNanos;
+  private long lastWriteNanos;
+  private long totalFetchNanos;
+  private long totalWriteNanos;
+  private long lastBeans;
+  private long lastValues;
+  private long lastFailed;
+  private long failedAttributes;
+  private long bytesWritten;
+
+  /**
+   * Start measuring a cycle, to be added with {@link #endCycle(Cycle)}
+   */
+  Cycle startCycle() {
+    return new Cycle();
+  }
+
+  synchronized void endCycle(Cycle cycle) {
+    ++cycles;
+    cycleDurations.add(System.nanoTime() - cycle.started);
+    lastCycleTimestamp = cycle.timestamp;
+    lastFetchNanos = 0;
+    lastWriteNanos = 0;
+    lastValues = 0;
+    lastFailed = 0;
+    for (BeanCycle bean : cycle.beans) {
+      lastFetchNanos += bean.fetchNanos;
+      lastWriteNanos += bean.writeNanos;
+      lastValues += bean.values;
+      lastFailed += bean.failed;
+      bytesWritten += bean.bytes;
+
+      BeanStats stats = beans.get(bean.name);
+      if (stats == null) {
+        stats = new BeanStats();
+        beans.put(bean.name, stats);
+      }
+      stats.add(cycle.timestamp, bean);
+    }
+    lastBeans = cycle.beans.size();
+    totalFetchNanos += lastFetchNanos;
+    totalWriteNanos += lastWriteNanos;
+    failedAttributes += lastFailed;
+  }
+
+  /**
+   * Forget the statistics of a bean that is no longer extracted
+   * @param name the name the bean's cycles were added under
+   */
+  synchronized void removeBean(String name) {
+    beans.remove(name);
+  }
+
+  /**
+   * @return a rough estimate of the bytes needed to store the values
+   */
+  static long estimateBytes(SampleRecord record) {
+    long bytes = TIMESTAMP_BYTES;
+    for (int slot = 0; slot < record.size(); ++slot) {
+      if (record.isPresent(slot)) {
+        bytes += estimateBytes(record.getAttribute(slot).getDataType(), record.getValue(slot));
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return a rough estimate of the bytes needed to store the values
+   */
+  static long estimateBytes(Map<Attribute, Object> values) {
+    long bytes = TIMESTAMP_BYTES;
+    for (Map.Entry<Attribute, Object> value : values.entrySet()) {
+      bytes += estimateBytes(value.getKey().getDataType(), value.getValue());
+    }
+    return bytes;
+  }
+
+  private static int estimateBytes(DataType type, Object value) {
+    if (type == null) {
+      return OBJECT_BYTES;
+    }
+    switch (type) {
+      case BYTE:
+      case BOOLEAN:
+        return 1;
+      case SHORT:
+      case CHAR:
+        return 2;
+      case INT:
+      case FLOAT:
+        return 4;
+      case LONG:
+      case DOUBLE:
+      case DATETIME:
+        return 8;
+      case STRING:
+        return value == null ? 0 : value.toString().length();
+      default:
+        return OBJECT_BYTES;
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public synchronized long getCycles() {
+    return cycles;
+  }
+
+  @Override
+  public synchronized long getLastCycleTimestamp() {
+    return lastCycleTimestamp;
+  }
+
+  @Override
+  public synchronized double getCycleDurationMedian() {
+    return toMillis(cycleDurations.percentile(50));
+  }
+
+  @Override
+  public synchronized double getCycleDuration90thPercentile() {
+    return toMillis(cycleDurations.percentile(90));
+  }
+
+  @Override
+  public synchronized double getCycleDuration99thPercentile() {
+    return toMillis(cycleDurations.percentile(99));
+  }
+
+  @Override
+  public synchronized double getCycleDurationMax() {
+    return toMillis(cycleDurations.percentile(100));
+  }
+
+  @Override
+  public synchronized double getLastCycleFetchTime() {
+    return toMillis(lastFetchNanos);
+  }
+
+  @Override
+  public synchronized double getLastCycleWriteTime() {
+    return toMillis(lastWriteNanos);
+  }
+
+  @Override
+  public synchronized double getTotalFetchTime() {
+    return toMillis(totalFetchNanos);
+  }
+
+  @Override
+  public synchronized double getTotalWriteTime() {
+    return toMillis(totalWriteNanos);
+  }
+
+  @Override
+  public synchronized long getLastCycleBeans() {
+    return lastBeans;
+  }
+
+  @Override
+  public synchronized long getLastCycleValues() {
+    return lastValues;
+  }
+
+  @Override
+  public synchronized long getLastCycleFailedAttributes() {
+    return lastFailed;
+  }
+
+  @Override
+  public synchronized long getFailedAttributes() {
+    return failedAttributes;
+  }
+
+  @Override
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public synchronized Map<String, BeanStatistics> getBeans() {
+    Map<String, BeanStatistics> snapshot = new TreeMap<String, BeanStatistics>();
+    for (Map.Entry<String, BeanStats> bean : beans.entrySet()) {
+      snapshot.put(bean.getKey(), bean.getValue().snapshot());
+    }
+    return snapshot;
+  }
+
+  /**
+   * What was extracted in one cycle, only used by the thread extracting it
+   * apart from its round trips, which its workers count too
+   */
+  static final class Cycle {
+    private final long started = System.nanoTime();
+    private final long timestamp = System.currentTimeMillis();
+    private final List<BeanCycle> beans = new ArrayList<BeanCycle>();
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    /**
+     * @return the number of MBean server calls made for the cycle
+     */
+    AtomicLong getRoundTrips() {
+      return roundTrips;
+    }
+
+    void bean(String name, long fetchNanos, long writeNanos, int values, int failed, long bytes) {
+      beans.add(new BeanCycle(name, fetchNanos, writeNanos, values, failed, bytes));
+    }
+  }
+
+  private static final class BeanCycle {
+    private final String name;
+    private final long fetchNanos;
+    private final long writeNanos;
+    private final int values;
+    private final int failed;
+    private final long bytes;
+
+    BeanCycle(String name, long fetchNanos, long writeNanos, int values, int failed, long bytes) {
+      this.name = name;
+      this.fetchNanos = fetchNanos;
+      this.writeNanos = writeNanos;
+      this.values = values;
+      this.failed = failed;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final class BeanStats {
+    private final Durations durations = new Durations(BEAN_HISTORY);
+    private long extractions;
+    private long lastTimestamp;
+    private long lastFetchNanos;
+    private long lastWriteNanos;
+    private long totalFetchNanos;
+    private long totalWriteNanos;
+    private long lastValues;
+    private long failed;
+    private long bytes;
+
+    void add(long timestamp, BeanCycle cycle) {
+      ++extractions;
+      durations.add(cycle.fetchNanos + cycle.writeNanos);
+      lastTimestamp = timestamp;
+      lastFetchNanos = cycle.fetchNanos;
+      lastWriteNanos = cycle.writeNanos;
+      totalFetchNanos += cycle.fetchNanos;
+      totalWriteNanos += cycle.writeNanos;
+      lastValues = cycle.values;
+      failed += cycle.failed;
+      bytes += cycle.bytes;
+    }
+
+    BeanStatistics snapshot() {
+      return new BeanStatistics(extractions, lastTimestamp,
+              toMillis(durations.percentile(50)),
+              toMillis(durations.percentile(90)),
+              toMillis(durations.percentile(99)),
+              toMillis(lastFetchNanos), toMillis(lastWriteNanos),
+              toMillis(totalFetchNanos), toMillis(totalWriteNanos),
+              lastValues, failed, bytes);
+    }
+  }
+
+  /**
+   * The most recent durations, overwriting the oldest ones once full
+   */
+  static final class Durations {
+    private final long[] nanos;
+    private int count;
+    private int next;
+
+    Durations(int capacity) {
+      nanos = new long[capacity];
+    }
+
+    void add(long duration) {
+      nanos[next] = duration;
+      next = (next + 1) % nanos.length;
+      if (count < nanos.length) {
+        ++count;
+      }
+    }
+
+    /**
+     * @param p percentile between 0 and 100
+     * @return the duration in nanoseconds, 0 if there is none yet
+     */
+    long percentile(double p) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(nanos, count);
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(p / 100 * count);
+      return sorted[Math.max(0, rank - 1)];
+    }
+  }
+}
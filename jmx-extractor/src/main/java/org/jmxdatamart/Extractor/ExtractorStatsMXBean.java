@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import java.util.Map;
+
+/**
+ * How the extractor itself is doing, registered as
+ * {@value ExtractorStats#OBJECT_NAME} so that it can be extracted into the
+ * data mart like any other bean. Times are in milliseconds, percentiles are
+ * over the most recent cycles.
+ */
+public interface ExtractorStatsMXBean {
+
+  /**
+   * @return the number of cycles extracted so far
+   */
+  long getCycles();
+
+  /**
+   * @return the time the last cycle started, in milliseconds since the epoch
+   */
+  long getLastCycleTimestamp();
+
+  double getCycleDurationMedian();
+
+  double getCycleDuration90thPercentile();
+
+  double getCycleDuration99thPercentile();
+
+  double getCycleDurationMax();
+
+  /**
+   * @return the time spent reading from the MBean server in the last cycle,
+   * summed over its beans, so it may exceed the cycle when extracting on
+   * several threads
+   */
+  double getLastCycleFetchTime();
+
+  /**
+   * @return the time spent handing values to the writer in the last cycle,
+   * which is only the time to queue them when writing on a separate thread
+   */
+  double getLastCycleWriteTime();
+
+  double getTotalFetchTime();
+
+  double getTotalWriteTime();
+
+  /**
+   * @return the number of MBeans extracted in the last cycle
+   */
+  long getLastCycleBeans();
+
+  /**
+   * @return the number of values extracted in the last cycle
+   */
+  long getLastCycleValues();
+
+  long getLastCycleFailedAttributes();
+
+  /**
+   * @return the number of attributes that could not be read so far
+   */
+  long getFailedAttributes();
+
+  /**
+   * @return the estimated size of the values handed to the writer so far
+   */
+  long getBytesWritten();
+
+  /**
+   * @return the same statistics for each MBean, by its name
+   */
+  Map<String, BeanStatistics> getBeans();
+}
@@ -42,6 +42,9 @@ public class MBeanData {
     private String alias;
     private List<Attribute> attributes;
     private boolean enable;
+    private Long pollingRate;
+    private Boolean changeOnly;
+    private Long aggregationWindow;
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /**
@@ -123,6 +126,67 @@ public class MBeanData {
     public void setEnable(boolean enable) {
         this.enable = enable;
     }
+
+    /**
+     * @return how many seconds apart this bean is extracted, or null to use
+     * the polling rate of the settings
+     */
+    public Long getPollingRate() {
+        return pollingRate;
+    }
+
+    /**
+     * @param pollingRate the pollingRate to set
+     */
+    public void setPollingRate(Long pollingRate) {
+        this.pollingRate = pollingRate;
+    }
+
+    /**
+     * @return whether the bean's attributes are only written when their value
+     * changes, unless the attribute says otherwise, or null for always
+     */
+    public Boolean getChangeOnly() {
+        return changeOnly;
+    }
+
+    /**
+     * @param changeOnly the changeOnly to set
+     */
+    public void setChangeOnly(Boolean changeOnly) {
+        this.changeOnly = changeOnly;
+    }
+
+    /**
+     * @return how many seconds of samples are aggregated into a single row,
+     * or null to use the aggregation window of the settings
+     */
+    public Long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    /**
+     * @param aggregationWindow the aggregationWindow to set
+     */
+    public void setAggregationWindow(Long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
+
+    /**
+     * @return the attributes only written when their value changes, either
+     * because they are set so or because the bean is and they are not set
+     * otherwise
+     */
+    public Set<Attribute> getChangeOnlyAttributes() {
+        Set<Attribute> result = new HashSet<Attribute>();
+        for (Attribute a : attributes) {
+            Boolean attributeChangeOnly = a.getChangeOnly();
+            if (attributeChangeOnly != null ? attributeChangeOnly : Boolean.TRUE.equals(changeOnly)) {
+                result.add(a);
+            }
+        }
+        return result;
+    }
     
     /**
      * Check if the MBeanData object's alias is correctly formated
@@ -160,6 +224,9 @@ public class MBeanData {
         hash = 53 * hash + (this.name != null ? this.name.hashCode() : 0);
         hash = 53 * hash + (this.alias != null ? this.alias.hashCode() : 0);
         hash = 53 * hash + (this.attributes != null ? this.attributes.hashCode() : 0);
+        hash = 53 * hash + (this.pollingRate != null ? this.pollingRate.hashCode() : 0);
+        hash = 53 * hash + (this.changeOnly != null ? this.changeOnly.hashCode() : 0);
+        hash = 53 * hash + (this.aggregationWindow != null ? this.aggregationWindow.hashCode() : 0);
         return hash;
     }
 
@@ -181,6 +248,15 @@ public class MBeanData {
         if (this.attributes != other.attributes && (this.attributes == null || !this.attributes.equals(other.attributes))) {
             return false;
         }
+        if ((this.pollingRate == null) ? (other.pollingRate != null) : !this.pollingRate.equals(other.pollingRate)) {
+            return false;
+        }
+        if ((this.changeOnly == null) ? (other.changeOnly != null) : !this.changeOnly.equals(other.changeOnly)) {
+            return false;
+        }
+        if ((this.aggregationWindow == null) ? (other.aggregationWindow != null) : !this.aggregationWindow.equals(other.aggregationWindow)) {
+            return false;
+        }
         return true;
     }
     
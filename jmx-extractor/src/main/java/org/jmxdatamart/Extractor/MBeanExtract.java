@@ -28,7 +28,13 @@
 package org.jmxdatamart.Extractor;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import javax.management.AttributeList;
+import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -45,29 +51,182 @@ public class MBeanExtract {
     
     
     public static Map<Attribute, Object> extract(MBeanData mbd, MBeanServerConnection mbsc) {
-        ObjectName on = null;
+        return extract(mbd, mbsc, null);
+    }
+
+    /**
+     * @param metadata cache to look MBean attribute metadata up in, may be null
+     */
+    public static Map<Attribute, Object> extract(MBeanData mbd, MBeanServerConnection mbsc, MBeanMetadataCache metadata) {
+        return extract(null, toObjectName(mbd), mbd.getAttributes(), mbsc, metadata);
+    }
+
+    /**
+     * Extract an MBean whose name and attributes have already been resolved
+     */
+    public static Map<Attribute, Object> extract(ExtractionPlan plan, MBeanServerConnection mbsc, MBeanMetadataCache metadata) {
+        return extract(plan, plan.getObjectName(), plan.getAttributes(), mbsc, metadata);
+    }
+
+    /**
+     * Extract an MBean into a record instead of a new map
+     * @return the number of attributes that could not be read
+     */
+    public static int extract(ExtractionPlan plan, MBeanServerConnection mbsc, MBeanMetadataCache metadata, SampleRecord record) {
+        return extract(plan, plan.getObjectName(), plan.getAttributes(), mbsc, metadata, record);
+    }
+
+    private static Map<Attribute, Object> extract(ExtractionPlan plan, ObjectName on, List<Attribute> attributes,
+            MBeanServerConnection mbsc, MBeanMetadataCache metadata) {
+        SampleRecord record = new SampleRecord(new SampleLayout());
+        extract(plan, on, attributes, mbsc, metadata, record);
+        return record.toMap();
+    }
+
+    /**
+     * @param plan the plan being extracted, told about the columns each
+     * attribute adds, or null
+     */
+    private static int extract(ExtractionPlan plan, ObjectName on, List<Attribute> attributes,
+            MBeanServerConnection mbsc, MBeanMetadataCache metadata, SampleRecord retVal) {
+        MultiLayeredAttribute mla = new MultiLayeredAttribute(mbsc, metadata);
+        int failures = 0;
+        
+        for (Attribute a : attributes) {
+            int columns = retVal.size();
+            try{
+                mla.getAll(on, a, retVal);
+            } catch (Exception ex) {
+                ++failures;
+                logger.error("Error while extracting " 
+                                + a.getName() + " from " 
+                                + on, ex);
+            }
+            if (plan != null) {
+                plan.addColumns(a, retVal.getLayout(), columns);
+            }
+        }
+        return failures + mla.getFailures();
+    }
+
+    private static ObjectName toObjectName(MBeanData mbd) {
         try {
-            on = new ObjectName(mbd.getName());
+            return new ObjectName(mbd.getName());
         } catch (MalformedObjectNameException ex) {
             logger.error("Error while trying to attach to " + mbd.getName(), ex);
             throw new RuntimeException(ex);
         }
-        
-        MultiLayeredAttribute mla = new MultiLayeredAttribute(mbsc);
+    }
     
-        Map<Attribute, Object> retVal = new HashMap<Attribute, Object>();
-        
-        for (Attribute a : mbd.getAttributes()) {
-            try{
-                retVal.putAll(mla.getAll(on, a));
+    /**
+     * Same as {@link #extract(MBeanData, MBeanServerConnection)}, but resolves
+     * the attributes of the bean first and reads all of their values with a
+     * single getAttributes call, so that only two round trips to the MBean
+     * server are made no matter how many attributes are configured.
+     */
+    public static Map<Attribute, Object> extractBatched(MBeanData mbd, MBeanServerConnection mbsc) {
+        return extractBatched(mbd, mbsc, null);
+    }
+
+    /**
+     * @param metadata cache to look MBean attribute metadata up in, may be null
+     */
+    public static Map<Attribute, Object> extractBatched(MBeanData mbd, MBeanServerConnection mbsc, MBeanMetadataCache metadata) {
+        return extractBatched(null, toObjectName(mbd), mbd.getAttributes(), mbsc, metadata);
+    }
+
+    /**
+     * Batched extraction of an MBean whose name and attributes have already
+     * been resolved
+     */
+    public static Map<Attribute, Object> extractBatched(ExtractionPlan plan, MBeanServerConnection mbsc, MBeanMetadataCache metadata) {
+        return extractBatched(plan, plan.getObjectName(), plan.getAttributes(), mbsc, metadata);
+    }
+
+    /**
+     * Batched extraction of an MBean into a record instead of a new map
+     * @return the number of attributes that could not be read
+     */
+    public static int extractBatched(ExtractionPlan plan, MBeanServerConnection mbsc, MBeanMetadataCache metadata, SampleRecord record) {
+        return extractBatched(plan, plan.getObjectName(), plan.getAttributes(), mbsc, metadata, record);
+    }
+
+    private static Map<Attribute, Object> extractBatched(ExtractionPlan plan, ObjectName on, List<Attribute> attributes,
+            MBeanServerConnection mbsc, MBeanMetadataCache metadata) {
+        SampleRecord record = new SampleRecord(new SampleLayout());
+        extractBatched(plan, on, attributes, mbsc, metadata, record);
+        return record.toMap();
+    }
+
+    private static int extractBatched(ExtractionPlan plan, ObjectName on, List<Attribute> attributes,
+            MBeanServerConnection mbsc, MBeanMetadataCache metadata, SampleRecord retVal) {
+        MultiLayeredAttribute mla = new MultiLayeredAttribute(mbsc);
+        int failures = 0;
+
+        MBeanAttributeInfo[] infos;
+        try {
+            infos = metadata == null
+                    ? mbsc.getMBeanInfo(on).getAttributes()
+                    : metadata.getAttributes(on);
+        } catch (Exception ex) {
+            logger.error("Error while trying to access " + on, ex);
+            return attributes.size();
+        }
+
+        Map<Attribute, List<String>> resolved = new LinkedHashMap<Attribute, List<String>>();
+        Set<String> names = new LinkedHashSet<String>();
+        for (Attribute a : attributes) {
+            try {
+                List<String> matching = mla.resolve(infos, a);
+                resolved.put(a, matching);
+                names.addAll(matching);
             } catch (Exception ex) {
-                logger.error("Error while extracting " 
-                                + a.getName() + " from " 
-                                + mbd.getName(), ex);
+                ++failures;
+                logger.error("Error while resolving "
+                                + a.getName() + " in "
+                                + on, ex);
             }
         }
-        
-        return retVal;
+        if (names.isEmpty()) {
+            return failures;
+        }
+
+        AttributeList values;
+        try {
+            values = mbsc.getAttributes(on, names.toArray(new String[names.size()]));
+        } catch (Exception ex) {
+            logger.error("Error while reading attributes of " + on, ex);
+            return failures + names.size();
+        }
+
+        Map<String, Object> valuesByName = new HashMap<String, Object>();
+        for (javax.management.Attribute value : values.asList()) {
+            valuesByName.put(value.getName(), value.getValue());
+        }
+
+        for (Map.Entry<Attribute, List<String>> entry : resolved.entrySet()) {
+            int columns = retVal.size();
+            for (String name : entry.getValue()) {
+                if (!valuesByName.containsKey(name)) {
+                    // getAttributes silently leaves out the attributes it could not read
+                    ++failures;
+                    logger.error("Could not read " + name + " from " + on);
+                    continue;
+                }
+                try {
+                    mla.walk(entry.getKey(), name, valuesByName.get(name), retVal);
+                } catch (Exception ex) {
+                    ++failures;
+                    logger.error("Error while extracting "
+                                    + name + " from "
+                                    + on, ex);
+                }
+            }
+            if (plan != null) {
+                plan.addColumns(entry.getKey(), retVal.getLayout(), columns);
+            }
+        }
+        return failures;
     }
-    
+
 }
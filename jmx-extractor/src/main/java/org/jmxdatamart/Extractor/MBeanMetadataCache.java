@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the attribute metadata of MBeans, as well as the instances matching
+ * pattern bean names, so that they are not fetched again from the MBean
+ * server on every poll. Entries are dropped when the MBean server delegate
+ * reports that a matching MBean was registered or unregistered, and expire
+ * after a time-to-live in case those notifications are not delivered.
+ */
+public class MBeanMetadataCache implements NotificationListener {
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(MBeanMetadataCache.class);
+  private final MBeanServerConnection mbsc;
+  private final long ttlMillis;
+  private final ConcurrentMap<ObjectName, Entry<MBeanAttributeInfo[]>> attributes =
+          new ConcurrentHashMap<ObjectName, Entry<MBeanAttributeInfo[]>>();
+  private final ConcurrentMap<ObjectName, Entry<Set<ObjectInstance>>> instances =
+          new ConcurrentHashMap<ObjectName, Entry<Set<ObjectInstance>>>();
+  // Bumped by every invalidation, so that a fetch which overlapped one does not cache what it read
+  private final AtomicLong generation = new AtomicLong();
+  private boolean listening;
+
+  /**
+   * @param mbsc the MBean server whose metadata is cached
+   * @param ttlMillis how long an entry is trusted without a notification
+   */
+  public MBeanMetadataCache(MBeanServerConnection mbsc, long ttlMillis) {
+    this.mbsc = mbsc;
+    this.ttlMillis = ttlMillis;
+
+    MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+    filter.enableAllObjectNames();
+    filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+    filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+    try {
+      mbsc.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+      listening = true;
+    } catch (Exception ex) {
+      logger.warn("Can not listen for MBean registrations, relying on time-to-live only", ex);
+    }
+  }
+
+  /**
+   * @param on name of a single MBean
+   * @return the attributes of the MBean, from the cache if possible
+   */
+  public MBeanAttributeInfo[] getAttributes(ObjectName on)
+          throws IOException, InstanceNotFoundException, IntrospectionException, ReflectionException {
+    Entry<MBeanAttributeInfo[]> entry = attributes.get(on);
+    if (entry == null || entry.isExpired()) {
+      long fetchedAt = generation.get();
+      entry = new Entry<MBeanAttributeInfo[]>(mbsc.getMBeanInfo(on).getAttributes());
+      attributes.put(on, entry);
+      if (generation.get() != fetchedAt) {
+        attributes.remove(on, entry);
+      }
+    }
+    return entry.value;
+  }
+
+  /**
+   * @param pattern a pattern ObjectName
+   * @return the MBeans currently matching the pattern, from the cache if possible
+   */
+  public Set<ObjectInstance> queryMBeans(ObjectName pattern) throws IOException {
+    Entry<Set<ObjectInstance>> entry = instances.get(pattern);
+    if (entry == null || entry.isExpired()) {
+      long fetchedAt = generation.get();
+      entry = new Entry<Set<ObjectInstance>>(
+              Collections.unmodifiableSet(mbsc.queryMBeans(pattern, null)));
+      instances.put(pattern, entry);
+      if (generation.get() != fetchedAt) {
+        instances.remove(pattern, entry);
+      }
+    }
+    return entry.value;
+  }
+
+  /**
+   * Forget everything known about a single MBean
+   * @param on name of the MBean
+   */
+  public void invalidate(ObjectName on) {
+    // Bumped before removing, a fetch that put its entry after the removal sees it and takes it back
+    generation.incrementAndGet();
+    attributes.remove(on);
+    for (ObjectName pattern : instances.keySet()) {
+      if (pattern.apply(on)) {
+        instances.remove(pattern);
+      }
+    }
+  }
+
+  @Override
+  public void handleNotification(Notification notification, Object handback) {
+    if (notification instanceof MBeanServerNotification) {
+      ObjectName on = ((MBeanServerNotification) notification).getMBeanName();
+      logger.debug("{} {}, dropping its cached metadata", notification.getType(), on);
+      invalidate(on);
+    }
+  }
+
+  /**
+   * Stop listening for MBean registrations and clear the cache
+   */
+  public void close() {
+    if (listening) {
+      try {
+        mbsc.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+      } catch (Exception ex) {
+        logger.debug("While removing MBean registration listener", ex);
+      }
+      listening = false;
+    }
+    attributes.clear();
+    instances.clear();
+  }
+
+  private class Entry<T> {
+    private final T value;
+    private final long loadedAt = System.currentTimeMillis();
+
+    private Entry(T value) {
+      this.value = value;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() - loadedAt > ttlMillis;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor.MXBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed multi-layered attribute name such as
+ * <code>LastGcInfo.memoryUsageAfterGc."PS*".used</code>, built once so that
+ * extracting it does not parse the name nor compile regular expressions
+ * again on every poll. Layers without wildcards are kept as plain names to
+ * be looked up directly.
+ */
+public final class AttributePath {
+
+  private final String name;
+  private final List<Layer> layers;
+
+  private AttributePath(String name, List<Layer> layers) {
+    this.name = name;
+    this.layers = Collections.unmodifiableList(layers);
+  }
+
+  /**
+   * @param name a multi-layered attribute name, possibly with * and ? wildcards
+   * @return the compiled path
+   * @throws IllegalArgumentException if name is not a valid attribute name
+   */
+  public static AttributePath compile(String name) {
+    List<String> parsed = new MXNameParser().parse(name);
+    if (parsed == null || parsed.isEmpty()) {
+      throw new IllegalArgumentException("Can not parse " + name);
+    }
+    List<Layer> layers = new ArrayList<Layer>(parsed.size());
+    for (String layer : parsed) {
+      layers.add(new Layer(layer));
+    }
+    return new AttributePath(name, layers);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int size() {
+    return layers.size();
+  }
+
+  public Layer getLayer(int depth) {
+    return layers.get(depth);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  /**
+   * One layer of a path, either a literal name or a * and ? pattern
+   */
+  public static final class Layer {
+
+    private final String literal;
+    private final Pattern pattern;
+    private final int index;
+
+    private Layer(String layer) {
+      if (layer.contains("?") || layer.contains("*")) {
+        literal = null;
+        pattern = Pattern.compile(toRegex(layer));
+        index = -1;
+      } else {
+        literal = layer;
+        pattern = null;
+        index = toIndex(layer);
+      }
+    }
+
+    /**
+     * @return whether this layer has no wildcards
+     */
+    public boolean isLiteral() {
+      return literal != null;
+    }
+
+    /**
+     * @return the name of a literal layer, null for a pattern
+     */
+    public String getLiteral() {
+      return literal;
+    }
+
+    /**
+     * @return the array index a literal layer names, -1 if it is not a number
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    public boolean matches(String s) {
+      return literal != null ? literal.equals(s) : pattern.matcher(s).matches();
+    }
+
+    /**
+     * @return whether this layer matches the given array index
+     */
+    public boolean matches(int i) {
+      return literal != null ? index == i : pattern.matcher(Integer.toString(i)).matches();
+    }
+
+    private static String toRegex(String layer) {
+      StringBuilder sb = new StringBuilder(layer.length() + 8);
+      for (int j = 0; j < layer.length(); ++j) {
+        char c = layer.charAt(j);
+        switch (c) {
+          case '?':
+            sb.append('.');
+            break;
+          case '*':
+            sb.append(".*");
+            break;
+          default:
+            if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+              sb.append('\\');
+            }
+            sb.append(c);
+        }
+      }
+      return sb.toString();
+    }
+
+    private static int toIndex(String layer) {
+      if (layer.isEmpty() || layer.length() > 9 || (layer.length() > 1 && layer.charAt(0) == '0')) {
+        return -1;
+      }
+      for (int j = 0; j < layer.length(); ++j) {
+        if (!Character.isDigit(layer.charAt(j))) {
+          return -1;
+        }
+      }
+      return Integer.parseInt(layer);
+    }
+
+    @Override
+    public String toString() {
+      return literal != null ? literal : pattern.pattern();
+    }
+  }
+}
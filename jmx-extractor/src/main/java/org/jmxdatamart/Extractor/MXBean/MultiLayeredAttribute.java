@@ -5,15 +5,19 @@
 package org.jmxdatamart.Extractor.MXBean;
 
 import java.lang.reflect.Array;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.SimpleType;
 import javax.management.openmbean.TabularData;
 import org.jmxdatamart.Extractor.Attribute;
+import org.jmxdatamart.Extractor.MBeanMetadataCache;
+import org.jmxdatamart.Extractor.SampleLayout;
+import org.jmxdatamart.Extractor.SampleRecord;
 import org.jmxdatamart.common.DataType;
 import org.slf4j.LoggerFactory;
 
@@ -23,40 +27,58 @@ import org.slf4j.LoggerFactory;
  */
 public class MultiLayeredAttribute {
 
-  private List<String> layers;
-  private MXNameParser mxnp;
+  private AttributePath path;
   private MBeanServerConnection mbsc;
+  private MBeanMetadataCache metadata;
   private ObjectName baseMbean;
   private Attribute attribute;
-  private String alias;
+  private int failures;
   private final org.slf4j.Logger logger = LoggerFactory.getLogger(MultiLayeredAttribute.class);
+  // values() copies the array on every call
+  private static final DataType[] DATA_TYPES = DataType.values();
 
   public MultiLayeredAttribute(MBeanServerConnection mbs) {
-    mxnp = new MXNameParser();
     this.mbsc = mbs;
   }
 
+  /**
+   * @param mbs the MBean server to read attributes from
+   * @param metadata cache to look MBean attribute metadata up in, may be null
+   */
+  public MultiLayeredAttribute(MBeanServerConnection mbs, MBeanMetadataCache metadata) {
+    this(mbs);
+    this.metadata = metadata;
+  }
+
   public Map<Attribute, Object> getAll(ObjectName baseMbean, Attribute attr) {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    getAll(baseMbean, attr, record);
+    return record.toMap();
+  }
+
+  /**
+   * Same as {@link #getAll(ObjectName, Attribute)}, but puts the values into
+   * a record instead of a new map
+   */
+  public void getAll(ObjectName baseMbean, Attribute attr, SampleRecord resultSoFar) {
     this.baseMbean = baseMbean;
-    this.attribute = attr;
-    if (attr.getAlias() != null && !attr.getAlias().isEmpty()) {
-      this.alias = attr.getAlias();
-    } else {
-      this.alias = null;
-    }
-    parseName(this.attribute.getName());
-    Map<Attribute, Object> resultSoFar = new HashMap<Attribute, Object>();
+    prepare(attr);
+    SampleLayout.Path root = resultSoFar.getLayout().pathOf(attr);
     try {
-      for (MBeanAttributeInfo mbai : mbsc.getMBeanInfo(this.baseMbean).getAttributes()) {
-        if (mbai.isReadable() && mbai.getName().matches(layers.get(0))) {
+      MBeanAttributeInfo[] attributeInfos = metadata == null
+              ? mbsc.getMBeanInfo(this.baseMbean).getAttributes()
+              : metadata.getAttributes(this.baseMbean);
+      for (MBeanAttributeInfo mbai : attributeInfos) {
+        if (mbai.isReadable() && path.getLayer(0).matches(mbai.getName())) {
           try {
             getAllHelper(
                     1,
-                    layers.size(),
+                    path.size(),
                     mbsc.getAttribute(this.baseMbean, mbai.getName()),
-                    mbai.getName() + ".",
+                    root.child(mbai.getName()),
                     resultSoFar);
           } catch (Exception ex) {
+            ++failures;
             logger.error("Error while trying to access "
                     + this.baseMbean.getCanonicalName() + " at "
                     + mbai.getName(), ex);
@@ -64,13 +86,67 @@ public class MultiLayeredAttribute {
         }
       }
     } catch (Exception ex) {
+      ++failures;
       logger.error("Error while trying to access " + this.baseMbean.getCanonicalName(), ex);
     }
-    return resultSoFar;
+  }
+
+  /**
+   * @return the number of times getAll could not read a bean or one of its
+   * attributes
+   */
+  public int getFailures() {
+    return failures;
+  }
+
+  /**
+   * Find the readable top level attributes of a bean that match the first
+   * layer of attr, without reading any of their values
+   * @param attributeInfos the attributes of the bean, as found in its MBeanInfo
+   * @param attr the (possibly multi-layered and patterned) attribute to resolve
+   * @return names of the matching top level attributes
+   */
+  public List<String> resolve(MBeanAttributeInfo[] attributeInfos, Attribute attr) {
+    prepare(attr);
+    List<String> names = new ArrayList<String>();
+    for (MBeanAttributeInfo mbai : attributeInfos) {
+      if (mbai.isReadable() && path.getLayer(0).matches(mbai.getName())) {
+        names.add(mbai.getName());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Walk the remaining layers of attr through a top level value that has
+   * already been read from the MBean server
+   * @param attr the attribute the value was resolved from
+   * @param attributeName name of the top level attribute holding value
+   * @param value the top level value
+   * @param resultSoFar map the extracted values are added to
+   */
+  public void walk(Attribute attr, String attributeName, Object value, Map<Attribute, Object> resultSoFar) {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    walk(attr, attributeName, value, record);
+    resultSoFar.putAll(record.toMap());
+  }
+
+  /**
+   * Same as {@link #walk(Attribute, String, Object, Map)}, but puts the
+   * values into a record
+   */
+  public void walk(Attribute attr, String attributeName, Object value, SampleRecord resultSoFar) {
+    prepare(attr);
+    getAllHelper(1, path.size(), value, resultSoFar.getLayout().pathOf(attr).child(attributeName), resultSoFar);
+  }
+
+  private void prepare(Attribute attr) {
+    this.attribute = attr;
+    this.path = attr.getPath();
   }
 
   private DataType getSupportedDataType(Object obj) {
-    for (DataType dt : DataType.values()) {
+    for (DataType dt : DATA_TYPES) {
       if (dt.supportsTypeOf(obj)) {
         return dt;
       }
@@ -82,10 +158,10 @@ public class MultiLayeredAttribute {
           int currDepth,
           int total,
           Object curr,
-          String currName,
-          Map<Attribute, Object> resultSoFar) {
+          SampleLayout.Path currPath,
+          SampleRecord resultSoFar) {
     if (curr == null) {
-      logger.error("Null pointer in MX chain at " + currName);
+      logger.error("Null pointer in MX chain at " + currPath);
       return;
     } else if (currDepth == total) {
       DataType dt = getSupportedDataType(curr);
@@ -97,56 +173,70 @@ public class MultiLayeredAttribute {
             for (int i = 1; i < len; ++i) {
               sb.append(',').append(enclose(Array.get(curr, i)));
             }
-            resultSoFar.put(
-                    new Attribute(
-                    null,
-                    this.alias == null ? name2alias(currName) : this.alias,
-                    DataType.STRING),
-                    sb.toString());
+            resultSoFar.put(currPath, DataType.STRING, sb.toString());
           }
         } else {
           logger.info("Doesn't support extracting directly from type " + curr.getClass()
-                  + " in " + currName);
+                  + " in " + currPath);
           return;
         }
       } else {
-        resultSoFar.put(
-                new Attribute(
-                null,
-                this.alias == null ? name2alias(currName) : this.alias,
-                dt),
-                curr);
+        resultSoFar.put(currPath, dt, curr);
       }
     } else {
+      AttributePath.Layer layer = path.getLayer(currDepth);
       if (CompositeData.class.isAssignableFrom(curr.getClass())) {
         CompositeData cd = (CompositeData) curr;
+        if (layer.isLiteral()) {
+          if (cd.containsKey(layer.getLiteral())) {
+            getAllHelper(
+                    currDepth + 1,
+                    total,
+                    cd.get(layer.getLiteral()),
+                    currPath.child(layer.getLiteral()),
+                    resultSoFar);
+          }
+          return;
+        }
         for (String s : cd.getCompositeType().keySet()) {
-          if (s.matches(layers.get(currDepth))) {
+          if (layer.matches(s)) {
             getAllHelper(
                     currDepth + 1,
                     total,
                     cd.get(s),
-                    currName + s + ".",
+                    currPath.child(s),
                     resultSoFar);
           }
         }
       } else if (TabularData.class.isAssignableFrom(curr.getClass())) {
         TabularData td = (TabularData) curr;
+        if (layer.isLiteral() && hasStringIndex(td)) {
+          CompositeData row = td.get(new Object[]{layer.getLiteral()});
+          if (row != null) {
+            getAllHelper(
+                    currDepth + 1,
+                    total,
+                    row.get("value"),
+                    currPath.child(layer.getLiteral()),
+                    resultSoFar);
+          }
+          return;
+        }
         for (Object obj : td.keySet()) {
           List l = (List) obj;    // magic <-|- more magic
           for (Object o : l) {
             if (!String.class.isAssignableFrom(o.getClass())) {
               logger.error(o.getClass().toString() + " in "
-                      + currName + " is not supported as Tabular key");
+                      + currPath + " is not supported as Tabular key");
               continue;
             } else {
               String s = (String) o;
-              if (s.matches(layers.get(currDepth))) {
+              if (layer.matches(s)) {
                 getAllHelper(
                         currDepth + 1,
                         total,
                         td.get(new Object[]{s}).get("value"), // magic -|-> more magic
-                        currName + s + ".",
+                        currPath.child(s),
                         resultSoFar);
               }
             }
@@ -154,26 +244,44 @@ public class MultiLayeredAttribute {
         }
       } else if (curr.getClass().isArray()) {
         int len = Array.getLength(curr);
+        if (layer.isLiteral()) {
+          int i = layer.getIndex();
+          if (i >= 0 && i < len) {
+            getAllHelper(
+                    currDepth + 1,
+                    total,
+                    Array.get(curr, i),
+                    currPath.child(i),
+                    resultSoFar);
+          }
+          return;
+        }
         for (int i = 0; i < len; ++i) {
-          if (Integer.toString(i).matches(layers.get(currDepth))) {
+          if (layer.matches(i)) {
             getAllHelper(
                     currDepth + 1,
                     total,
                     Array.get(curr, i),
-                    currName + i + ".",
+                    currPath.child(i),
                     resultSoFar);
           }
         }
       } else {
         logger.info("Doesn't support type " + curr.getClass()
-                + " amid the MXBeanChain at " + currName.toString());
+                + " amid the MXBeanChain at " + currPath);
         return;
       }
     }
   }
 
-  private boolean isPattern(String name) {
-    return name.contains("?") || name.contains("*");
+  /**
+   * @return whether rows of td are looked up by a single string, so that a
+   * literal layer can be found without scanning every key
+   */
+  private boolean hasStringIndex(TabularData td) {
+    List<String> index = td.getTabularType().getIndexNames();
+    return index.size() == 1
+            && SimpleType.STRING.equals(td.getTabularType().getRowType().getType(index.get(0)));
   }
 
   public static String name2alias(CharSequence name) {
@@ -191,35 +299,6 @@ public class MultiLayeredAttribute {
     return sb.toString();
   }
 
-  private void parseName(String attrStr) throws IllegalArgumentException, RuntimeException {
-    layers = mxnp.parse(attrStr);
-    if (layers == null || layers.isEmpty()) {
-      throw new RuntimeException("Can not parse " + attrStr);
-    }
-    for (int i = 0; i < layers.size(); ++i) {
-      String temp = layers.get(i);
-      if (isPattern(temp)) { // is *? pattern
-        StringBuilder sb = new StringBuilder(temp.length());
-        for (int j = 0; j < temp.length(); ++j) {
-          switch (temp.charAt(j)) {   // turn into regex pattern
-            case '.':
-              sb.append("\\.");
-              break;
-            case '?':
-              sb.append(".");
-              break;
-            case '*':
-              sb.append(".*");
-              break;
-            default:
-              sb.append(temp.charAt(j));
-          }
-        }
-        layers.set(i, sb.toString());
-      }
-    }
-  }
-
   private StringBuilder enclose(Object obj) {
     StringBuilder sb = new StringBuilder("\"");
     sb.append(obj).append("\"");
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import javax.management.MBeanServerConnection;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps an MBeanServerConnection and counts the MBeanServerConnection calls
+ * made through it, so that the number of round trips to a (possibly remote)
+ * MBean server can be reported for each poll. Besides the total, the calls
+ * of a thread are counted into the tally it is working for, such as the
+ * poll of one tier.
+ */
+public class RoundTripCounter implements InvocationHandler {
+  private final MBeanServerConnection target;
+  private final MBeanServerConnection proxy;
+  private final AtomicLong roundTrips = new AtomicLong();
+  private final ThreadLocal<AtomicLong> tally = new ThreadLocal<AtomicLong>();
+
+  public RoundTripCounter(MBeanServerConnection target) {
+    this.target = target;
+    this.proxy = (MBeanServerConnection) Proxy.newProxyInstance(
+            MBeanServerConnection.class.getClassLoader(),
+            new Class[]{MBeanServerConnection.class},
+            this);
+  }
+
+  /**
+   * @return a connection that forwards to the wrapped one, counting each call
+   */
+  public MBeanServerConnection getConnection() {
+    return proxy;
+  }
+
+  /**
+   * @return the number of calls made since the last reset
+   */
+  public long getRoundTrips() {
+    return roundTrips.get();
+  }
+
+  /**
+   * @return the number of calls made since the last reset, and start counting
+   * again from zero
+   */
+  public long getAndResetRoundTrips() {
+    return roundTrips.getAndSet(0);
+  }
+
+  /**
+   * Count the calls the current thread makes into the given tally too,
+   * until {@link #stopTally()}
+   */
+  public void startTally(AtomicLong counter) {
+    tally.set(counter);
+  }
+
+  public void stopTally() {
+    tally.remove();
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    // hashCode, equals and toString of the proxy stay local, they reach no MBean server
+    if (method.getDeclaringClass() == MBeanServerConnection.class) {
+      roundTrips.incrementAndGet();
+      AtomicLong counter = tally.get();
+      if (counter != null) {
+        counter.incrementAndGet();
+      }
+    }
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.Extractor.MXBean.MultiLayeredAttribute;
+import org.jmxdatamart.common.DataType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The columns an MBean's values have been extracted to so far, each with a
+ * fixed slot in the {@link SampleRecord}s of the MBean. Columns are added
+ * when a value shows up under a new alias or with a new type, which bumps
+ * the version of the layout. The paths values were found at are kept too,
+ * so that a value found at the same path again goes to its slot without
+ * working out its alias.
+ */
+public final class SampleLayout {
+  private final List<Attribute> columns = new ArrayList<Attribute>();
+  private final Map<String, Integer> slots = new HashMap<String, Integer>();
+  private final Map<Attribute, Path> paths = new IdentityHashMap<Attribute, Path>();
+  private Attribute[] frozen;
+  private int version;
+
+  /**
+   * @return the slot of the column with the given alias, which now has the
+   * given type
+   */
+  public int slotOf(String alias, DataType type) {
+    Integer slot = slots.get(alias);
+    if (slot == null) {
+      slot = columns.size();
+      slots.put(alias, slot);
+      columns.add(new Attribute(null, alias, type));
+      changed();
+    } else if (columns.get(slot).getDataType() != type) {
+      columns.set(slot, new Attribute(null, alias, type));
+      changed();
+    }
+    return slot;
+  }
+
+  /**
+   * @return the slot of the column the values at the given path go to,
+   * which now has the given type
+   */
+  public int slotOf(Path path, DataType type) {
+    if (path.slot < 0 || columns.get(path.slot).getDataType() != type) {
+      path.slot = slotOf(path.getAlias(), type);
+    }
+    return path.slot;
+  }
+
+  private void changed() {
+    frozen = null;
+    ++version;
+  }
+
+  /**
+   * @param attribute a configured attribute
+   * @return where the paths of the attribute's values start
+   */
+  public Path pathOf(Attribute attribute) {
+    Path path = paths.get(attribute);
+    if (path == null) {
+      String alias = attribute.getAlias() != null && !attribute.getAlias().isEmpty() ? attribute.getAlias() : null;
+      path = new Path(null, null, alias);
+      paths.put(attribute, path);
+    }
+    return path;
+  }
+
+  /**
+   * @return the column in the given slot
+   */
+  public Attribute getColumn(int slot) {
+    return columns.get(slot);
+  }
+
+  /**
+   * @return the columns as they are now, which is not changed by adding or
+   * retyping columns later
+   */
+  Attribute[] getColumns() {
+    if (frozen == null) {
+      frozen = columns.toArray(new Attribute[columns.size()]);
+    }
+    return frozen;
+  }
+
+  /**
+   * @return the number of columns
+   */
+  public int size() {
+    return columns.size();
+  }
+
+  /**
+   * @return a number that changes whenever a column is added or retyped
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * The way from a configured attribute down to a value, i.e. the name of
+   * the MBean attribute and the keys or indexes of the composite, tabular
+   * and array values on the way, with the column the value goes to
+   */
+  public static final class Path {
+    private final Path parent;
+    private final String name;
+    private final String configuredAlias;
+    private String alias;
+    private Map<String, Path> named;
+    private List<Path> indexed;
+    private int slot = -1;
+
+    private Path(Path parent, String name, String configuredAlias) {
+      this.parent = parent;
+      this.name = name;
+      this.configuredAlias = configuredAlias;
+      this.alias = configuredAlias;
+    }
+
+    /**
+     * @return the path to the value with the given attribute name or key
+     */
+    public Path child(String key) {
+      if (named == null) {
+        named = new HashMap<String, Path>();
+      }
+      Path child = named.get(key);
+      if (child == null) {
+        child = new Path(this, key, configuredAlias);
+        named.put(key, child);
+      }
+      return child;
+    }
+
+    /**
+     * @return the path to the element with the given index
+     */
+    public Path child(int index) {
+      if (indexed == null) {
+        indexed = new ArrayList<Path>();
+      }
+      while (indexed.size() <= index) {
+        indexed.add(null);
+      }
+      Path child = indexed.get(index);
+      if (child == null) {
+        child = new Path(this, Integer.toString(index), configuredAlias);
+        indexed.set(index, child);
+      }
+      return child;
+    }
+
+    /**
+     * @return the alias of the column, which is the one configured for the
+     * attribute if any
+     */
+    public String getAlias() {
+      if (alias == null) {
+        alias = MultiLayeredAttribute.name2alias(toString() + ".");
+      }
+      return alias;
+    }
+
+    /**
+     * @return the names on the way, separated by dots
+     */
+    @Override
+    public String toString() {
+      if (parent == null || parent.name == null) {
+        return name == null ? "" : name;
+      }
+      return parent.toString() + "." + name;
+    }
+  }
+}
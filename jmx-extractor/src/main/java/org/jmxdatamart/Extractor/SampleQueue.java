@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of samples waiting to be written, applying a
+ * {@link BackpressurePolicy} when it is full.
+ */
+public class SampleQueue {
+  private final LinkedList<BeanSample> samples = new LinkedList<BeanSample>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final int capacity;
+  private final BackpressurePolicy policy;
+  private long dropped;
+  private long coalesced;
+
+  public SampleQueue(int capacity, BackpressurePolicy policy) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.policy = policy;
+  }
+
+  /**
+   * Add a sample to the queue, applying the backpressure policy if it is full
+   * @throws InterruptedException if interrupted while waiting for room
+   */
+  public void put(BeanSample sample) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (samples.size() >= capacity) {
+        if (policy == BackpressurePolicy.DROP_OLDEST) {
+          samples.removeFirst();
+          dropped++;
+        } else if (policy == BackpressurePolicy.COALESCE && replacePending(sample)) {
+          coalesced++;
+          return;
+        } else {
+          notFull.await();
+        }
+      }
+
+      samples.addLast(sample);
+      notEmpty.signal();
+
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean replacePending(BeanSample sample) {
+    ListIterator<BeanSample> it = samples.listIterator();
+    while (it.hasNext()) {
+      if (it.next().getTableName().equals(sample.getTableName())) {
+        it.set(sample);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Take every queued sample, waiting for one to arrive if the queue is empty
+   * @param timeout how long to wait
+   * @param unit the unit of timeout
+   * @return the queued samples, oldest first, empty if none arrived in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public List<BeanSample> drain(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (samples.isEmpty() && nanos > 0) {
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      List<BeanSample> drained = new ArrayList<BeanSample>(samples);
+      samples.clear();
+      notFull.signalAll();
+      return drained;
+
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of samples waiting to be written
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return samples.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of samples thrown away because the queue was full
+   */
+  public long getDropped() {
+    lock.lock();
+    try {
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of samples that replaced a queued sample of the same bean
+   */
+  public long getCoalesced() {
+    lock.lock();
+    try {
+      return coalesced;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The values extracted from an MBean in one poll, by the slot of their
+ * column in a {@link SampleLayout}. Integral values are kept in a long[] and
+ * floating point values in a double[] instead of being boxed, everything
+ * else in an Object[], so a record can be reset and refilled every poll
+ * without allocating for numeric attributes. A {@link #copy()} keeps the
+ * values for writing them on another thread.
+ */
+public final class SampleRecord {
+  private final SampleLayout layout;
+  private final Attribute[] columns;
+  private final int version;
+  private long[] longs = new long[0];
+  private double[] doubles = new double[0];
+  private Object[] objects = new Object[0];
+  private boolean[] present = new boolean[0];
+
+  public SampleRecord(SampleLayout layout) {
+    this(layout, null, 0);
+  }
+
+  private SampleRecord(SampleLayout layout, Attribute[] columns, int version) {
+    this.layout = layout;
+    this.columns = columns;
+    this.version = version;
+  }
+
+  /**
+   * @return a record of the values of a map, with a layout of its own
+   */
+  public static SampleRecord of(Map<Attribute, Object> values) {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    for (Map.Entry<Attribute, Object> value : values.entrySet()) {
+      if (value.getValue() != null) {
+        record.put(value.getKey().getAlias(), value.getKey().getDataType(), value.getValue());
+      }
+    }
+    return record;
+  }
+
+  /**
+   * @return a copy of the values, which keeps them and their columns as
+   * they are while this record is reset and refilled
+   */
+  public SampleRecord copy() {
+    SampleRecord copy = new SampleRecord(layout, columns != null ? columns : layout.getColumns(), getVersion());
+    copy.longs = longs.clone();
+    copy.doubles = doubles.clone();
+    copy.objects = objects.clone();
+    copy.present = present.clone();
+    return copy;
+  }
+
+  public SampleLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Forget the values of the previous poll
+   */
+  public void reset() {
+    Arrays.fill(present, false);
+    Arrays.fill(objects, null);
+  }
+
+  /**
+   * Set the value of a column, adding the column to the layout if needed
+   *
+   * @param alias the alias of the column
+   * @param type the type of value
+   * @param value the value, which must be of a type supported by type
+   */
+  public void put(String alias, DataType type, Object value) {
+    checkNotCopy();
+    put(layout.slotOf(alias, type), type, value);
+  }
+
+  /**
+   * Set the value found at a path, adding its column to the layout if needed
+   *
+   * @param path where the value was found, from the layout of this record
+   * @param type the type of value
+   * @param value the value, which must be of a type supported by type
+   */
+  public void put(SampleLayout.Path path, DataType type, Object value) {
+    checkNotCopy();
+    put(layout.slotOf(path, type), type, value);
+  }
+
+  private void checkNotCopy() {
+    if (columns != null) {
+      throw new IllegalStateException("A copy of a record can not be refilled");
+    }
+  }
+
+  private void put(int slot, DataType type, Object value) {
+    ensureCapacity(layout.size());
+    switch (type) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        longs[slot] = ((Number) value).longValue();
+        objects[slot] = null;
+        break;
+      case FLOAT:
+      case DOUBLE:
+        doubles[slot] = ((Number) value).doubleValue();
+        objects[slot] = null;
+        break;
+      default:
+        objects[slot] = value;
+    }
+    present[slot] = true;
+  }
+
+  /**
+   * Leave the column in the slot out of this poll
+   */
+  void remove(int slot) {
+    present[slot] = false;
+    objects[slot] = null;
+  }
+
+  private void ensureCapacity(int size) {
+    if (present.length < size) {
+      int capacity = Math.max(size, present.length * 2);
+      longs = Arrays.copyOf(longs, capacity);
+      doubles = Arrays.copyOf(doubles, capacity);
+      objects = Arrays.copyOf(objects, capacity);
+      present = Arrays.copyOf(present, capacity);
+    }
+  }
+
+  /**
+   * @return the number of slots, some of which may not have a value
+   */
+  public int size() {
+    return columns != null ? columns.length : layout.size();
+  }
+
+  /**
+   * @return the version of the layout the columns are from
+   */
+  public int getVersion() {
+    return columns != null ? version : layout.getVersion();
+  }
+
+  /**
+   * @return the number of slots that have a value in this poll
+   */
+  public int valueCount() {
+    int count = 0;
+    for (int slot = 0; slot < size(); ++slot) {
+      if (isPresent(slot)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return whether the column in the slot has a value in this poll
+   */
+  public boolean isPresent(int slot) {
+    return slot < present.length && present[slot];
+  }
+
+  public Attribute getAttribute(int slot) {
+    return columns != null ? columns[slot] : layout.getColumn(slot);
+  }
+
+  /**
+   * @return the value of an integral column
+   */
+  public long getLong(int slot) {
+    return longs[slot];
+  }
+
+  /**
+   * @return the value of a floating point column
+   */
+  public double getDouble(int slot) {
+    return doubles[slot];
+  }
+
+  /**
+   * @return the value of the column in the slot, boxed to the Java type of
+   * its DataType, or null if it has none
+   */
+  public Object getValue(int slot) {
+    if (!isPresent(slot)) {
+      return null;
+    }
+    switch (getAttribute(slot).getDataType()) {
+      case BYTE:
+        return (byte) longs[slot];
+      case SHORT:
+        return (short) longs[slot];
+      case INT:
+        return (int) longs[slot];
+      case LONG:
+        return longs[slot];
+      case FLOAT:
+        return (float) doubles[slot];
+      case DOUBLE:
+        return doubles[slot];
+      default:
+        return objects[slot];
+    }
+  }
+
+  /**
+   * @return the present values by attribute, for writers taking maps
+   */
+  public Map<Attribute, Object> toMap() {
+    Map<Attribute, Object> values = new HashMap<Attribute, Object>();
+    for (int slot = 0; slot < size(); ++slot) {
+      if (isPresent(slot)) {
+        values.put(getAttribute(slot), getValue(slot));
+      }
+    }
+    return values;
+  }
+}
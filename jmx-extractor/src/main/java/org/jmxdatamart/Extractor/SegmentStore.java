@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.FieldAttribute;
+import org.jmxdatamart.common.SegmentFormat;
+import org.jmxdatamart.common.SegmentWriter;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes samples to a directory of segment files, one open segment per
+ * table. A table's segment is rolled over to a new file once it grows past
+ * the maximum size, or when a sample brings a column the segment does not
+ * have.
+ */
+class SegmentStore {
+  static final int BLOCK_ROWS = 1024;
+
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+  private final File directory;
+  private final long maxSegmentBytes;
+  private final byte encoding;
+  private final Map<String, Table> tables = new HashMap<String, Table>();
+  private long closedBytes;
+
+  SegmentStore(File directory, long maxSegmentBytes) {
+    this(directory, maxSegmentBytes, SegmentFormat.PLAIN);
+  }
+
+  /**
+   * @param encoding {@link SegmentFormat#PLAIN} or {@link SegmentFormat#COMPRESSED}
+   */
+  SegmentStore(File directory, long maxSegmentBytes, byte encoding) {
+    this.directory = directory;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.encoding = encoding;
+  }
+
+  void write(BeanSample sample) throws IOException {
+    if (sample.getRecord().valueCount() == 0) {
+      return;
+    }
+    Table table = tables.get(sample.getTableName());
+    if (table == null) {
+      table = new Table(sample.getTableName());
+      tables.put(sample.getTableName(), table);
+    }
+    table.write(sample);
+  }
+
+  /**
+   * Write the buffered rows of every table and roll the segments that have
+   * grown too large
+   */
+  void flush() throws IOException {
+    for (Table table : tables.values()) {
+      table.flush();
+    }
+  }
+
+  /**
+   * @return the bytes of the finished segments plus an estimate of the open
+   * ones, buffered rows included, without writing anything
+   */
+  long size() {
+    long size = closedBytes;
+    for (Table table : tables.values()) {
+      if (table.writer != null) {
+        size += table.writer.estimatedSize();
+      }
+    }
+    return size;
+  }
+
+  void close() {
+    for (Table table : tables.values()) {
+      try {
+        table.close();
+      } catch (IOException ex) {
+        logger.error("Error while closing segment of " + table.name, ex);
+      }
+    }
+    tables.clear();
+  }
+
+  private class Table {
+    private final String name;
+    private final List<FieldAttribute> columns = new ArrayList<FieldAttribute>();
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+    private SegmentWriter writer;
+    private int sequence;
+
+    Table(String name) {
+      this.name = name;
+    }
+
+    void write(BeanSample sample) throws IOException {
+      SampleRecord record = sample.getRecord();
+      boolean widened = false;
+      for (int s = 0; s < record.size(); ++s) {
+        if (!record.isPresent(s)) {
+          continue;
+        }
+        Attribute attribute = record.getAttribute(s);
+        Integer slot = slots.get(attribute.getAlias());
+        if (slot == null) {
+          slots.put(attribute.getAlias(), columns.size());
+          columns.add(new FieldAttribute(attribute.getAlias(), attribute.getDataType(), false));
+          widened = true;
+        } else if (columns.get(slot).getFieldType() != attribute.getDataType()) {
+          // Follow the type the value has now, like a new HSQL column would not
+          columns.set(slot, new FieldAttribute(attribute.getAlias(), attribute.getDataType(), false));
+          widened = true;
+        }
+      }
+      if (writer == null || widened) {
+        roll();
+      }
+
+      Object[] values = new Object[columns.size()];
+      for (int s = 0; s < record.size(); ++s) {
+        if (record.isPresent(s)) {
+          values[slots.get(record.getAttribute(s).getAlias())] = record.getValue(s);
+        }
+      }
+      writer.append(sample.getTimestamp(), values);
+      // A full block has just been written
+      rollIfFull();
+    }
+
+    void flush() throws IOException {
+      if (writer == null) {
+        return;
+      }
+      writer.flush();
+      rollIfFull();
+    }
+
+    private void rollIfFull() throws IOException {
+      if (maxSegmentBytes > 0 && writer.size() >= maxSegmentBytes) {
+        close();
+      }
+    }
+
+    void close() throws IOException {
+      if (writer != null) {
+        writer.close();
+        closedBytes += writer.size();
+        writer = null;
+      }
+    }
+
+    private void roll() throws IOException {
+      close();
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Can not create " + directory);
+      }
+      File file = SegmentFormat.segmentFile(directory, name, ++sequence);
+      logger.debug("Starting segment {}", file);
+      writer = new SegmentWriter(file, name, columns, BLOCK_ROWS, encoding);
+    }
+  }
+}
@@ -31,13 +31,17 @@ package org.jmxdatamart.Extractor;
 import com.google.inject.Inject;
 import org.jmxdatamart.common.DBException;
 import org.jmxdatamart.common.HypersqlHandler;
+import org.jmxdatamart.common.SegmentFormat;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -46,28 +50,168 @@ public class StatisticsWriter {
   private final org.slf4j.Logger logger = LoggerFactory.getLogger(StatisticsWriter.class);
   private final Lock connLock = new ReentrantLock();
   private final Properties props = new Properties();
-  private final Bean2DB bd = new Bean2DB();
-  private final String dbName;
   private final HypersqlHandler hsql;
+  private final String statsDirectory;
+  private final boolean useSegments;
+  private final long segmentSize;
+  private final byte segmentEncoding;
+  private final long rotationRows;
+  private final long rotationBytes;
+  private final long rotationMillis;
+  private final ChangeFilter changes;
+  private Bean2DB bd = new Bean2DB();
+  private String dbName;
+  private SegmentStore segments;
+  private long rowsWritten;
+  private long fileStarted;
+  private final boolean keepOpen;
+  private final long checkpointMillis;
+  private final long segmentFlushMillis;
+  private final boolean batchWrites;
+  private final List<BeanSample> pending = new ArrayList<BeanSample>();
+  private long lastCheckpoint;
+  private long lastSegmentFlush;
   private Connection conn;
 
   @Inject
   public StatisticsWriter(ExtractorSettings settings) {
     props.put("username", "sa");
     props.put("password", "whatever");
+    if (settings.getWriteDelayMillis() != null) {
+      props.put("hsqldb.write_delay_millis", settings.getWriteDelayMillis().toString());
+    }
+    keepOpen = settings.isKeepDatabaseOpen();
+    checkpointMillis = settings.getCheckpointInterval() * 1000;
+    batchWrites = settings.isBatchWrites();
     hsql = new HypersqlHandler();
     hsql.loadDriver(hsql.getDriver());
 
-    String statsDirectory = settings.getFolderLocation();
-    dbName = statsDirectory + File.separator + "Extractor" + new SimpleDateFormat("yyyyMMddHHmmss").format(new java.util.Date());
+    rotationRows = settings.getRotationRows();
+    rotationBytes = settings.getRotationSize();
+    rotationMillis = settings.getRotationInterval() * 1000;
+    changes = new ChangeFilter(settings.getKeyframeInterval() * 1000);
+    useSegments = settings.getStorageFormat() == StorageFormat.SEGMENTS;
+    segmentSize = settings.getSegmentSize();
+    segmentEncoding = settings.isCompressSegments() ? SegmentFormat.COMPRESSED : SegmentFormat.PLAIN;
+    segmentFlushMillis = settings.getSegmentFlushInterval() * 1000;
+
+    statsDirectory = settings.getFolderLocation();
+    startNewFile();
+  }
+
+  /**
+   * Pick the name of the next database, or segment directory, from the
+   * current time
+   */
+  private void startNewFile() {
+    String name = statsDirectory + File.separator + "Extractor" + new SimpleDateFormat("yyyyMMddHHmmss").format(new java.util.Date());
+    String unique = name;
+    for (int i = 1; unique.equals(dbName) || new File(unique + ".script").exists()
+            || new File(unique + SegmentFormat.DIRECTORY_SUFFIX).exists(); ++i) {
+      unique = name + "_" + i;
+    }
+    dbName = unique;
+    if (useSegments) {
+      segments = new SegmentStore(new File(dbName + SegmentFormat.DIRECTORY_SUFFIX), segmentSize, segmentEncoding);
+    }
+    rowsWritten = 0;
+    fileStarted = System.currentTimeMillis();
+    lastSegmentFlush = fileStarted;
+  }
+
+  /**
+   * @return whether the current file is due to be closed and replaced by a
+   * new one
+   */
+  private boolean shouldRotate() {
+    if (rotationRows > 0 && rowsWritten >= rotationRows) {
+      return true;
+    }
+    if (rotationMillis > 0 && System.currentTimeMillis() - fileStarted >= rotationMillis) {
+      return true;
+    }
+    return rotationBytes > 0 && currentFileSize() >= rotationBytes;
+  }
+
+  private long currentFileSize() {
+    long size = 0;
+    if (segments != null) {
+      size = segments.size();
+    } else {
+      for (String extension : new String[]{".script", ".log", ".data", ".backup"}) {
+        size += new File(dbName + extension).length();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Close the current file cleanly, so that it is ready to be loaded, and
+   * continue in a new one
+   */
+  private void rotate() {
+    logger.info("Closing {} after {} rows, continuing in a new file", dbName, rowsWritten);
+    if (segments != null) {
+      segments.close();
+    }
+    if (conn != null) {
+      cleanupDatabaseConnection();
+    }
+    // The new database has none of the tables created so far, nor any values
+    bd = new Bean2DB();
+    changes.reset();
+    startNewFile();
   }
 
   void doneWritingStatistics() {
-    cleanupDatabaseConnection();
-    connLock.unlock();
+    try {
+      if (!pending.isEmpty()) {
+        writeStatistics(pending);
+      }
+    } catch (StatisticsWriterException ex) {
+      logger.error("Error while importing to HSQL", ex);
+    }
+
+    try {
+      pending.clear();
+      if (segments != null) {
+        flushSegments();
+
+      } else if (!keepOpen) {
+        cleanupDatabaseConnection();
+
+      } else if (checkpointMillis > 0 && System.currentTimeMillis() - lastCheckpoint >= checkpointMillis) {
+        hsql.checkpointDatabase(conn);
+        lastCheckpoint = System.currentTimeMillis();
+      }
+
+      if (shouldRotate()) {
+        rotate();
+      }
+
+    } finally {
+      connLock.unlock();
+    }
+  }
+
+  /**
+   * Buffered rows are written to the segments once per flush interval, or
+   * as soon as a table has a full block of them
+   */
+  private void flushSegments() {
+    if (System.currentTimeMillis() - lastSegmentFlush < segmentFlushMillis) {
+      return;
+    }
+    try {
+      segments.flush();
+    } catch (IOException ex) {
+      logger.error("Error while writing segments", ex);
+    }
+    lastSegmentFlush = System.currentTimeMillis();
   }
 
   private void cleanupDatabaseConnection() {
+    bd.closeStatements();
     hsql.shutdownDatabase(conn);
     HypersqlHandler.releaseDatabaseResource(null, null, null, conn);
     conn = null;
@@ -75,12 +219,18 @@ public class StatisticsWriter {
 
   void startWritingStatistics() {
     connLock.lock();
-    conn = hsql.connectDatabase(dbName, props);
+    if (conn == null && segments == null) {
+      conn = hsql.connectDatabase(dbName, props);
+      lastCheckpoint = System.currentTimeMillis();
+    }
   }
 
   void close() {
     try {
       connLock.lock();
+      if (segments != null) {
+        segments.close();
+      }
       if (conn != null && !conn.isClosed()) {
         cleanupDatabaseConnection();
       }
@@ -93,13 +243,98 @@ public class StatisticsWriter {
     }
   }
 
-  void writeStatistics(MBeanData beanData, Map<Attribute, Object> statisticValues) throws StatisticsWriterException {
+  /**
+   * @param record the values, which the sample takes over
+   * @return a sample of the given MBean's values, to be written later
+   */
+  BeanSample newSample(ExtractionPlan plan, SampleRecord record, long timestamp) {
+    return new BeanSample(plan.getTableName(), record, timestamp, plan.getChangeOnlyAliases());
+  }
+
+  /**
+   * Write the values extracted into a record. The record may be refilled
+   * once this returns, so it is copied if its values are written later.
+   *
+   * @param timestamp when the values were extracted, or when their window
+   * started if they are aggregated
+   */
+  void writeStatistics(ExtractionPlan plan, SampleRecord record, long timestamp) throws StatisticsWriterException {
+    if (batchWrites) {
+      // Written together with the rest of the poll in doneWritingStatistics
+      pending.add(newSample(plan, record.copy(), timestamp));
+      return;
+    }
+    BeanSample sample = changes.filter(newSample(plan, record, timestamp));
+    if (sample == null) {
+      return;
+    }
+    ++rowsWritten;
+    boolean written = false;
     try {
-      bd.export2DB(conn, beanData, statisticValues);
+      if (segments != null) {
+        writeSegments(Collections.singletonList(sample));
+      } else {
+        bd.export2DB(conn, plan.getTableName(), sample.getRecord(), timestamp);
+      }
+      written = true;
     } catch (SQLException e) {
       throw new StatisticsWriterException("While writing statistics to HSQL", e);
     } catch (DBException e) {
       throw new StatisticsWriterException("While writing statistics to HSQL", e);
+    } finally {
+      if (!written) {
+        writeFailed();
+      }
+    }
+  }
+
+  /**
+   * Write several samples in a single transaction
+   */
+  void writeStatistics(List<BeanSample> samples) throws StatisticsWriterException {
+    List<BeanSample> changed = new ArrayList<BeanSample>(samples.size());
+    for (BeanSample sample : samples) {
+      BeanSample filtered = changes.filter(sample);
+      if (filtered != null) {
+        changed.add(filtered);
+      }
+    }
+    samples = changed;
+    rowsWritten += samples.size();
+    boolean written = false;
+    try {
+      if (segments != null) {
+        writeSegments(samples);
+      } else {
+        bd.export2DB(conn, samples);
+      }
+      written = true;
+    } catch (SQLException e) {
+      throw new StatisticsWriterException("While writing statistics to HSQL", e);
+    } catch (DBException e) {
+      throw new StatisticsWriterException("While writing statistics to HSQL", e);
+    } finally {
+      if (!written) {
+        writeFailed();
+      }
+    }
+  }
+
+  /**
+   * The change filter already took the values that failed to be written as
+   * the last ones written, so every table starts over with a keyframe
+   */
+  private void writeFailed() {
+    changes.reset();
+  }
+
+  private void writeSegments(List<BeanSample> samples) throws StatisticsWriterException {
+    try {
+      for (BeanSample sample : samples) {
+        segments.write(sample);
+      }
+    } catch (IOException e) {
+      throw new StatisticsWriterException("While writing statistics to segments", e);
     }
   }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Folds the samples of beans polled more often than they need to be kept
+ * into one row per window. Every numeric attribute gets its minimum, maximum,
+ * sum and count over the window in the columns alias_min, alias_max,
+ * alias_sum and alias_count, and every attribute its last value in its own
+ * column, so that a window row reads like a regular one. The row is stamped
+ * with the time its window started. It is emitted by the first sample of a
+ * later window, or by {@link #flush(long)} once the window is over.
+ */
+class WindowAggregator {
+  static final String MIN = "_min";
+  static final String MAX = "_max";
+  static final String SUM = "_sum";
+  static final String COUNT = "_count";
+
+  private final Map<String, Window> windows = new HashMap<String, Window>();
+
+  /**
+   * Add a sample to the window of its MBean
+   *
+   * @param plan the MBean extracted
+   * @param values the values extracted
+   * @param timestamp when they were extracted
+   * @param windowMillis the length of the window
+   * @return the row of the MBean's previous window if the sample is the first
+   * of a new one, null otherwise
+   */
+  synchronized Row add(ExtractionPlan plan, Map<Attribute, Object> values, long timestamp, long windowMillis) {
+    Window window = windowOf(plan, timestamp, windowMillis);
+    Row row = window.row;
+    window.row = null;
+    window.add(values);
+    return row;
+  }
+
+  /**
+   * Same as {@link #add(ExtractionPlan, Map, long, long)}, taking the numeric
+   * values straight from the primitive arrays of the record
+   */
+  synchronized Row add(ExtractionPlan plan, SampleRecord record, long timestamp, long windowMillis) {
+    Window window = windowOf(plan, timestamp, windowMillis);
+    Row row = window.row;
+    window.row = null;
+    window.add(record);
+    return row;
+  }
+
+  /**
+   * @return the window of the MBean the timestamp falls into, holding the
+   * row of the previous window if that one just finished
+   */
+  private Window windowOf(ExtractionPlan plan, long timestamp, long windowMillis) {
+    long start = timestamp - timestamp % windowMillis;
+
+    // By table, so that a window survives its plan being replaced
+    Window window = windows.get(plan.getTableName());
+    if (window == null) {
+      window = new Window(start);
+      windows.put(plan.getTableName(), window);
+    } else if (window.start != start) {
+      window.row = new Row(window.start, window.toRow());
+      window.reset(start);
+    }
+    window.plan = plan;
+    window.millis = windowMillis;
+    window.released = false;
+    return window;
+  }
+
+  /**
+   * Let go of the window of a plan that was dropped, to be written by the
+   * next {@link #flush(long)} unless a new plan of its table adds to it
+   * first
+   */
+  synchronized void release(ExtractionPlan plan) {
+    Window window = windows.get(plan.getTableName());
+    if (window != null && window.plan == plan) {
+      window.released = true;
+    }
+  }
+
+  /**
+   * @return the rows of the windows that ended by the given time without a
+   * sample of a later window, and of the windows of dropped plans, which are
+   * forgotten
+   */
+  synchronized Map<ExtractionPlan, Row> flush(long now) {
+    Map<ExtractionPlan, Row> rows = new LinkedHashMap<ExtractionPlan, Row>();
+    for (Iterator<Window> it = windows.values().iterator(); it.hasNext();) {
+      Window window = it.next();
+      if (window.released || window.start + window.millis <= now) {
+        Map<Attribute, Object> values = window.toRow();
+        if (!values.isEmpty()) {
+          rows.put(window.plan, new Row(window.start, values));
+        }
+        it.remove();
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return the rows of the windows that are not finished yet, which are
+   * forgotten
+   */
+  synchronized Map<ExtractionPlan, Row> drain() {
+    Map<ExtractionPlan, Row> rows = new LinkedHashMap<ExtractionPlan, Row>();
+    for (Window window : windows.values()) {
+      Map<Attribute, Object> values = window.toRow();
+      if (!values.isEmpty()) {
+        rows.put(window.plan, new Row(window.start, values));
+      }
+    }
+    windows.clear();
+    return rows;
+  }
+
+  /**
+   * The values of a window, and when the window started
+   */
+  static class Row {
+    final long start;
+    final Map<Attribute, Object> values;
+
+    Row(long start, Map<Attribute, Object> values) {
+      this.start = start;
+      this.values = values;
+    }
+  }
+
+  private static class Window {
+    private final Map<Attribute, Accumulator> accumulators = new LinkedHashMap<Attribute, Accumulator>();
+    private ExtractionPlan plan;
+    private Row row;
+    private long start;
+    private long millis;
+    private boolean released;
+
+    Window(long start) {
+      this.start = start;
+    }
+
+    void reset(long start) {
+      this.start = start;
+      for (Accumulator accumulator : accumulators.values()) {
+        accumulator.reset();
+      }
+    }
+
+    void add(Map<Attribute, Object> values) {
+      for (Map.Entry<Attribute, Object> value : values.entrySet()) {
+        accumulatorOf(value.getKey()).add(value.getValue());
+      }
+    }
+
+    void add(SampleRecord record) {
+      for (int slot = 0; slot < record.size(); ++slot) {
+        if (!record.isPresent(slot)) {
+          continue;
+        }
+        Accumulator accumulator = accumulatorOf(record.getAttribute(slot));
+        if (accumulator.integral) {
+          accumulator.add(record.getLong(slot));
+        } else if (accumulator.floating) {
+          accumulator.add(record.getDouble(slot));
+        } else {
+          accumulator.add(record.getValue(slot));
+        }
+      }
+    }
+
+    private Accumulator accumulatorOf(Attribute attribute) {
+      Accumulator accumulator = accumulators.get(attribute);
+      if (accumulator == null) {
+        accumulator = new Accumulator(attribute);
+        accumulators.put(attribute, accumulator);
+      }
+      return accumulator;
+    }
+
+    Map<Attribute, Object> toRow() {
+      Map<Attribute, Object> row = new HashMap<Attribute, Object>();
+      for (Accumulator accumulator : accumulators.values()) {
+        accumulator.addTo(row);
+      }
+      return row;
+    }
+  }
+
+  /**
+   * The aggregates of a single attribute, kept in primitives so that adding a
+   * value does not allocate
+   */
+  private static class Accumulator {
+    private final Attribute attribute;
+    private final boolean integral;
+    private final boolean floating;
+    private Attribute min;
+    private Attribute max;
+    private Attribute sum;
+    private Attribute count;
+
+    private long n;
+    private long longMin;
+    private long longMax;
+    private long longSum;
+    private double doubleMin;
+    private double doubleMax;
+    private double doubleSum;
+    private long longLast;
+    private double doubleLast;
+    private Object last;
+
+    Accumulator(Attribute attribute) {
+      this.attribute = attribute;
+      DataType type = attribute.getDataType();
+      integral = type == DataType.BYTE || type == DataType.SHORT || type == DataType.INT || type == DataType.LONG;
+      floating = type == DataType.FLOAT || type == DataType.DOUBLE;
+      if (integral || floating) {
+        DataType aggregate = integral ? DataType.LONG : DataType.DOUBLE;
+        min = new Attribute(attribute.getName(), attribute.getAlias() + MIN, aggregate);
+        max = new Attribute(attribute.getName(), attribute.getAlias() + MAX, aggregate);
+        sum = new Attribute(attribute.getName(), attribute.getAlias() + SUM, aggregate);
+        count = new Attribute(attribute.getName(), attribute.getAlias() + COUNT, DataType.LONG);
+      }
+      reset();
+    }
+
+    void reset() {
+      n = 0;
+      longMin = Long.MAX_VALUE;
+      longMax = Long.MIN_VALUE;
+      longSum = 0;
+      doubleMin = Double.POSITIVE_INFINITY;
+      doubleMax = Double.NEGATIVE_INFINITY;
+      doubleSum = 0;
+      last = null;
+    }
+
+    void add(Object value) {
+      if (value == null) {
+        return;
+      }
+      if (!(value instanceof Number)) {
+        last = value;
+      } else if (integral) {
+        add(((Number) value).longValue());
+      } else if (floating) {
+        add(((Number) value).doubleValue());
+      } else {
+        last = value;
+      }
+    }
+
+    void add(long v) {
+      longMin = Math.min(longMin, v);
+      longMax = Math.max(longMax, v);
+      longSum += v;
+      longLast = v;
+      ++n;
+    }
+
+    void add(double v) {
+      doubleMin = Math.min(doubleMin, v);
+      doubleMax = Math.max(doubleMax, v);
+      doubleSum += v;
+      doubleLast = v;
+      ++n;
+    }
+
+    void addTo(Map<Attribute, Object> row) {
+      if (n == 0) {
+        if (last != null) {
+          row.put(attribute, last);
+        }
+        return;
+      }
+      if (integral) {
+        row.put(attribute, toType(longLast));
+        row.put(min, longMin);
+        row.put(max, longMax);
+        row.put(sum, longSum);
+      } else if (floating) {
+        row.put(attribute, attribute.getDataType() == DataType.FLOAT ? (Object) (float) doubleLast : doubleLast);
+        row.put(min, doubleMin);
+        row.put(max, doubleMax);
+        row.put(sum, doubleSum);
+      }
+      if (integral || floating) {
+        row.put(count, n);
+      }
+    }
+
+    private Object toType(long v) {
+      switch (attribute.getDataType()) {
+        case BYTE:
+          return (byte) v;
+        case SHORT:
+          return (short) v;
+        case INT:
+          return (int) v;
+        default:
+          return v;
+      }
+    }
+  }
+}
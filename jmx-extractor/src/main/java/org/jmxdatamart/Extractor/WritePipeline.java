@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decouples extracting statistics from writing them: the extractor puts the
+ * samples it reads into a bounded queue, and a separate thread takes them out
+ * and writes them with the {@link StatisticsWriter}, so a slow disk does not
+ * hold up the next poll and a slow MBean server does not hold up the writes.
+ */
+public class WritePipeline {
+  private static final long DRAIN_TIMEOUT_MILLIS = 1000;
+
+  private final org.slf4j.Logger logger = LoggerFactory.getLogger(WritePipeline.class);
+  private final StatisticsWriter writer;
+  private final SampleQueue queue;
+  private final Thread consumer;
+  private final AtomicLong written = new AtomicLong();
+  private volatile boolean running = true;
+  private volatile long lastLagMillis;
+  private volatile long maxLagMillis;
+
+  public WritePipeline(StatisticsWriter writer, int capacity, BackpressurePolicy policy) {
+    this.writer = writer;
+    this.queue = new SampleQueue(capacity, policy);
+
+    consumer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeUntilClosed();
+      }
+    }, "JMX Statistics Writer");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * Queue a sample to be written
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   */
+  public void put(BeanSample sample) throws InterruptedException {
+    if (!running) {
+      throw new IllegalStateException("Statistics writer pipeline is closed");
+    }
+    queue.put(sample);
+  }
+
+  private void writeUntilClosed() {
+    while (running || queue.size() > 0) {
+      List<BeanSample> samples;
+      try {
+        samples = queue.drain(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        logger.warn("Statistics writer interrupted, {} samples not written", queue.size());
+        return;
+      }
+      if (!samples.isEmpty()) {
+        write(samples);
+      }
+    }
+  }
+
+  private void write(List<BeanSample> samples) {
+    try {
+      writer.startWritingStatistics();
+      writer.writeStatistics(samples);
+    } catch (StatisticsWriterException ex) {
+      logger.error("Error while importing to HSQL", ex);
+    } catch (RuntimeException ex) {
+      logger.error("Error while writing statistics", ex);
+    } finally {
+      writer.doneWritingStatistics();
+    }
+
+    long oldest = Long.MAX_VALUE;
+    for (BeanSample sample : samples) {
+      oldest = Math.min(oldest, sample.getTimestamp());
+    }
+    lastLagMillis = System.currentTimeMillis() - oldest;
+    maxLagMillis = Math.max(maxLagMillis, lastLagMillis);
+    written.addAndGet(samples.size());
+    logger.debug("Wrote {} samples, {} ms behind extraction", samples.size(), lastLagMillis);
+  }
+
+  /**
+   * Stop accepting samples, write the ones still queued and close the writer
+   */
+  public void close() {
+    running = false;
+    try {
+      consumer.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    writer.close();
+  }
+
+  /**
+   * @return the number of samples waiting to be written
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of samples thrown away because the queue was full
+   */
+  public long getDroppedSamples() {
+    return queue.getDropped();
+  }
+
+  /**
+   * @return the number of samples that replaced a queued sample of the same bean
+   */
+  public long getCoalescedSamples() {
+    return queue.getCoalesced();
+  }
+
+  /**
+   * @return the number of samples written so far
+   */
+  public long getWrittenSamples() {
+    return written.get();
+  }
+
+  /**
+   * @return how long the oldest sample of the last write had waited to be
+   * written, in milliseconds
+   */
+  public long getLastLagMillis() {
+    return lastLagMillis;
+  }
+
+  /**
+   * @return the longest a sample has waited to be written, in milliseconds
+   */
+  public long getMaxLagMillis() {
+    return maxLagMillis;
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.JMXTestServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.openmbean.OpenDataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers any number of generated beans and keeps changing their values,
+ * to put a known load on the extractor.
+ * Beans are named org.jmxdatamart.load:type=Generated,name=Bean0, Bean1...
+ * and are RandomValueDynamicMBeans with the configured number of attributes,
+ * nesting depth and table size.
+ */
+public class LoadGenerator {
+
+    public static final String DOMAIN = "org.jmxdatamart.load";
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private int beans = 10;
+    private int attributesPerBean = 10;
+    private int depth = 0;
+    private int tableSize = 0;
+    private double changeRate = 1.0;
+    private long tickMillis = 1000;
+
+    private final List<RandomValueDynamicMBean> registered = new ArrayList<RandomValueDynamicMBean>();
+    private MBeanServer mbs;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @return the name of the i-th generated bean
+     */
+    public static ObjectName beanName(int i) throws MalformedObjectNameException {
+        return new ObjectName(DOMAIN + ":type=Generated,name=Bean" + i);
+    }
+
+    /**
+     * Register the beans on the given server and start changing their values
+     * every tick
+     */
+    public synchronized void start(MBeanServer mbs) throws JMException, OpenDataException {
+        if (this.mbs != null) {
+            throw new IllegalStateException("Load generator already started");
+        }
+        this.mbs = mbs;
+        for (int i = 0; i < beans; ++i) {
+            RandomValueDynamicMBean bean = new RandomValueDynamicMBean(attributesPerBean, depth, tableSize);
+            mbs.registerMBean(bean, beanName(i));
+            registered.add(bean);
+        }
+        logger.info("Registered {} beans with {} attributes each", beans, attributesPerBean);
+
+        if (changeRate > 0 && tickMillis > 0) {
+            ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "LoadGenerator");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            ticker.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Change the values of all beans once
+     * @return the number of values changed
+     */
+    public int tick() {
+        int changed = 0;
+        for (RandomValueDynamicMBean bean : registered) {
+            changed += bean.randomize(changeRate);
+        }
+        return changed;
+    }
+
+    /**
+     * Stop changing values and unregister the beans
+     */
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        for (int i = 0; i < registered.size(); ++i) {
+            try {
+                mbs.unregisterMBean(beanName(i));
+            } catch (JMException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        registered.clear();
+        mbs = null;
+    }
+
+    /**
+     * @return the number of beans
+     */
+    public int getBeans() {
+        return beans;
+    }
+
+    /**
+     * @param beans the beans to set
+     */
+    public void setBeans(int beans) {
+        this.beans = beans;
+    }
+
+    /**
+     * @return the number of attributes of each bean
+     */
+    public int getAttributesPerBean() {
+        return attributesPerBean;
+    }
+
+    /**
+     * @param attributesPerBean the attributesPerBean to set
+     */
+    public void setAttributesPerBean(int attributesPerBean) {
+        this.attributesPerBean = attributesPerBean;
+    }
+
+    /**
+     * @return the levels of CompositeData nesting of each attribute
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param depth the depth to set
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @return the rows in the TabularData of every nesting level
+     */
+    public int getTableSize() {
+        return tableSize;
+    }
+
+    /**
+     * @param tableSize the tableSize to set
+     */
+    public void setTableSize(int tableSize) {
+        this.tableSize = tableSize;
+    }
+
+    /**
+     * @return the probability of each value changing in a tick
+     */
+    public double getChangeRate() {
+        return changeRate;
+    }
+
+    /**
+     * @param changeRate the changeRate to set
+     */
+    public void setChangeRate(double changeRate) {
+        this.changeRate = changeRate;
+    }
+
+    /**
+     * @return the time between ticks in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * @param tickMillis the tickMillis to set
+     */
+    public void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+}
@@ -28,8 +28,12 @@
 package org.jmxdatamart.JMXTestServer;
 
 import java.lang.management.ManagementFactory;
+import java.rmi.registry.LocateRegistry;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
 
 /**
  *
@@ -38,9 +42,16 @@ import javax.management.ObjectName;
 public class Main {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, options starting with -- run
+     * the load generator instead of the test beans:
+     * --beans n --attributes n --depth n --table n --change-rate p --tick ms
+     * --rmi-port port --duration s
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].startsWith("--")) {
+            runLoadGenerator(args);
+            return;
+        }
 
         TestBean tb1 = new TestBean();
         tb1.setA(new Integer(42));
@@ -71,4 +82,60 @@ public class Main {
         mbs.unregisterMBean(tbName2);
         mbs.unregisterMBean(cbName);
     }
+
+    private static void runLoadGenerator(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        int rmiPort = 0;
+        long duration = 0;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String option = args[i];
+            String value = args[i + 1];
+            if ("--beans".equals(option)) {
+                generator.setBeans(Integer.parseInt(value));
+            } else if ("--attributes".equals(option)) {
+                generator.setAttributesPerBean(Integer.parseInt(value));
+            } else if ("--depth".equals(option)) {
+                generator.setDepth(Integer.parseInt(value));
+            } else if ("--table".equals(option)) {
+                generator.setTableSize(Integer.parseInt(value));
+            } else if ("--change-rate".equals(option)) {
+                generator.setChangeRate(Double.parseDouble(value));
+            } else if ("--tick".equals(option)) {
+                generator.setTickMillis(Long.parseLong(value));
+            } else if ("--rmi-port".equals(option)) {
+                rmiPort = Integer.parseInt(value);
+            } else if ("--duration".equals(option)) {
+                duration = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        generator.start(mbs);
+
+        JMXConnectorServer connector = null;
+        if (rmiPort > 0) {
+            LocateRegistry.createRegistry(rmiPort);
+            JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://localhost:" + rmiPort + "/jmxrmi");
+            connector = JMXConnectorServerFactory.newJMXConnectorServer(url, null, mbs);
+            connector.start();
+            System.out.println("Listening on " + url);
+        }
+
+        if (duration > 0) {
+            Thread.sleep(duration * 1000);
+        } else {
+            System.out.println("Press Enter to terminate...");
+            System.in.read();
+        }
+
+        if (connector != null) {
+            connector.stop();
+        }
+        generator.stop();
+    }
 }
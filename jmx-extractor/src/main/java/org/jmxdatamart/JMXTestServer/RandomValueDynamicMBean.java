@@ -34,9 +34,10 @@
 package org.jmxdatamart.JMXTestServer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -49,6 +50,13 @@ import javax.management.MBeanInfo;
 import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -64,12 +72,20 @@ public class RandomValueDynamicMBean implements DynamicMBean {
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(RandomValueDynamicMBean.class);
     
     private Map<String, Object> data;
+
+    // Generated attributes, see RandomValueDynamicMBean(int, int, int)
+    private long[][] leaves = new long[0][];
+    private OpenType<?>[] levelTypes;
+    private CompositeType rowType;
+    private TabularType tableType;
+    private int tableSize;
     
     public RandomValueDynamicMBean() {
     	random = new Random();
     	attributes = new ArrayList<MBeanAttributeInfo>();
     	operations = new ArrayList<MBeanOperationInfo>();
-    	data = new TreeMap<String, Object>();
+    	// Read by the MBean server while the load generator changes values
+    	data = new ConcurrentSkipListMap<String, Object>();
 
     	//Define the bean operation
         operations.add(new MBeanOperationInfo(
@@ -80,6 +96,105 @@ public class RandomValueDynamicMBean implements DynamicMBean {
         		MBeanOperationInfo.ACTION));
     }
 
+    /**
+     * Create a bean with generated attributes named Attribute0, Attribute1...
+     * When depth is 0 they are longs, otherwise CompositeData holding a long
+     * Value, a Table of tableSize rows keyed Row0, Row1... if tableSize is
+     * positive, and a Child one level shallower, down to a long at depth 0.
+     *
+     * @param attributeCount number of attributes
+     * @param depth levels of CompositeData nesting
+     * @param tableSize rows in the TabularData of every level, 0 for none
+     * @throws OpenDataException
+     */
+    public RandomValueDynamicMBean(int attributeCount, int depth, int tableSize) throws OpenDataException {
+        this();
+        this.tableSize = tableSize;
+        levelTypes = new OpenType<?>[depth + 1];
+        levelTypes[0] = SimpleType.LONG;
+        if (tableSize > 0) {
+            rowType = new CompositeType("Row", "A row of a generated table",
+                    new String[]{"key", "value"},
+                    new String[]{"key", "value"},
+                    new OpenType<?>[]{SimpleType.STRING, SimpleType.LONG});
+            tableType = new TabularType("Table", "A generated table", rowType, new String[]{"key"});
+        }
+        int leafCount = 1;
+        for (int level = 1; level <= depth; ++level) {
+            if (tableSize > 0) {
+                levelTypes[level] = new CompositeType("Level" + level, "Generated level " + level,
+                        new String[]{"Value", "Table", "Child"},
+                        new String[]{"Value", "Table", "Child"},
+                        new OpenType<?>[]{SimpleType.LONG, tableType, levelTypes[level - 1]});
+            } else {
+                levelTypes[level] = new CompositeType("Level" + level, "Generated level " + level,
+                        new String[]{"Value", "Child"},
+                        new String[]{"Value", "Child"},
+                        new OpenType<?>[]{SimpleType.LONG, levelTypes[level - 1]});
+            }
+            leafCount += 1 + tableSize;
+        }
+
+        leaves = new long[attributeCount][leafCount];
+        for (int i = 0; i < attributeCount; ++i) {
+            for (int j = 0; j < leafCount; ++j) {
+                leaves[i][j] = random.nextInt(1000);
+            }
+            addAttribute("Attribute" + i, levelTypes[depth].getClassName(), "Generated attribute", true, false, false);
+            data.put("Attribute" + i, build(i));
+        }
+    }
+
+    /**
+     * Change each generated value with the given probability
+     * @param changeRate probability of a value changing, between 0 and 1
+     * @return the number of values changed
+     */
+    public int randomize(double changeRate) {
+        int changed = 0;
+        for (int i = 0; i < leaves.length; ++i) {
+            boolean attributeChanged = false;
+            for (int j = 0; j < leaves[i].length; ++j) {
+                if (random.nextDouble() < changeRate) {
+                    leaves[i][j] += 1 + random.nextInt(100);
+                    attributeChanged = true;
+                    ++changed;
+                }
+            }
+            if (attributeChanged) {
+                try {
+                    data.put("Attribute" + i, build(i));
+                } catch (OpenDataException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+        return changed;
+    }
+
+    private Object build(int attribute) throws OpenDataException {
+        return build(leaves[attribute], new int[1], levelTypes.length - 1);
+    }
+
+    private Object build(long[] values, int[] next, int level) throws OpenDataException {
+        if (level == 0) {
+            return values[next[0]++];
+        }
+        Map<String, Object> items = new HashMap<String, Object>();
+        items.put("Value", values[next[0]++]);
+        if (tableSize > 0) {
+            TabularDataSupport table = new TabularDataSupport(tableType);
+            for (int row = 0; row < tableSize; ++row) {
+                table.put(new CompositeDataSupport(rowType,
+                        new String[]{"key", "value"},
+                        new Object[]{"Row" + row, values[next[0]++]}));
+            }
+            items.put("Table", table);
+        }
+        items.put("Child", build(values, next, level - 1));
+        return new CompositeDataSupport((CompositeType) levelTypes[level], items);
+    }
+
     /** Returns the MBeanInfo object for this dynamic mBean */
     public MBeanInfo getMBeanInfo() {
         return new MBeanInfo(this.getClass().getName(),
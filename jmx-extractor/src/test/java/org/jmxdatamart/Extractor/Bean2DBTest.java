@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.HypersqlHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class Bean2DBTest {
+  private static final Attribute USED = new Attribute(null, "used", DataType.LONG);
+  private static final Attribute PEAK = new Attribute(null, "peak", DataType.LONG);
+  private static final Attribute THREAD_COUNT = new Attribute(null, "threadCount", DataType.LONG);
+  private static int databases;
+  private Connection conn;
+  private Bean2DB bd;
+  private int insertsPrepared;
+
+  @Before
+  public void setUp() throws Exception {
+    HypersqlHandler hsql = new HypersqlHandler();
+    hsql.loadDriver(hsql.getDriver());
+    final Connection hsqlConnection = DriverManager.getConnection("jdbc:hsqldb:mem:Bean2DBTest" + ++databases, "sa", "");
+    // Counts the insert statements Bean2DB prepares, HSQL itself would still run a stale one after an ALTER
+    conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("prepareStatement") && ((String) args[0]).startsWith("insert")) {
+                  ++insertsPrepared;
+                }
+                try {
+                  return method.invoke(hsqlConnection, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              }
+            });
+    bd = new Bean2DB();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    bd.closeStatements();
+    new HypersqlHandler().shutdownDatabase(conn);
+    HypersqlHandler.releaseDatabaseResource(null, null, null, conn);
+  }
+
+  @Test
+  public void cachedInsertIsPreparedAgainAfterAlter() throws Exception {
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 0, USED, 1L)));
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 1, USED, 2L)));
+    assertEquals(1, insertsPrepared);
+
+    // Adds a column to the table, the insert cached for "used" alone must not be reused as it was
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 2, USED, 3L, PEAK, 30L)));
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 3, USED, 4L)));
+    assertEquals(3, insertsPrepared);
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 4, USED, 5L)));
+    assertEquals(3, insertsPrepared);
+
+    assertEquals("1,null;2,null;3,30;4,null;5,null", rows("select used, peak from Memory order by time"));
+  }
+
+  @Test
+  public void failedBatchIsRolledBack() throws Exception {
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 0, USED, 1L), sample("Threads", 0, THREAD_COUNT, 5L)));
+
+    // The second table's batch fails after the first one was sent
+    Attribute badCount = new Attribute(null, "threadCount", DataType.STRING);
+    try {
+      bd.export2DB(conn, Arrays.asList(sample("Memory", 1, USED, 2L), sample("Threads", 1, badCount, "many")));
+      fail("The poll should not have been written");
+    } catch (SQLException expected) {
+    }
+
+    assertEquals("1", rows("select used from Memory"));
+    assertEquals("5", rows("select threadCount from Threads"));
+    assertTrue(conn.getAutoCommit());
+
+    // Nothing is left half written for the next poll
+    bd.export2DB(conn, Arrays.asList(sample("Memory", 2, USED, 3L), sample("Threads", 2, THREAD_COUNT, 6L)));
+    assertEquals("1;3", rows("select used from Memory order by time"));
+    assertEquals("5;6", rows("select threadCount from Threads order by time"));
+  }
+
+  @Test
+  public void batchThatFailsToBindIsNotSentByTheNextPoll() throws Exception {
+    Attribute state = new Attribute(null, "state", DataType.STRING);
+    bd.export2DB(conn, Arrays.asList(sample("States", 0, state, "up")));
+
+    // The first row is already in the cached statement's batch when binding the second one throws
+    Attribute unbindable = new Attribute(null, "state", DataType.UNKNOWN);
+    try {
+      bd.export2DB(conn, Arrays.asList(sample("States", 1, state, "down"), sample("States", 1, unbindable, "?")));
+      fail("The poll should not have been written");
+    } catch (UnsupportedOperationException expected) {
+    }
+    assertTrue(conn.getAutoCommit());
+
+    bd.export2DB(conn, Arrays.asList(sample("States", 2, state, "up")));
+    assertEquals("up;up", rows("select state from States order by time"));
+  }
+
+  private static BeanSample sample(String table, long time, Object... attributesAndValues) {
+    Map<Attribute, Object> values = new HashMap<Attribute, Object>();
+    for (int i = 0; i < attributesAndValues.length; i += 2) {
+      values.put((Attribute) attributesAndValues[i], attributesAndValues[i + 1]);
+    }
+    return new BeanSample(table, values, time);
+  }
+
+  private String rows(String query) throws SQLException {
+    Statement st = conn.createStatement();
+    ResultSet rs = st.executeQuery(query);
+    StringBuilder rows = new StringBuilder();
+    while (rs.next()) {
+      if (rows.length() > 0) {
+        rows.append(";");
+      }
+      for (int i = 1; i <= rs.getMetaData().getColumnCount(); ++i) {
+        rows.append(i > 1 ? "," : "").append(rs.getObject(i));
+      }
+    }
+    HypersqlHandler.releaseDatabaseResource(rs, st, null, null);
+    return rows.toString();
+  }
+}
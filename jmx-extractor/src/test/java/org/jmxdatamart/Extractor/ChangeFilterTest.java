@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.JMXTestServer.TestBean;
+import org.jmxdatamart.common.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ChangeFilterTest {
+  private final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+  private final TestBean bean = new TestBean();
+  private ObjectName name;
+
+  @Before
+  public void registerBean() throws Exception {
+    name = new ObjectName("org.jmxdatamart.JMXTestServer:type=ChangeFilterTestBean");
+    mbs.registerMBean(bean, name);
+  }
+
+  @After
+  public void unregisterBean() throws Exception {
+    mbs.unregisterMBean(name);
+  }
+
+  private ExtractionPlan plan(Boolean beanChangeOnly, Attribute... attributes) {
+    MBeanData beanData = new MBeanData(name.getCanonicalName(), "Test", Arrays.asList(attributes), true);
+    beanData.setChangeOnly(beanChangeOnly);
+    return new ExtractionPlan(name, "Test", "Test", beanData);
+  }
+
+  private BeanSample poll(ExtractionPlan plan, long timestamp) {
+    Map<Attribute, Object> values = MBeanExtract.extract(plan, mbs, null);
+    return new BeanSample(plan.getTableName(), values, timestamp, plan.getChangeOnlyAliases());
+  }
+
+  private Set<String> aliases(BeanSample sample) {
+    Set<String> aliases = new HashSet<String>();
+    for (Attribute a : sample.getValues().keySet()) {
+      aliases.add(a.getAlias());
+    }
+    return aliases;
+  }
+
+  @Test
+  public void unchangedValuesAreDroppedBetweenKeyframes() {
+    Attribute alpha = new Attribute("A", "Alpha", DataType.INT);
+    alpha.setChangeOnly(false);
+    ExtractionPlan plan = plan(true, alpha, new Attribute("*Var", null, null));
+    ChangeFilter filter = new ChangeFilter(10000);
+
+    assertEquals(new HashSet<String>(Arrays.asList("Alpha", "BoolVar", "DateVar")), aliases(filter.filter(poll(plan, 0))));
+    assertEquals(new HashSet<String>(Arrays.asList("BoolVar", "DateVar")), plan.getChangeOnlyAliases());
+
+    bean.setA(1);
+    assertEquals(Collections.singleton("Alpha"), aliases(filter.filter(poll(plan, 1000))));
+
+    bean.setBoolVar(false);
+    assertEquals(new HashSet<String>(Arrays.asList("Alpha", "BoolVar")), aliases(filter.filter(poll(plan, 2000))));
+    assertEquals(Collections.singleton("Alpha"), aliases(filter.filter(poll(plan, 3000))));
+
+    // Keyframe
+    assertEquals(3, filter.filter(poll(plan, 10000)).getValues().size());
+  }
+
+  @Test
+  public void rowIsSkippedWhenNothingChanged() {
+    ExtractionPlan plan = plan(true, new Attribute("A", "Alpha", DataType.INT), new Attribute("B", null, null));
+    ChangeFilter filter = new ChangeFilter(0);
+
+    assertNotNull(filter.filter(poll(plan, 0)));
+    for (int i = 1; i < 100; ++i) {
+      assertNull(filter.filter(poll(plan, i * 1000)));
+    }
+
+    bean.setB(42);
+    assertEquals(Collections.singleton("B"), aliases(filter.filter(poll(plan, 100000))));
+
+    filter.reset();
+    assertEquals(2, filter.filter(poll(plan, 101000)).getValues().size());
+  }
+
+  @Test
+  public void attributeOverridesBean() {
+    Attribute vmName = new Attribute("VmName", "VmName", DataType.STRING);
+    Attribute always = new Attribute("Uptime", "Uptime", DataType.LONG);
+    always.setChangeOnly(false);
+    MBeanData bean = new MBeanData("java.lang:type=Runtime", "Runtime",
+            Arrays.asList(vmName, always), true);
+    assertTrue(bean.getChangeOnlyAttributes().isEmpty());
+
+    bean.setChangeOnly(true);
+    assertEquals(Collections.singleton(vmName), bean.getChangeOnlyAttributes());
+  }
+}
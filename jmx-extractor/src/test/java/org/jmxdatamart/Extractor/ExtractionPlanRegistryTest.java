@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.JMXTestServer.TestBean;
+import org.jmxdatamart.common.DataType;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ExtractionPlanRegistryTest {
+
+  @Test
+  public void plansOfPatternInstancesDroppedOnUnregistration() throws Exception {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.jmxdatamart.JMXTestServer:type=PlannedTestBean,id=1");
+    mbs.registerMBean(new TestBean(), name);
+
+    MBeanData pattern = new MBeanData("org.jmxdatamart.JMXTestServer:type=PlannedTestBean,*", "Planned",
+            new ArrayList<Attribute>(), true);
+    pattern.getAttributes().add(new Attribute("A", null, DataType.INT));
+
+    ExtractorStats stats = new ExtractorStats();
+    WindowAggregator windows = new WindowAggregator();
+    ExtractionPlanRegistry registry = new ExtractionPlanRegistry(mbs, stats, windows);
+    try {
+      ExtractionPlan plan = registry.getPlan(pattern, name);
+      assertSame(plan, registry.getPlan(pattern, name));
+      assertEquals("org_jmxdatamart_JMXTestServer_id_1_type_PlannedTestBean", plan.getAlias());
+      assertEquals(plan.getAlias(), plan.getTableName());
+      assertEquals(pattern.getAttributes(), plan.getAttributes());
+      // The pattern bean itself is left untouched
+      assertEquals("Planned", pattern.getAlias());
+
+      ExtractorStats.Cycle cycle = stats.startCycle();
+      cycle.bean(plan.getName(), 1000, 1000, 1, 0, 16);
+      stats.endCycle(cycle);
+      assertTrue(stats.getBeans().containsKey(plan.getName()));
+      windows.add(plan, Collections.<Attribute, Object>singletonMap(pattern.getAttributes().get(0), 1), 1000, 60000);
+
+      mbs.unregisterMBean(name);
+      assertEquals(0, registry.size());
+      assertTrue(stats.getBeans().isEmpty());
+      // The window of the dropped plan is written before it is over
+      assertTrue(windows.flush(1000).containsKey(plan));
+
+    } finally {
+      registry.close();
+      if (mbs.isRegistered(name)) {
+        mbs.unregisterMBean(name);
+      }
+    }
+  }
+
+  @Test
+  public void planOfSingleBean() {
+    MBeanData bean = new MBeanData("java.lang:type=Memory", null, new ArrayList<Attribute>(), true);
+    ExtractionPlanRegistry registry = new ExtractionPlanRegistry(null);
+
+    ExtractionPlan plan = registry.getPlan(bean);
+    assertSame(plan, registry.getPlan(bean));
+    assertEquals("java_lang__type___Memory", plan.getTableName());
+    assertNull(registry.getPlan(new MBeanData("not an ObjectName", null, new ArrayList<Attribute>(), true)));
+  }
+
+  @Test
+  public void concurrentLookupsShareOnePlan() throws Exception {
+    final MBeanData bean = new MBeanData("java.lang:type=Threading", null, new ArrayList<Attribute>(), true);
+    final ExtractionPlanRegistry registry = new ExtractionPlanRegistry(null);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<ExtractionPlan>> lookups = new ArrayList<Future<ExtractionPlan>>();
+      for (int i = 0; i < 8; ++i) {
+        lookups.add(executor.submit(new Callable<ExtractionPlan>() {
+          @Override
+          public ExtractionPlan call() throws Exception {
+            start.await();
+            return registry.getPlan(bean);
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<ExtractionPlan> lookup : lookups) {
+        assertSame(registry.getPlan(bean), lookup.get());
+      }
+      assertEquals(1, registry.size());
+
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExtractionSchedulerTest {
+
+  @Test
+  public void overrunningExtractionSkipsTicks() throws InterruptedException {
+    final CountDownLatch twoRuns = new CountDownLatch(2);
+    ExtractionScheduler scheduler = new ExtractionScheduler("test", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(250);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        twoRuns.countDown();
+      }
+    }, 100, ScheduleMode.FIXED_RATE, 0);
+
+    scheduler.start();
+    assertTrue(twoRuns.await(5, TimeUnit.SECONDS));
+    scheduler.stop();
+
+    // Each 250 ms run misses the ticks at 100 and 200 ms
+    assertTrue(scheduler.getSkippedTicks() >= 2);
+    assertTrue(scheduler.getMaxRunDurationMillis() >= 250);
+  }
+
+  @Test
+  public void keepsRunningAfterError() throws InterruptedException {
+    final CountDownLatch threeRuns = new CountDownLatch(3);
+    ExtractionScheduler scheduler = new ExtractionScheduler("test", new Runnable() {
+      @Override
+      public void run() {
+        threeRuns.countDown();
+        throw new AssertionError("failed extraction");
+      }
+    }, 10, ScheduleMode.FIXED_DELAY, 5);
+
+    scheduler.start();
+    assertTrue(threeRuns.await(5, TimeUnit.SECONDS));
+    scheduler.stop();
+
+    assertTrue(scheduler.getFailedRuns() >= 3);
+    assertEquals(0, scheduler.getSkippedTicks());
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import static org.junit.Assert.*;
+
+public class ExtractorStatsTest {
+
+  @Test
+  public void percentilesOverRecentDurations() {
+    ExtractorStats.Durations durations = new ExtractorStats.Durations(100);
+    assertEquals(0, durations.percentile(50));
+    for (int i = 200; i >= 1; --i) {
+      durations.add(i);
+    }
+    // Only the last 100, 100 down to 1, are kept
+    assertEquals(50, durations.percentile(50));
+    assertEquals(99, durations.percentile(99));
+    assertEquals(100, durations.percentile(100));
+  }
+
+  @Test
+  public void cyclesAreBrokenDownPerBean() throws Exception {
+    ExtractorStats stats = new ExtractorStats();
+    ExtractorStats.Cycle cycle = stats.startCycle();
+    cycle.bean("a:type=A", 2000000, 1000000, 3, 0, 32);
+    cycle.bean("b:type=B", 4000000, 1000000, 1, 2, 16);
+    stats.endCycle(cycle);
+    cycle = stats.startCycle();
+    cycle.bean("a:type=A", 1000000, 1000000, 3, 1, 32);
+    stats.endCycle(cycle);
+
+    assertEquals(2, stats.getCycles());
+    assertEquals(1, stats.getLastCycleBeans());
+    assertEquals(3, stats.getLastCycleValues());
+    assertEquals(1, stats.getLastCycleFailedAttributes());
+    assertEquals(3, stats.getFailedAttributes());
+    assertEquals(80, stats.getBytesWritten());
+    assertEquals(7.0, stats.getTotalFetchTime(), 0.001);
+    assertEquals(3.0, stats.getTotalWriteTime(), 0.001);
+
+    BeanStatistics a = stats.getBeans().get("a:type=A");
+    assertEquals(2, a.getExtractions());
+    assertEquals(1, a.getFailedAttributes());
+    assertEquals(64, a.getBytesWritten());
+    assertEquals(2.0, a.getDurationMedian(), 0.001);
+    assertEquals(3.0, a.getDuration99thPercentile(), 0.001);
+    assertEquals(1.0, a.getLastFetchTime(), 0.001);
+
+    // Beans are exposed as open data
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.jmxdatamart:type=ExtractorStats,name=Test");
+    mbs.registerMBean(stats, name);
+    try {
+      TabularData beans = (TabularData) mbs.getAttribute(name, "Beans");
+      assertEquals(2, beans.size());
+      assertEquals(2L, mbs.getAttribute(name, "Cycles"));
+    } finally {
+      mbs.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void extractorRecordsItsCycles() throws Exception {
+    File directory = File.createTempFile("Stats", "");
+    directory.delete();
+    directory.mkdir();
+
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setFolderLocation(directory.getPath());
+    MBeanData memory = new MBeanData("java.lang:type=Memory", "Memory", new ArrayList<Attribute>(), true);
+    memory.getAttributes().add(new Attribute("HeapMemoryUsage.*", null, null));
+    settings.getBeans().add(memory);
+
+    Extractor extractor = new Extractor(settings, new StatisticsWriter(settings));
+    ExtractorStats stats = extractor.getStats();
+    assertEquals(1, stats.getCycles());
+    assertEquals(1, stats.getLastCycleBeans());
+    assertEquals(4, stats.getLastCycleValues());
+    assertTrue(stats.getBytesWritten() > 4 * 8);
+    assertEquals(Collections.singleton("java.lang:type=Memory"), stats.getBeans().keySet());
+
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void estimatedBytes() {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    record.put("used", DataType.LONG, 10L);
+    record.put("name", DataType.STRING, "jvm");
+    assertEquals(8 + 8 + 3, ExtractorStats.estimateBytes(record));
+    assertEquals(8 + 8 + 3, ExtractorStats.estimateBytes(record.toMap()));
+  }
+}
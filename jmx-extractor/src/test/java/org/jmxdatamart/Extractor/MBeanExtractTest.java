@@ -29,7 +29,9 @@ package org.jmxdatamart.Extractor;
 
 import org.jmxdatamart.JMXTestServer.TestBean;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -84,4 +86,35 @@ public class MBeanExtractTest {
         
         mbs.unregisterMBean(mbeanName);
     }
+
+    /**
+     * Test of extractBatched method, of class MBeanExtract.
+     */
+    @Test
+    public void testExtractBatched() throws Exception {
+        TestBean tb = new TestBean();
+        tb.setA(new Integer(42));
+        tb.setB(new Long(8));
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        String mbName = "org.jmxdatamart.JMXTestServer:type=BatchedTestBean";
+        ObjectName mbeanName = new ObjectName(mbName);
+        mbs.registerMBean(tb, mbeanName);
+
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("A", "Alpha", DataType.INT));
+        attributes.add(new Attribute("B", "Beta", DataType.LONG));
+        attributes.add(new Attribute("*Var", null, null));
+        MBeanData mbd = new MBeanData(mbName, "testMBean", attributes, true);
+
+        RoundTripCounter counter = new RoundTripCounter(mbs);
+        Map<Attribute, Object> batched = MBeanExtract.extractBatched(mbd, counter.getConnection());
+        assertEquals(2, counter.getAndResetRoundTrips());
+
+        Map<Attribute, Object> unbatched = MBeanExtract.extract(mbd, counter.getConnection());
+        assertTrue(counter.getRoundTrips() > 2);
+        assertEquals(4, batched.size());
+        assertEquals(unbatched, batched);
+
+        mbs.unregisterMBean(mbeanName);
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.JMXTestServer.TestBean;
+import org.junit.Test;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.*;
+
+public class MBeanMetadataCacheTest {
+
+  @Test
+  public void cachedUntilUnregistered() throws Exception {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.jmxdatamart.JMXTestServer:type=CachedTestBean");
+    ObjectName pattern = new ObjectName("org.jmxdatamart.JMXTestServer:type=CachedTestBean,*");
+    mbs.registerMBean(new TestBean(), name);
+
+    MBeanMetadataCache cache = new MBeanMetadataCache(mbs, 60 * 1000);
+    try {
+      MBeanAttributeInfo[] infos = cache.getAttributes(name);
+      assertSame(infos, cache.getAttributes(name));
+      assertEquals(1, cache.queryMBeans(pattern).size());
+
+      mbs.unregisterMBean(name);
+      assertEquals(0, cache.queryMBeans(pattern).size());
+
+      mbs.registerMBean(new TestBean(), name);
+      assertEquals(1, cache.queryMBeans(pattern).size());
+      assertNotSame(infos, cache.getAttributes(name));
+
+    } finally {
+      cache.close();
+      mbs.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void expiresAfterTimeToLive() throws Exception {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.jmxdatamart.JMXTestServer:type=ExpiringTestBean");
+    mbs.registerMBean(new TestBean(), name);
+
+    MBeanMetadataCache cache = new MBeanMetadataCache(mbs, 0);
+    try {
+      MBeanAttributeInfo[] infos = cache.getAttributes(name);
+      Thread.sleep(5);
+      assertNotSame(infos, cache.getAttributes(name));
+
+    } finally {
+      cache.close();
+      mbs.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void notCachedWhenInvalidatedDuringFetch() throws Exception {
+    final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName("org.jmxdatamart.JMXTestServer:type=RacingTestBean");
+    ObjectName pattern = new ObjectName("org.jmxdatamart.JMXTestServer:type=RacingTestBean,*");
+    mbs.registerMBean(new TestBean(), name);
+
+    // Delivers an unregistration notification while each fetch is in flight
+    final MBeanMetadataCache[] cache = new MBeanMetadataCache[1];
+    MBeanServerConnection racing = (MBeanServerConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{MBeanServerConnection.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                try {
+                  return method.invoke(mbs, args);
+                } finally {
+                  if (cache[0] != null) {
+                    cache[0].invalidate(name);
+                  }
+                }
+              }
+            });
+    cache[0] = new MBeanMetadataCache(racing, 60 * 1000);
+    try {
+      MBeanAttributeInfo[] infos = cache[0].getAttributes(name);
+      assertNotSame(infos, cache[0].getAttributes(name));
+      assertNotSame(cache[0].queryMBeans(pattern), cache[0].queryMBeans(pattern));
+
+    } finally {
+      cache[0].close();
+      mbs.unregisterMBean(name);
+    }
+  }
+}
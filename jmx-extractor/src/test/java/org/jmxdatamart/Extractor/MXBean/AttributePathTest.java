@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor.MXBean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AttributePathTest {
+
+  @Test
+  public void literalAndPatternLayers() {
+    AttributePath path = AttributePath.compile("LastGcInfo.memoryUsageAfterGc.\"PS*\".used");
+    assertEquals(4, path.size());
+
+    assertTrue(path.getLayer(0).isLiteral());
+    assertTrue(path.getLayer(0).matches("LastGcInfo"));
+    assertFalse(path.getLayer(0).matches("LastGcInfoX"));
+
+    assertFalse(path.getLayer(2).isLiteral());
+    assertTrue(path.getLayer(2).matches("PS Eden Space"));
+    assertFalse(path.getLayer(2).matches("Code Cache"));
+  }
+
+  @Test
+  public void arrayIndexes() {
+    AttributePath path = AttributePath.compile("Values.1?.x");
+    assertEquals(-1, path.getLayer(0).getIndex());
+    assertTrue(path.getLayer(1).matches(12));
+    assertFalse(path.getLayer(1).matches(2));
+
+    AttributePath literal = AttributePath.compile("Values.7");
+    assertEquals(7, literal.getLayer(1).getIndex());
+    assertTrue(literal.getLayer(1).matches(7));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidName() {
+    AttributePath.compile("Tabular\"key\"");
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ParallelExtractionTest {
+
+  @Test(timeout = 30000)
+  public void beansOverTheCycleBudgetAreCancelled() throws Exception {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName fastName = new ObjectName("org.jmxdatamart.test:type=Gate,name=Open");
+    ObjectName slowName = new ObjectName("org.jmxdatamart.test:type=Gate,name=Closed");
+    Gate slow = new Gate(false);
+    mbs.registerMBean(new Gate(true), fastName);
+    mbs.registerMBean(slow, slowName);
+
+    File directory = File.createTempFile("Parallel", "");
+    directory.delete();
+    directory.mkdir();
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setFolderLocation(directory.getPath());
+    settings.setExtractionThreads(4);
+    settings.setCycleTimeBudget(300);
+    MBeanData open = new MBeanData(fastName.toString(), "Open", new ArrayList<Attribute>(), true);
+    open.getAttributes().add(new Attribute("Value", "Value", DataType.LONG));
+    MBeanData closed = new MBeanData(slowName.toString(), "Closed", new ArrayList<Attribute>(), true);
+    closed.getAttributes().add(new Attribute("Value", "Value", DataType.LONG));
+    settings.setBeans(Arrays.asList(closed, open));
+
+    try {
+      long started = System.currentTimeMillis();
+      // Extracts once, without waiting for the closed bean past the budget
+      Extractor extractor = new Extractor(settings, new StatisticsWriter(settings));
+      assertTrue(System.currentTimeMillis() - started < 5000);
+
+      ExtractorStats stats = extractor.getStats();
+      assertEquals(1, stats.getCycles());
+      assertEquals(1, stats.getLastCycleValues());
+      assertEquals(1, stats.getBeans().get(fastName.getCanonicalName()).getLastValues());
+      assertEquals(0, stats.getBeans().get(fastName.getCanonicalName()).getFailedAttributes());
+      assertEquals(0, stats.getBeans().get(slowName.getCanonicalName()).getLastValues());
+      assertEquals(1, stats.getBeans().get(slowName.getCanonicalName()).getFailedAttributes());
+    } finally {
+      slow.open();
+      mbs.unregisterMBean(fastName);
+      mbs.unregisterMBean(slowName);
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void recordOfCancelledBeanIsReused() throws Exception {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName slowName = new ObjectName("org.jmxdatamart.test:type=Gate,name=Late");
+    Gate slow = new Gate(false);
+    mbs.registerMBean(slow, slowName);
+
+    File directory = File.createTempFile("Parallel", "");
+    directory.delete();
+    directory.mkdir();
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setFolderLocation(directory.getPath());
+    settings.setPollingRate(3600);
+    settings.setExtractionThreads(2);
+    settings.setCycleTimeBudget(100);
+    MBeanData late = new MBeanData(slowName.toString(), "Late", new ArrayList<Attribute>(), true);
+    late.getAttributes().add(new Attribute("Value", "Value", DataType.LONG));
+    settings.setBeans(Arrays.asList(late));
+
+    Extractor extractor = new Extractor(settings, new StatisticsWriter(settings));
+    try {
+      while (extractor.getStats().getCycles() == 0) {
+        Thread.sleep(10);
+      }
+      // The cancelled worker hands the record back once its interrupted fetch returns
+      ExtractionPlan plan = extractor.getPlans().getPlan(late);
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!isRecordReused(plan) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(isRecordReused(plan));
+    } finally {
+      extractor.stop();
+      slow.open();
+      mbs.unregisterMBean(slowName);
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  private boolean isRecordReused(ExtractionPlan plan) {
+    SampleRecord record = plan.acquireRecord();
+    plan.releaseRecord(record);
+    SampleRecord again = plan.acquireRecord();
+    plan.releaseRecord(again);
+    return again == record;
+  }
+}
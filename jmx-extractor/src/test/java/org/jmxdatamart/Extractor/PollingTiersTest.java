@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PollingTiersTest {
+
+  private MBeanData bean(String name, Long pollingRate, boolean enable) {
+    MBeanData beanData = new MBeanData(name, name, new ArrayList<Attribute>(), enable);
+    beanData.setPollingRate(pollingRate);
+    return beanData;
+  }
+
+  @Test
+  public void beansAreGroupedByPollingRate() {
+    MBeanData gc = bean("java.lang:type=GarbageCollector,*", 1L, true);
+    MBeanData memory = bean("java.lang:type=Memory", null, true);
+    MBeanData classLoading = bean("java.lang:type=ClassLoading", 300L, true);
+    MBeanData runtime = bean("java.lang:type=Runtime", 300L, true);
+    MBeanData threading = bean("java.lang:type=Threading", 1L, false);
+
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setPollingRate(5);
+    settings.setBeans(Arrays.asList(gc, memory, classLoading, runtime, threading));
+
+    Map<Long, List<MBeanData>> tiers = Extractor.getPollingTiers(settings);
+    assertEquals(Arrays.asList(1L, 5L, 300L), new ArrayList<Long>(tiers.keySet()));
+    assertEquals(Arrays.asList(gc), tiers.get(1L));
+    assertEquals(Arrays.asList(memory), tiers.get(5L));
+    assertEquals(Arrays.asList(classLoading, runtime), tiers.get(300L));
+  }
+
+  @Test(timeout = 30000)
+  public void slowTierDoesNotHoldUpTheOthers() throws Exception {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName fastName = new ObjectName("org.jmxdatamart.test:type=Gate,name=Fast");
+    ObjectName slowName = new ObjectName("org.jmxdatamart.test:type=Gate,name=Slow");
+    Gate slow = new Gate(false);
+    mbs.registerMBean(new Gate(true), fastName);
+    mbs.registerMBean(slow, slowName);
+
+    File directory = File.createTempFile("Tiers", "");
+    directory.delete();
+    directory.mkdir();
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setFolderLocation(directory.getPath());
+    settings.setPollingRate(1);
+    MBeanData fast = new MBeanData(fastName.toString(), "Fast", new ArrayList<Attribute>(), true);
+    fast.setPollingRate(1L);
+    fast.getAttributes().add(new Attribute("Value", "Value", DataType.LONG));
+    MBeanData blocked = new MBeanData(slowName.toString(), "Slow", new ArrayList<Attribute>(), true);
+    blocked.setPollingRate(300L);
+    blocked.getAttributes().add(new Attribute("Value", "Value", DataType.LONG));
+    settings.setBeans(Arrays.asList(fast, blocked));
+
+    Extractor extractor = new Extractor(settings, new StatisticsWriter(settings));
+    try {
+      // The slow tier's first cycle is stuck reading its bean all along
+      Thread.sleep(2500);
+      assertEquals(0, extractor.getSchedulers().get(300L).getRuns());
+      assertTrue(extractor.getSchedulers().get(1L).getRuns() >= 2);
+    } finally {
+      slow.open();
+      extractor.stop();
+      mbs.unregisterMBean(fastName);
+      mbs.unregisterMBean(slowName);
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.junit.Test;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RoundTripCounterTest {
+
+  @Test
+  public void countsOnlyMBeanServerCalls() throws Exception {
+    RoundTripCounter counter = new RoundTripCounter(ManagementFactory.getPlatformMBeanServer());
+    MBeanServerConnection mbsc = counter.getConnection();
+
+    mbsc.getAttribute(new ObjectName("java.lang:type=Runtime"), "Uptime");
+    mbsc.getMBeanCount();
+    assertEquals(2, counter.getRoundTrips());
+
+    mbsc.hashCode();
+    mbsc.equals(mbsc);
+    mbsc.toString();
+    assertEquals(2, counter.getAndResetRoundTrips());
+    assertEquals(0, counter.getRoundTrips());
+  }
+
+  @Test
+  public void countsTheCallsOfEachThreadIntoItsTally() throws Exception {
+    final RoundTripCounter counter = new RoundTripCounter(ManagementFactory.getPlatformMBeanServer());
+    final MBeanServerConnection mbsc = counter.getConnection();
+    AtomicLong first = new AtomicLong();
+    final AtomicLong second = new AtomicLong();
+
+    counter.startTally(first);
+    mbsc.getMBeanCount();
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        counter.startTally(second);
+        try {
+          mbsc.getMBeanCount();
+          mbsc.getDefaultDomain();
+        } catch (IOException ex) {
+          throw new RuntimeException(ex);
+        } finally {
+          counter.stopTally();
+        }
+      }
+    };
+    other.start();
+    other.join();
+    counter.stopTally();
+    mbsc.getMBeanCount();
+
+    assertEquals(1, first.get());
+    assertEquals(2, second.get());
+    assertEquals(4, counter.getRoundTrips());
+  }
+}
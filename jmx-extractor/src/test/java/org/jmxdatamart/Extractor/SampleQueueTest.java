@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.Extractor;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SampleQueueTest {
+
+  private BeanSample sample(String table, long timestamp) {
+    return new BeanSample(table, Collections.<Attribute, Object>emptyMap(), timestamp);
+  }
+
+  @Test
+  public void dropOldestKeepsNewestSamples() throws InterruptedException {
+    SampleQueue queue = new SampleQueue(2, BackpressurePolicy.DROP_OLDEST);
+    queue.put(sample("A", 1));
+    queue.put(sample("B", 2));
+    queue.put(sample("C", 3));
+
+    assertEquals(1, queue.getDropped());
+    List<BeanSample> drained = queue.drain(0, TimeUnit.MILLISECONDS);
+    assertEquals(2, drained.size());
+    assertEquals("B", drained.get(0).getTableName());
+    assertEquals("C", drained.get(1).getTableName());
+  }
+
+  @Test
+  public void coalesceReplacesQueuedSampleOfSameBean() throws InterruptedException {
+    SampleQueue queue = new SampleQueue(2, BackpressurePolicy.COALESCE);
+    queue.put(sample("A", 1));
+    queue.put(sample("B", 2));
+    queue.put(sample("A", 3));
+
+    assertEquals(1, queue.getCoalesced());
+    List<BeanSample> drained = queue.drain(0, TimeUnit.MILLISECONDS);
+    assertEquals(2, drained.size());
+    assertEquals("A", drained.get(0).getTableName());
+    assertEquals(3, drained.get(0).getTimestamp());
+  }
+
+  @Test
+  public void coalesceKeepsEverySampleWhileThereIsRoom() throws InterruptedException {
+    SampleQueue queue = new SampleQueue(3, BackpressurePolicy.COALESCE);
+    queue.put(sample("A", 1));
+    queue.put(sample("A", 2));
+
+    assertEquals(0, queue.getCoalesced());
+    List<BeanSample> drained = queue.drain(0, TimeUnit.MILLISECONDS);
+    assertEquals(2, drained.size());
+    assertEquals(1, drained.get(0).getTimestamp());
+    assertEquals(2, drained.get(1).getTimestamp());
+  }
+
+  @Test
+  public void blockWaitsForRoom() throws InterruptedException {
+    final SampleQueue queue = new SampleQueue(1, BackpressurePolicy.BLOCK);
+    queue.put(sample("A", 1));
+
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          queue.put(sample("B", 2));
+        } catch (InterruptedException ex) {
+          // Test fails below
+        }
+      }
+    });
+    producer.start();
+    producer.join(100);
+    assertTrue(producer.isAlive());
+
+    assertEquals(1, queue.drain(0, TimeUnit.MILLISECONDS).size());
+    producer.join(1000);
+    assertFalse(producer.isAlive());
+    assertEquals("B", queue.drain(0, TimeUnit.MILLISECONDS).get(0).getTableName());
+  }
+
+  @Test
+  public void drainTimesOutWhenEmpty() throws InterruptedException {
+    SampleQueue queue = new SampleQueue(1, BackpressurePolicy.BLOCK);
+    assertTrue(queue.drain(10, TimeUnit.MILLISECONDS).isEmpty());
+  }
+}
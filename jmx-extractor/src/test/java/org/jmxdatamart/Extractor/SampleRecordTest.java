@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SampleRecordTest {
+
+  @Test
+  public void valuesKeepTheirSlotAcrossPolls() {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    record.put("used", DataType.LONG, 10L);
+    record.put("load", DataType.DOUBLE, 0.5);
+    record.put("name", DataType.STRING, "jvm");
+    record.put("count", DataType.INT, 3);
+    int version = record.getLayout().getVersion();
+
+    record.reset();
+    assertFalse(record.isPresent(0));
+    assertNull(record.getValue(2));
+
+    record.put("load", DataType.DOUBLE, 1.5);
+    record.put("used", DataType.LONG, 20L);
+    assertEquals(version, record.getLayout().getVersion());
+    assertEquals(0, record.getLayout().slotOf("used", DataType.LONG));
+    assertEquals(20L, record.getLong(0));
+    assertEquals(1.5, record.getDouble(1), 0);
+    assertFalse(record.isPresent(2));
+
+    Map<Attribute, Object> values = record.toMap();
+    assertEquals(2, values.size());
+    assertEquals(20L, values.get(new Attribute(null, "used", DataType.LONG)));
+    assertEquals(1.5, values.get(new Attribute(null, "load", DataType.DOUBLE)));
+
+    record.put("count", DataType.INT, 4);
+    assertEquals(Integer.valueOf(4), record.getValue(3));
+  }
+
+  @Test
+  public void retypedColumnChangesLayout() {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    record.put("value", DataType.INT, 1);
+    int version = record.getLayout().getVersion();
+
+    record.reset();
+    record.put("value", DataType.STRING, "one");
+    assertTrue(record.getLayout().getVersion() != version);
+    assertEquals(1, record.size());
+    assertEquals("one", record.getValue(0));
+  }
+
+  @Test
+  public void copyKeepsValuesWhileRecordIsRefilled() {
+    SampleRecord record = new SampleRecord(new SampleLayout());
+    record.put("value", DataType.INT, 1);
+    SampleRecord copy = record.copy();
+
+    record.reset();
+    record.put("value", DataType.STRING, "one");
+    record.put("other", DataType.LONG, 2L);
+    assertEquals(1, copy.size());
+    assertEquals(DataType.INT, copy.getAttribute(0).getDataType());
+    assertEquals(1, copy.getValue(0));
+  }
+
+  @Test
+  public void pathsKeepTheirColumn() {
+    SampleLayout layout = new SampleLayout();
+    SampleRecord record = new SampleRecord(layout);
+    Attribute pattern = new Attribute("HeapMemoryUsage.*", null, null);
+    SampleLayout.Path used = layout.pathOf(pattern).child("HeapMemoryUsage").child("used");
+    record.put(used, DataType.LONG, 10L);
+    assertEquals("HeapMemoryUsage_used", record.getAttribute(0).getAlias());
+    assertSame(used, layout.pathOf(pattern).child("HeapMemoryUsage").child("used"));
+    assertEquals(0, layout.slotOf(used, DataType.LONG));
+
+    Attribute aliased = new Attribute("MemoryPools.0", "firstPool", DataType.STRING);
+    record.put(layout.pathOf(aliased).child("MemoryPools").child(0), DataType.STRING, "eden");
+    assertEquals("firstPool", record.getAttribute(1).getAlias());
+  }
+}
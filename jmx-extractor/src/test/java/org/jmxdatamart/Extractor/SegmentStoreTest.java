@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.SegmentFormat;
+import org.jmxdatamart.common.SegmentReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SegmentStoreTest {
+
+  private BeanSample sample(long timestamp, Object... aliasesAndValues) {
+    Map<Attribute, Object> values = new HashMap<Attribute, Object>();
+    for (int i = 0; i < aliasesAndValues.length; i += 2) {
+      values.put(new Attribute(null, (String) aliasesAndValues[i], DataType.getDataType(aliasesAndValues[i + 1])),
+              aliasesAndValues[i + 1]);
+    }
+    return new BeanSample("Memory", values, timestamp);
+  }
+
+  @Test
+  public void newColumnRollsSegment() throws IOException {
+    File directory = File.createTempFile("Extractor", SegmentFormat.DIRECTORY_SUFFIX);
+    directory.delete();
+
+    SegmentStore store = new SegmentStore(directory, 0);
+    store.write(sample(1, "used", 10L));
+    store.write(sample(2, "used", 20L));
+    store.write(sample(3, "used", 30L, "max", 100L));
+    store.close();
+
+    List<File> segments = SegmentFormat.listSegments(directory);
+    assertEquals(2, segments.size());
+
+    SegmentReader first = new SegmentReader(segments.get(0));
+    assertEquals(1, first.getColumns().size());
+    assertEquals(2, first.getRowCount());
+    first.close();
+
+    SegmentReader second = new SegmentReader(segments.get(1));
+    assertEquals(2, second.getColumns().size());
+    assertTrue(second.next());
+    assertEquals(3, second.getTimestamp());
+    assertEquals(30L, second.getValue(0));
+    assertEquals(100L, second.getValue(1));
+    assertFalse(second.next());
+    second.close();
+
+    for (File segment : segments) {
+      segment.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void compressedPollsAreTenTimesSmaller() throws Exception {
+    long[] sizes = new long[2];
+    boolean[] compress = {false, true};
+    for (int e = 0; e < compress.length; ++e) {
+      File directory = File.createTempFile("Compression", "");
+      directory.delete();
+      directory.mkdir();
+
+      ExtractorSettings settings = new ExtractorSettings();
+      settings.setFolderLocation(directory.getPath());
+      settings.setStorageFormat(StorageFormat.SEGMENTS);
+      settings.setCompressSegments(compress[e]);
+
+      StatisticsWriter writer = new StatisticsWriter(settings);
+      for (int i = 0; i < 10000; ++i) {
+        writer.startWritingStatistics();
+        writer.writeStatistics(Collections.singletonList(
+                sample(1381000000000L + 1000L * i, "count", (long) i / 7, "used", 512.0 + (i / 100))));
+        writer.doneWritingStatistics();
+      }
+      writer.close();
+
+      int rows = 0;
+      for (File file : directory.listFiles()) {
+        for (File segment : SegmentFormat.listSegments(file)) {
+          sizes[e] += segment.length();
+          SegmentReader reader = new SegmentReader(segment);
+          rows += reader.getRowCount();
+          reader.close();
+          segment.delete();
+        }
+        file.delete();
+      }
+      directory.delete();
+      assertEquals(10000, rows);
+    }
+    assertTrue("plain " + sizes[0] + " compressed " + sizes[1], sizes[1] * 10 <= sizes[0]);
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.HypersqlHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StatisticsWriterDatabaseTest {
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = File.createTempFile("StatisticsDatabase", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void keptOpenDatabaseSurvivesCloseAndReopen() throws Exception {
+    ExtractorSettings settings = settings();
+    settings.setWriteDelayMillis(10);
+
+    StatisticsWriter writer = new StatisticsWriter(settings);
+    for (int i = 0; i < 5; ++i) {
+      poll(writer, i);
+    }
+    writer.close();
+
+    assertEquals(5, countRows());
+  }
+
+  @Test
+  public void checkpointWritesRowsToScript() throws Exception {
+    ExtractorSettings settings = settings();
+    settings.setCheckpointInterval(1);
+
+    StatisticsWriter writer = new StatisticsWriter(settings);
+    poll(writer, 0);
+    Thread.sleep(1100);
+    poll(writer, 1);
+
+    // Checkpointed after the second poll while the database is still open
+    assertEquals(2, countInserts(databaseFile(".script")));
+    poll(writer, 2);
+    writer.close();
+
+    assertEquals(3, countRows());
+  }
+
+  @Test
+  public void changeOnlyValueIsWrittenAgainAfterFailedWrite() throws Exception {
+    Attribute state = new Attribute(null, "state", DataType.STRING);
+    Set<String> changeOnly = Collections.singleton("state");
+    StatisticsWriter writer = new StatisticsWriter(settings());
+    write(writer, new BeanSample("States", values(state, "up"), 0, changeOnly));
+
+    // The poll that changed the value fails, the next one must not drop it as unchanged
+    Attribute unwritable = new Attribute(null, "unwritable", DataType.UNKNOWN);
+    try {
+      write(writer, new BeanSample("States", values(state, "down", unwritable, "?"), 1, changeOnly));
+      fail("The poll should not have been written");
+    } catch (StatisticsWriterException expected) {
+    }
+    write(writer, new BeanSample("States", values(state, "down"), 2, changeOnly));
+    writer.close();
+
+    assertEquals("up;down", rows("select state from States order by time"));
+  }
+
+  private ExtractorSettings settings() {
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setFolderLocation(directory.getPath());
+    settings.setKeepDatabaseOpen(true);
+    return settings;
+  }
+
+  private void poll(StatisticsWriter writer, long time) throws Exception {
+    Map<Attribute, Object> values = Collections.<Attribute, Object>singletonMap(
+            new Attribute(null, "used", DataType.LONG), time);
+    writer.startWritingStatistics();
+    writer.writeStatistics(Collections.singletonList(new BeanSample("Memory", values, time)));
+    writer.doneWritingStatistics();
+  }
+
+  private void write(StatisticsWriter writer, BeanSample sample) throws Exception {
+    writer.startWritingStatistics();
+    try {
+      writer.writeStatistics(Collections.singletonList(sample));
+    } finally {
+      writer.doneWritingStatistics();
+    }
+  }
+
+  private static Map<Attribute, Object> values(Object... attributesAndValues) {
+    Map<Attribute, Object> values = new HashMap<Attribute, Object>();
+    for (int i = 0; i < attributesAndValues.length; i += 2) {
+      values.put((Attribute) attributesAndValues[i], attributesAndValues[i + 1]);
+    }
+    return values;
+  }
+
+  private File databaseFile(final String extension) {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(extension);
+      }
+    });
+    assertEquals(1, files.length);
+    return files[0];
+  }
+
+  private int countInserts(File script) throws Exception {
+    BufferedReader reader = new BufferedReader(new FileReader(script));
+    int inserts = 0;
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("INSERT INTO MEMORY ")) {
+          ++inserts;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return inserts;
+  }
+
+  private int countRows() throws Exception {
+    return Integer.parseInt(rows("select count(*) from Memory"));
+  }
+
+  private String rows(String query) throws Exception {
+    String script = databaseFile(".script").getPath();
+    Properties props = new Properties();
+    props.put("username", "sa");
+    props.put("password", "whatever");
+    HypersqlHandler hsql = new HypersqlHandler();
+    hsql.loadDriver(hsql.getDriver());
+    Connection conn = hsql.connectDatabase(script.substring(0, script.length() - ".script".length()), props);
+    try {
+      Statement st = conn.createStatement();
+      ResultSet rs = st.executeQuery(query);
+      StringBuilder rows = new StringBuilder();
+      while (rs.next()) {
+        rows.append(rows.length() > 0 ? ";" : "").append(rs.getObject(1));
+      }
+      HypersqlHandler.releaseDatabaseResource(rs, st, null, null);
+      return rows.toString();
+    } finally {
+      hsql.shutdownDatabase(conn);
+      HypersqlHandler.releaseDatabaseResource(null, null, null, conn);
+    }
+  }
+}
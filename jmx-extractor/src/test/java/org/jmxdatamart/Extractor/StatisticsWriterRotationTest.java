@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.SegmentFormat;
+import org.jmxdatamart.common.SegmentReader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StatisticsWriterRotationTest {
+
+  @Test
+  public void rotatesAfterMaxRows() throws Exception {
+    File directory = File.createTempFile("Rotation", "");
+    directory.delete();
+    directory.mkdir();
+
+    ExtractorSettings settings = new ExtractorSettings();
+    settings.setFolderLocation(directory.getPath());
+    settings.setStorageFormat(StorageFormat.SEGMENTS);
+    settings.setRotationRows(2);
+
+    StatisticsWriter writer = new StatisticsWriter(settings);
+    Map<Attribute, Object> values = Collections.<Attribute, Object>singletonMap(
+            new Attribute(null, "used", DataType.LONG), 10L);
+    for (int i = 0; i < 5; ++i) {
+      writer.startWritingStatistics();
+      writer.writeStatistics(Collections.singletonList(new BeanSample("Memory", values, i)));
+      writer.doneWritingStatistics();
+    }
+    writer.close();
+
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return SegmentFormat.isSegmentDirectory(file);
+      }
+    });
+    assertEquals(3, files.length);
+
+    int rows = 0;
+    for (File file : files) {
+      for (File segment : SegmentFormat.listSegments(file)) {
+        SegmentReader reader = new SegmentReader(segment);
+        assertTrue(reader.isSealed());
+        rows += reader.getRowCount();
+        reader.close();
+        segment.delete();
+      }
+      file.delete();
+    }
+    assertEquals(5, rows);
+    directory.delete();
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Extractor;
+
+import org.jmxdatamart.common.DataType;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WindowAggregatorTest {
+  private final Attribute used = new Attribute("HeapMemoryUsage.used", "used", DataType.LONG);
+  private final Attribute load = new Attribute("SystemLoadAverage", "load", DataType.DOUBLE);
+  private final Attribute name = new Attribute("Name", "name", DataType.STRING);
+
+  private Map<Attribute, Object> values(long usedValue, double loadValue) {
+    Map<Attribute, Object> values = new HashMap<Attribute, Object>();
+    values.put(used, usedValue);
+    values.put(load, loadValue);
+    values.put(name, "jvm");
+    return values;
+  }
+
+  private Object get(Map<Attribute, Object> row, String alias) {
+    for (Map.Entry<Attribute, Object> value : row.entrySet()) {
+      if (value.getKey().getAlias().equals(alias)) {
+        return value.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void oneRowPerWindow() throws Exception {
+    MBeanData bean = new MBeanData("java.lang:type=Memory", "Memory", Arrays.asList(used, load, name), true);
+    ExtractionPlan plan = new ExtractionPlan(new ObjectName(bean.getName()), "Memory", "Memory", bean);
+    WindowAggregator windows = new WindowAggregator();
+
+    List<Long> starts = new ArrayList<Long>();
+    Map<Attribute, Object> first = null;
+    for (int second = 0; second < 180; ++second) {
+      WindowAggregator.Row row = windows.add(plan, values(second % 60, second / 60 + 0.5), 60000 + second * 1000L, 60000);
+      if (row != null) {
+        starts.add(row.start);
+        if (first == null) {
+          first = row.values;
+        }
+      }
+    }
+    // Stamped with the start of their own window, not the poll that finished it
+    assertEquals(Arrays.asList(60000L, 120000L), starts);
+
+    assertEquals(0L, get(first, "used_min"));
+    assertEquals(59L, get(first, "used_max"));
+    assertEquals(1770L, get(first, "used_sum"));
+    assertEquals(60L, get(first, "used_count"));
+    assertEquals(59L, get(first, "used"));
+    assertEquals(0.5, (Double) get(first, "load_min"), 0);
+    assertEquals(30.0, (Double) get(first, "load_sum"), 1e-9);
+    assertEquals("jvm", get(first, "name"));
+    assertNull(get(first, "name_count"));
+
+    Map<ExtractionPlan, WindowAggregator.Row> open = windows.drain();
+    assertEquals(1, open.size());
+    assertEquals(180000L, open.get(plan).start);
+    assertEquals(2.5, (Double) get(open.get(plan).values, "load_max"), 0);
+    assertTrue(windows.drain().isEmpty());
+  }
+
+  @Test
+  public void endedWindowIsFlushedWithoutALaterSample() throws Exception {
+    MBeanData bean = new MBeanData("java.lang:type=Memory", "Memory", Arrays.asList(used, load, name), true);
+    ExtractionPlan plan = new ExtractionPlan(new ObjectName(bean.getName()), "Memory", "Memory", bean);
+    WindowAggregator windows = new WindowAggregator();
+
+    windows.add(plan, values(1, 0.5), 61000, 60000);
+    windows.add(plan, values(2, 0.5), 62000, 60000);
+    assertTrue(windows.flush(119999).isEmpty());
+
+    Map<ExtractionPlan, WindowAggregator.Row> ended = windows.flush(120000);
+    assertEquals(60000L, ended.get(plan).start);
+    assertEquals(2L, get(ended.get(plan).values, "used_count"));
+    assertTrue(windows.flush(180000).isEmpty());
+    assertTrue(windows.drain().isEmpty());
+  }
+
+  @Test
+  public void windowOfReleasedPlanIsFlushed() throws Exception {
+    MBeanData bean = new MBeanData("java.lang:type=Memory", "Memory", Arrays.asList(used, load, name), true);
+    ExtractionPlan plan = new ExtractionPlan(new ObjectName(bean.getName()), "Memory", "Memory", bean);
+    ExtractionPlan replacement = new ExtractionPlan(new ObjectName(bean.getName()), "Memory", "Memory", bean);
+    WindowAggregator windows = new WindowAggregator();
+
+    // Kept by a new plan of the table that adds to it before the flush
+    windows.add(plan, values(1, 0.5), 61000, 60000);
+    windows.release(plan);
+    windows.add(replacement, values(2, 0.5), 62000, 60000);
+    assertTrue(windows.flush(63000).isEmpty());
+
+    windows.release(replacement);
+    Map<ExtractionPlan, WindowAggregator.Row> released = windows.flush(63000);
+    assertEquals(60000L, released.get(replacement).start);
+    assertEquals(2L, get(released.get(replacement).values, "used_count"));
+    assertTrue(windows.drain().isEmpty());
+  }
+}
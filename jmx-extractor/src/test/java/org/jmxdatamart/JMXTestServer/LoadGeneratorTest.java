@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.JMXTestServer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.jmxdatamart.Extractor.Attribute;
+import org.jmxdatamart.Extractor.MXBean.MultiLayeredAttribute;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadGeneratorTest {
+
+  @Test
+  public void generatedBeansCanBeWalked() throws Exception {
+    LoadGenerator generator = new LoadGenerator();
+    generator.setBeans(3);
+    generator.setAttributesPerBean(4);
+    generator.setDepth(2);
+    generator.setTableSize(5);
+    generator.setTickMillis(0);
+
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName generated = new ObjectName(LoadGenerator.DOMAIN + ":*");
+    generator.start(mbs);
+    try {
+      assertEquals(3, mbs.queryNames(generated, null).size());
+
+      MultiLayeredAttribute mla = new MultiLayeredAttribute(mbs);
+      // Only Value is a leaf, Table and Child are nested
+      Map<Attribute, Object> values = mla.getAll(LoadGenerator.beanName(1), new Attribute("Attribute2.*", null, null));
+      assertEquals(1, values.size());
+      values = mla.getAll(LoadGenerator.beanName(1), new Attribute("Attribute2.Table.*", null, null));
+      assertEquals(5, values.size());
+      values = mla.getAll(LoadGenerator.beanName(1), new Attribute("Attribute2.Child.Child", null, null));
+      assertEquals(1, values.size());
+      Object before = values.values().iterator().next();
+
+      // Every value changes at a rate of 1
+      assertEquals(3 * 4 * (1 + 5 + 1 + 5 + 1), generator.tick());
+      values = mla.getAll(LoadGenerator.beanName(1), new Attribute("Attribute2.Child.Child", null, null));
+      assertFalse(before.equals(values.values().iterator().next()));
+    } finally {
+      generator.stop();
+    }
+    assertTrue(mbs.queryNames(generated, null).isEmpty());
+  }
+}
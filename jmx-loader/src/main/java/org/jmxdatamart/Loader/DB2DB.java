@@ -33,12 +33,31 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class DB2DB {
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(this.getClass());
     private DataMartDB dataMart;
     private SourceDB sources;
+    private int batchSize;
+    private int commitInterval;
+    private int threads;
+    private int fetchSize;
+    private boolean incremental;
+    private ImportLedger ledger;
+    // The test id of the next source opened by a worker
+    private AtomicInteger nextTestId;
+    // Held while the data mart schema, and the schema catalog its connections share, is changed, so that workers don't add the same table or column twice
+    private final Object schemaLock = new Object();
+    // The order tables are loaded in, the same for database files and segment directories so that workers lock them in one order
+    private static final Comparator<String> TABLE_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String table1, String table2) {
+            return table1.toUpperCase().compareTo(table2.toUpperCase());
+        }
+    };
 
     /**
      * Initial the Data mart setting and the source database setting from the seting file
@@ -48,54 +67,455 @@ public class DB2DB {
     public DB2DB(Setting s, File folder){
         dataMart = new DataMartDB(s.getTarget(),s.getAdditional());
         sources = new SourceDB(s.getSource(), folder);
+        batchSize = s.getBatchSize();
+        threads = s.getThreads();
+        fetchSize = s.getFetchSize();
+        incremental = s.isIncremental();
+        // Without the import ledger a failed file can't be resumed, so the rows it committed would stay orphaned
+        commitInterval = incremental ? s.getCommitInterval() : 0;
+        if (!incremental && s.getCommitInterval() > 0)
+            logger.warn("Load.commitInterval is only used with Load.incremental, committing once per source file.");
+        ledger = new ImportLedger(dataMart.getDbInfo().getDatabaseType());
+    }
+
+    /**
+     * A source to import, with the test it is imported as
+     */
+    private static class SourceImport {
+        private final String name;
+        private final boolean segments;
+        private int testId;
+        private boolean resumed;
+        // Changed since its import was interrupted, so imported again from the start as the same test
+        private boolean restarted;
+        private ImportLedger.Fingerprint fingerprint;
+
+        private SourceImport(String name, boolean segments) {
+            this.name = name;
+            this.segments = segments;
+        }
+
+        /**
+         * @return the files holding the source's rows, in a fixed order
+         */
+        private List<File> getFiles() {
+            if (segments)
+                return SegmentFormat.listSegments(new File(name));
+            List<File> files = new ArrayList<File>();
+            for (String extension : new String[]{".script", ".log", ".data"})
+                files.add(new File(name + extension));
+            return files;
+        }
     }
 
     /**
-     * Import data from the datafiles to data mart
+     * Import data from the datafiles to data mart. The files are loaded on
+     * a pool of Load.threads workers, each with a connection of its own to
+     * the data mart, and each file is committed as a test of its own. In
+     * incremental mode the files are first looked up in the import ledger.
+     * A file gets the next test id once a worker has opened it, so with
+     * several workers the ids don't follow the order of the files. An
+     * invalid file gets none, but a file that fails to load after it was
+     * opened leaves its id unused, unless its import is resumed later.
      * @throws DBException
-     * @throws SQLException
+     * @throws SQLException the first error that stopped a file from loading
      */
     public void loadData() throws DBException,SQLException{
+        final BlockingQueue<Connection> dataMartConnections = new ArrayBlockingQueue<Connection>(threads);
+        Map<Connection,Boolean> autoCommits = new HashMap<Connection, Boolean>();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++){
+                Connection conn = connectToDataMartDatabase();
+                autoCommits.put(conn, conn.getAutoCommit());
+                conn.setAutoCommit(false);
+                dataMartConnections.add(conn);
+            }
 
-        Connection dataMartConnection = connectToDataMartDatabase();
+            Connection firstConnection = dataMartConnections.peek();
+            int testId = DBHandler.getMaxTestID(firstConnection, dataMart.getMainTableName(),
+                                                dataMart.getTestID().getFieldName());
+            if (incremental){
+                ledger.createTables(firstConnection);
+                firstConnection.commit();
+                // An interrupted import keeps its test id, which isn't in the main table yet
+                testId = Math.max(testId, ledger.getNextTestID(firstConnection));
+            }
+            List<SourceImport> imports = new ArrayList<SourceImport>();
+            for (String sourceDatabaseFile : sources.getDatabaseFiles())
+                imports.add(new SourceImport(sourceDatabaseFile, false));
+            for (String segmentDirectory : sources.getSegmentDirectories())
+                imports.add(new SourceImport(segmentDirectory, true));
+            for (Iterator<SourceImport> it = imports.iterator(); it.hasNext(); ){
+                SourceImport source = it.next();
+                if (incremental && !checkLedger(firstConnection, source))
+                    it.remove();
+            }
+            nextTestId = new AtomicInteger(testId);
+            // Release what the lookups locked before a worker takes the connection
+            firstConnection.commit();
+
+            List<String> sourceNames = new ArrayList<String>();
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final SourceImport source : imports){
+                sourceNames.add(source.name);
+                results.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Connection dataMartConnection = dataMartConnections.take();
+                        try {
+                            if (source.segments)
+                                loadSegmentDirectory(dataMartConnection, source);
+                            else
+                                loadDatabaseFile(dataMartConnection, source);
+                        }
+                        finally {
+                            dataMartConnections.put(dataMartConnection);
+                        }
+                        return null;
+                    }
+                }));
+            }
 
-        Connection sourceConnection = null;
-        int testId;
-        Map<String,Map> sourceDatabaseTables;
-        String sourceTableSchem = sources.getSourceDatabase().getTableSchema();
-        DataType.SupportedDatabase sourceDatabaseType = sources.getDbInfo().getDatabaseType();
-        String mainTableName = dataMart.getMainTableName();
-        String testIDFieldName = dataMart.getTestID().getFieldName();
-        boolean bl = dataMartConnection.getAutoCommit();
+            SQLException failure = null;
+            for (int i = 0; i < results.size(); i++){
+                try {
+                    results.get(i).get();
+                }
+                catch (ExecutionException ee){
+                    logger.error("\n" + sourceNames.get(i) + " fail to import to DataMart: " + ee.getCause().getMessage(), ee.getCause());
+                    if (failure == null)
+                        failure = ee.getCause() instanceof SQLException
+                                  ? (SQLException)ee.getCause()
+                                  : new SQLException(ee.getCause());
+                }
+                catch (InterruptedException ie){
+                    Thread.currentThread().interrupt();
+                    throw new DBException("Interrupted while loading data.");
+                }
+            }
+            if (failure != null)
+                throw failure;
+        }
+        finally {
+            workers.shutdownNow();
+            for (Map.Entry<Connection,Boolean> conn : autoCommits.entrySet()){
+                try {
+                    conn.getKey().setAutoCommit(conn.getValue());
+                }
+                finally {
+                    // Released like any other data mart connection, to let go of the schema catalog with the last one
+                    DBHandler.releaseDatabaseResource(null, null, null, conn.getKey());
+                }
+            }
+        }
+    }
 
-        dataMartConnection.setAutoCommit(false);
+    /**
+     * Look a source up in the import ledger, before opening it. A completed
+     * import of the same content is skipped, an interrupted one is resumed
+     * as the same test, and one that changed since is imported again from
+     * the start as the same test, after deleting the rows it committed.
+     * Anything else is imported as a new test.
+     * @param dataMartConnection
+     * @param source
+     * @return false if the source is not to be imported
+     * @throws SQLException
+     */
+    private boolean checkLedger(Connection dataMartConnection, SourceImport source) throws SQLException{
+        try {
+            source.fingerprint = ImportLedger.fingerprint(source.getFiles());
+        }
+        catch (IOException ie){
+            logger.error("\n" + source.name + " fail to import to DataMart: " + ie.getMessage(), ie);
+            return false;
+        }
 
-        for(String sourceDatabaseFile : sources.getDatabaseFiles()){
-            testId = DBHandler.getMaxTestID(dataMartConnection, mainTableName, testIDFieldName);
+        ImportLedger.Entry entry = ledger.find(dataMartConnection, source.name);
+        if (entry == null)
+            return true;
+        if (entry.getFingerprint().equals(source.fingerprint)){
+            if (entry.isCompleted()){
+                logger.info(source.name + " was imported before as test " + entry.getTestId() + ", skipped.");
+                return false;
+            }
+            source.testId = entry.getTestId();
+            source.resumed = true;
+            logger.info("Resuming the interrupted import of " + source.name + " as test " + entry.getTestId() + ".");
+        }
+        else if (entry.isCompleted())
+            logger.warn(source.name + " changed since it was imported as test " + entry.getTestId()
+                        + ", importing it again as a new test.");
+        else {
+            logger.warn(source.name + " changed since its import as test " + entry.getTestId()
+                        + " was interrupted, importing it again from the start.");
+            deleteTestRows(dataMartConnection, entry.getTestId());
+            source.testId = entry.getTestId();
+            source.restarted = true;
+        }
+        return true;
+    }
 
-            if ((sourceConnection = connectToSourceDatabase(sourceDatabaseFile))==null){
-                logger.error("\n" +sourceDatabaseFile + " fail to import to DataMart: it might be an invalid database file.");
-                continue;
+    /**
+     * Delete the rows of a test from every data mart table with a test id,
+     * except the ledger's
+     * @param dataMartConnection
+     * @param testId
+     * @throws SQLException
+     */
+    private void deleteTestRows(Connection dataMartConnection, int testId) throws SQLException{
+        String testIDName = dataMart.getTestID().getFieldName();
+        List<String> tables = new ArrayList<String>();
+        ResultSet rs = dataMartConnection.getMetaData().getColumns(null, null, null, testIDName.toUpperCase());
+        try {
+            while (rs.next()){
+                // The column name is a pattern, in which _ matches any character
+                if (rs.getString("TABLE_SCHEM").equalsIgnoreCase(dataMart.getTargetDatabase().getTableSchema())
+                        && rs.getString("COLUMN_NAME").equalsIgnoreCase(testIDName)
+                        && !ledger.isLedgerTable(rs.getString("TABLE_NAME")))
+                    tables.add(rs.getString("TABLE_NAME"));
+            }
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(rs, null, null, null);
+        }
+        for (String table : tables){
+            PreparedStatement ps = dataMartConnection.prepareStatement("delete from " + table + " where " + testIDName + " = ?");
+            try {
+                ps.setInt(1, testId);
+                int deleted = ps.executeUpdate();
+                if (deleted > 0)
+                    logger.info("Deleted " + deleted + " rows of test " + testId + " from " + table + ".");
             }
-            else{
-                logger.info("Start loading database file: " + sourceDatabaseFile + ".");
+            finally {
+                DBHandler.releaseDatabaseResource(null, null, ps, null);
             }
+        }
+    }
 
-            sourceDatabaseTables = DBHandler.getDatabaseSchema(sourceConnection,sourceTableSchem, sourceDatabaseType);
-            copyOthersScheme(dataMartConnection,sourceDatabaseTables);
-            loadAllTablesDataExceptMain(sourceConnection, dataMartConnection, testId, sourceDatabaseTables);
-            addMainTableScheme(dataMartConnection);
+    /**
+     * Give a source the next test id, unless it keeps the one of its
+     * interrupted import
+     * @param source
+     * @return the test id of the source
+     */
+    private int assignTestId(SourceImport source){
+        if (!source.resumed && !source.restarted)
+            source.testId = nextTestId.getAndIncrement();
+        return source.testId;
+    }
+
+    /**
+     * Record a new import in the ledger, and read back the progress of a
+     * resumed one
+     * @param dataMartConnection
+     * @param source
+     * @return the progress of the import, null if not in incremental mode
+     * @throws SQLException
+     */
+    private ImportLedger.Progress startImport(Connection dataMartConnection, SourceImport source) throws SQLException{
+        if (!incremental)
+            return null;
+        if (!source.resumed){
+            ledger.start(dataMartConnection, source.name, source.fingerprint, source.testId);
+        }
+        ImportLedger.Progress progress = ledger.loadProgress(dataMartConnection, source.name);
+        dataMartConnection.commit();
+        return progress;
+    }
+
+    /**
+     * Import one extractor database file as a test. A file that fails is
+     * rolled back, except in incremental mode for the rows it committed
+     * every commitInterval, after which its next import resumes.
+     * @param dataMartConnection
+     * @param source
+     * @throws SQLException
+     */
+    private void loadDatabaseFile(Connection dataMartConnection, SourceImport source) throws SQLException{
+        String sourceDatabaseFile = source.name;
+        Connection sourceConnection;
+        if ((sourceConnection = connectToSourceDatabase(sourceDatabaseFile))==null){
+            logger.error("\n" +sourceDatabaseFile + " fail to import to DataMart: it might be an invalid database file.");
+            return;
+        }
+        else{
+            logger.info("Start loading database file: " + sourceDatabaseFile + ".");
+        }
+        int testId = assignTestId(source);
+
+        boolean loaded = false;
+        try {
+            ImportLedger.Progress progress = startImport(dataMartConnection, source);
+            Map<String,Map> sourceDatabaseTables = DBHandler.getDatabaseSchema(sourceConnection,
+                    sources.getSourceDatabase().getTableSchema(), sources.getDbInfo().getDatabaseType());
+            synchronized (schemaLock) {
+                copyOthersScheme(dataMartConnection,sourceDatabaseTables);
+                addMainTableScheme(dataMartConnection);
+                dataMartConnection.commit();
+            }
+            loadAllTablesDataExceptMain(sourceConnection, dataMartConnection, testId, sourceDatabaseTables, progress);
             addMainTableData(dataMartConnection, testId, sourceDatabaseFile);
 
+            if (progress != null)
+                ledger.complete(dataMartConnection, sourceDatabaseFile, source.fingerprint);
             dataMartConnection.commit();
+            loaded = true;
             logger.info( sourceDatabaseFile + " is imported to DataMart .\n");
+        }
+        finally {
+            if (!loaded)
+                dataMartConnection.rollback();
             ((HypersqlHandler)sources.getSourceDatabase()).shutdownDatabase(sourceConnection); //need to improve
+            DBHandler.releaseDatabaseResource(null,null,null,sourceConnection);
+        }
+    }
+
+    /**
+     * Import one directory of segment files as a test. A directory that
+     * fails is rolled back like a database file.
+     * @param dataMartConnection
+     * @param source
+     * @throws SQLException
+     */
+    private void loadSegmentDirectory(Connection dataMartConnection, SourceImport source) throws SQLException{
+        String segmentDirectory = source.name;
+        logger.info("Start loading segment directory: " + segmentDirectory + ".");
+        int testId = assignTestId(source);
+        boolean loaded = false;
+        try {
+            ImportLedger.Progress progress = startImport(dataMartConnection, source);
+            loadSegments(dataMartConnection, testId, segmentDirectory, progress);
+            if (progress != null)
+                ledger.complete(dataMartConnection, segmentDirectory, source.fingerprint);
+            dataMartConnection.commit();
+            loaded = true;
+            logger.info( segmentDirectory + " is imported to DataMart .\n");
+        }
+        catch (IOException ie){
+            logger.error("\n" + segmentDirectory + " fail to import to DataMart: " + ie.getMessage(), ie);
+        }
+        finally {
+            if (!loaded)
+                dataMartConnection.rollback();
+        }
+    }
+
+    /**
+     * Import the segment files of one extractor run as a new test
+     * @param dataMartConnection
+     * @param testId
+     * @param segmentDirectory
+     * @param progress the rows of each segment committed so far, null if not in incremental mode
+     * @throws IOException if a segment can not be read
+     * @throws SQLException
+     */
+    private void loadSegments(Connection dataMartConnection, int testId, String segmentDirectory,
+                              ImportLedger.Progress progress) throws IOException, SQLException{
+        List<File> segmentFiles = SegmentFormat.listSegments(new File(segmentDirectory));
+
+        Map<String,Map> segmentTables = new LinkedHashMap<String, Map>();
+        Map<String,List<File>> tableSegments = new TreeMap<String, List<File>>(TABLE_ORDER);
+        for (File segmentFile : segmentFiles) {
+            SegmentReader reader = new SegmentReader(segmentFile);
+            try {
+                String tableName = reader.getTableName().toUpperCase();
+                Map<String,FieldAttribute> fields = (Map<String,FieldAttribute>)segmentTables.get(tableName);
+                if (fields == null) {
+                    fields = new LinkedHashMap<String, FieldAttribute>();
+                    fields.put(SegmentFormat.TIME_COLUMN, new FieldAttribute(SegmentFormat.TIME_COLUMN, DataType.DATETIME, false));
+                    segmentTables.put(tableName, fields);
+                    tableSegments.put(tableName, new ArrayList<File>());
+                }
+                tableSegments.get(tableName).add(segmentFile);
+                for (FieldAttribute column : reader.getColumns()) {
+                    fields.put(column.getFieldName(), column);
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        synchronized (schemaLock) {
+            copyOthersScheme(dataMartConnection, segmentTables);
+            addMainTableScheme(dataMartConnection);
+            dataMartConnection.commit();
+        }
 
+        int  tableCount = segmentTables.size(), recordCount = 0;
+        for (List<File> tableFiles : tableSegments.values()) {
+            for (File segmentFile : tableFiles) {
+                recordCount += loadOneSegmentData(segmentFile, dataMartConnection, testId, progress);
+            }
         }
+        logger.info("Data was loaded successfully!Testid:" + testId );
+        logger.info( tableCount + " tables and " + recordCount + " records were loaded.");
+
+        addMainTableData(dataMartConnection, testId, segmentDirectory);
+    }
 
-        dataMartConnection.setAutoCommit(bl);
-        dataMartConnection.close();
-        sourceConnection.close();
+    /**
+     * Load the rows of a segment file to data mart
+     * @param segmentFile
+     * @param dataMartConnection
+     * @param testID
+     * @param progress the rows of each segment committed so far, whose rows
+     * of this segment are skipped, null to load every row
+     * @return the loaded records
+     * @throws IOException
+     * @throws SQLException
+     */
+    private int loadOneSegmentData(File segmentFile, Connection dataMartConnection, int testID,
+                                   ImportLedger.Progress progress) throws IOException, SQLException{
+        SegmentReader reader = new SegmentReader(segmentFile);
+        PreparedStatement ps = null;
+        String part = segmentFile.getName();
+        int recordCount = 0, skipped = 0;
+        try {
+            List<FieldAttribute> columns = reader.getColumns();
+            StringBuilder fieldList = new StringBuilder();
+            StringBuilder questionMarkList = new StringBuilder();
+            for (FieldAttribute column : columns) {
+                fieldList.append(column.getFieldName()).append(",");
+                questionMarkList.append("?,");
+            }
+            String insert = "insert into " + reader.getTableName() + "(" + fieldList + SegmentFormat.TIME_COLUMN + ","
+                            + dataMart.getTestID().getFieldName() + ") values(" + questionMarkList + "?,?)";
+            ps = dataMartConnection.prepareStatement(insert);
+
+            int fieldCount;
+            Object value;
+            long started = System.nanoTime();
+            if (progress != null){
+                long committed = progress.getRowsLoaded(part);
+                while (skipped < committed && reader.next())
+                    skipped++;
+                recordCount = skipped;
+            }
+            while (reader.next()){
+                for (fieldCount = 0; fieldCount < columns.size(); fieldCount++){
+                    value = reader.getValue(fieldCount);
+                    if (value != null)
+                        columns.get(fieldCount).getFieldType().addToSqlPreparedStatement(ps, fieldCount+1, value);
+                    else
+                        ps.setObject(fieldCount+1, null);
+                }
+                ps.setTimestamp(++fieldCount, new Timestamp(reader.getTimestamp()));
+                ps.setInt(++fieldCount, testID);
+                addRow(ps, dataMartConnection, ++recordCount, progress, part);
+            }
+            finishRows(ps, recordCount, skipped, progress, part);
+            recordCount -= skipped;
+            logLoadRate(reader.getTableName(), recordCount, started);
+            if (!reader.isSealed()) {
+                logger.warn(segmentFile + " was not closed by the extractor, loaded its complete blocks only.");
+            }
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(null,null,ps,null);
+            reader.close();
+        }
+        return recordCount;
     }
 
     /**
@@ -128,6 +548,13 @@ public class DB2DB {
     private Connection connectToSourceDatabase(String sourceDatabaseFileName){
         DBHandler sourceDatabase = sources.getSourceDatabase();
         Properties userInfo = sources.getDbInfo().getUserInfo();
+        if (incremental){
+            // Opened without writing to its files, so that they still match their fingerprint in the import ledger
+            Properties readOnly = new Properties();
+            readOnly.putAll(userInfo);
+            readOnly.put("hsqldb.files_readonly", "true");
+            userInfo = readOnly;
+        }
 
         if (sourceDatabase.databaseExists(sourceDatabaseFileName, userInfo))
             return sourceDatabase.connectDatabase(sourceDatabaseFileName, userInfo);
@@ -251,18 +678,22 @@ public class DB2DB {
      * @param dataMartConnection
      * @param testID
      * @param sourceDatabaseTables
+     * @param progress the rows of each table committed so far, null if not in incremental mode
      * @throws SQLException
      */
-    private void loadAllTablesDataExceptMain(Connection sourceConnection, Connection dataMartConnection, int testID, Map<String,Map> sourceDatabaseTables) throws SQLException{
+    private void loadAllTablesDataExceptMain(Connection sourceConnection, Connection dataMartConnection, int testID,
+                                             Map<String,Map> sourceDatabaseTables, ImportLedger.Progress progress) throws SQLException{
 
         int  tableCount =0, recordCount = 0;
         Map<String,FieldAttribute>  fieldInfo;
         String tableName;
-        for (Map.Entry<String, Map> table : sourceDatabaseTables.entrySet()) {
+        Map<String,Map> sortedTables = new TreeMap<String, Map>(TABLE_ORDER);
+        sortedTables.putAll(sourceDatabaseTables);
+        for (Map.Entry<String, Map> table : sortedTables.entrySet()) {
             tableName = table.getKey();
             if (tableName.equalsIgnoreCase(dataMart.getMainTableName())) continue; //in case the source database has the "maintable"
             fieldInfo= (Map<String, FieldAttribute>)table.getValue();
-            recordCount += loadOneTableData(fieldInfo, tableName, sourceConnection, dataMartConnection, testID);
+            recordCount += loadOneTableData(fieldInfo, tableName, sourceConnection, dataMartConnection, testID, progress);
             tableCount ++;
         }
 
@@ -271,19 +702,22 @@ public class DB2DB {
     }
 
     /**
-     * Load the specific table data from source database from data mart
+     * Load the specific table data from source database from data mart,
+     * after the rows committed by an interrupted import. The rows of an
+     * unchanged source table are read back in the same order.
      * @param fieldInfo
      * @param tableName
      * @param sourceConnection
      * @param dataMartConnection
      * @param testID
+     * @param progress the rows of each table committed so far, null to load every row
      * @return the loaded records
      * @throws SQLException
      */
-    private int loadOneTableData(Map<String,FieldAttribute>  fieldInfo, String tableName,
-                                 Connection sourceConnection, Connection dataMartConnection ,int testID) throws SQLException{
+    private int loadOneTableData(Map<String,FieldAttribute>  fieldInfo, String tableName, Connection sourceConnection,
+                                 Connection dataMartConnection, int testID, ImportLedger.Progress progress) throws SQLException{
         PreparedStatement ps1 = null ,ps = null ;
-        int fieldCount = 0, recordCount=0;
+        int fieldCount = 0, recordCount=0, skipped = 0;
         ResultSet rs = null;
         String testIDName = dataMart.getTestID().getFieldName();
         StringBuilder fieldList = new StringBuilder();
@@ -298,32 +732,186 @@ public class DB2DB {
             questionMarkList.append("?,");
         }
 
-        query =  "select " + fieldList.toString() + "1 from " + tableName;
-        ps1 = sourceConnection.prepareStatement(query);
-        rs = ps1.executeQuery();
-
-        insert = "insert into " + tableName + "(" + fieldList.toString()  + testIDName + ") values(" + questionMarkList + "?)";
-        ps = dataMartConnection.prepareStatement(insert);
-        fields = fieldList.toString().split(",");
-
-        while (rs.next()){
+        try {
+            query =  "select " + fieldList.toString() + "1 from " + tableName;
+            if (progress != null)
+                query += orderOfRows(fieldInfo, testIDName);
+            // Stream the rows instead of letting the driver read the whole table at once
+            ps1 = sourceConnection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps1.setFetchSize(fetchSize);
+            rs = ps1.executeQuery();
+
+            insert = "insert into " + tableName + "(" + fieldList.toString()  + testIDName + ") values(" + questionMarkList + "?)";
+            ps = dataMartConnection.prepareStatement(insert);
+            fields = fieldList.toString().split(",");
+
+            // The query selects the fields in order, so field i is column i+1 of both statements
+            DataType[] types = new DataType[fields.length];
             for (fieldCount =0; fieldCount<fields.length; fieldCount++){
-                col = fields[fieldCount];
-                attributes =fieldInfo.get(col);
-                if (rs.getObject(col)!=null)
-                    attributes.getFieldType().addToSqlPreparedStatement(ps,fieldCount+1,rs.getObject(col));
-                else
-                    ps.setObject(fieldCount+1,null);
+                attributes =fieldInfo.get(fields[fieldCount]);
+                types[fieldCount] = attributes.getFieldType();
             }
-            ps.setInt(++fieldCount, testID);
-            ps.executeUpdate();
-            recordCount ++;
+
+            long started = System.nanoTime();
+            if (progress != null){
+                long committed = progress.getRowsLoaded(tableName);
+                while (skipped < committed && rs.next())
+                    skipped++;
+                recordCount = skipped;
+            }
+            while (rs.next()){
+                for (fieldCount =0; fieldCount<fields.length; fieldCount++){
+                    copyValue(types[fieldCount], rs, ps, fieldCount+1);
+                }
+                ps.setInt(++fieldCount, testID);
+                addRow(ps, dataMartConnection, ++recordCount, progress, tableName);
+            }
+            finishRows(ps, recordCount, skipped, progress, tableName);
+            recordCount -= skipped;
+            logLoadRate(tableName, recordCount, started);
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(rs,null,ps,null);
+            DBHandler.releaseDatabaseResource(null,null,ps1,null);
         }
-        DBHandler.releaseDatabaseResource(rs,null,ps,null);
-        DBHandler.releaseDatabaseResource(null,null,ps1,null);
         return recordCount;
     }
 
+    /**
+     * The rows of a table are read in the same order by every import of a
+     * file, so that a resumed import skips the rows committed before
+     * @return an order by the time column, then by the other columns that
+     * can be compared
+     */
+    private static String orderOfRows(Map<String,FieldAttribute> fieldInfo, String testIDName){
+        StringBuilder order = new StringBuilder();
+        for (String col : fieldInfo.keySet())
+            if (col.equalsIgnoreCase(SegmentFormat.TIME_COLUMN))
+                order.append(col);
+        for (Map.Entry<String, FieldAttribute> field : fieldInfo.entrySet()) {
+            String col = field.getKey();
+            if (col.equalsIgnoreCase(SegmentFormat.TIME_COLUMN) || col.equalsIgnoreCase(testIDName)
+                    || field.getValue().getFieldType() == null || field.getValue().getFieldType() == DataType.UNKNOWN)
+                continue;
+            order.append(order.length() > 0 ? "," : "").append(col);
+        }
+        return order.length() > 0 ? " order by " + order : "";
+    }
+
+    /**
+     * Copy a value from the current row to the same column of the insert,
+     * with the getter and setter of its type so that numbers are not boxed
+     * @param type the type of the column, null if it is not a supported type
+     * @param rs
+     * @param ps
+     * @param column
+     * @throws SQLException
+     */
+    private static void copyValue(DataType type, ResultSet rs, PreparedStatement ps, int column) throws SQLException{
+        if (type == null){
+            ps.setObject(column, rs.getObject(column));
+            return;
+        }
+        switch (type){
+            case BYTE:  //SMALLINT columns are found as BYTE, read them whole
+            case SHORT:
+                short shortValue = rs.getShort(column);
+                if (rs.wasNull()) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setShort(column, shortValue);
+                break;
+            case INT:
+                int intValue = rs.getInt(column);
+                if (rs.wasNull()) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setInt(column, intValue);
+                break;
+            case LONG:
+                long longValue = rs.getLong(column);
+                if (rs.wasNull()) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setLong(column, longValue);
+                break;
+            case FLOAT:  //JDBC FLOAT is double precision
+            case DOUBLE:
+                double doubleValue = rs.getDouble(column);
+                if (rs.wasNull()) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setDouble(column, doubleValue);
+                break;
+            case BOOLEAN:
+                boolean booleanValue = rs.getBoolean(column);
+                if (rs.wasNull()) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setBoolean(column, booleanValue);
+                break;
+            case CHAR:
+            case STRING:
+                String stringValue = rs.getString(column);
+                if (stringValue == null) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setString(column, stringValue);
+                break;
+            case DATETIME:
+                Timestamp timestampValue = rs.getTimestamp(column);
+                if (timestampValue == null) ps.setNull(column, type.getJdbcTypeID());
+                else ps.setTimestamp(column, timestampValue);
+                break;
+            default:
+                Object value = rs.getObject(column);
+                if (value == null) ps.setObject(column, null);
+                else type.addToSqlPreparedStatement(ps, column, value);
+        }
+    }
+
+    /**
+     * Add the row set on the insert statement to its batch, send the batch
+     * once it is full and commit every commitInterval rows, together with
+     * the progress of the import
+     * @param ps
+     * @param dataMartConnection
+     * @param rowCount the rows of the table so far, including this one
+     * @param progress the progress of the import, null if not in incremental mode
+     * @param part the table, or segment file, in the progress
+     * @throws SQLException
+     */
+    private void addRow(PreparedStatement ps, Connection dataMartConnection, int rowCount,
+                        ImportLedger.Progress progress, String part) throws SQLException{
+        ps.addBatch();
+        boolean commit = commitInterval > 0 && rowCount % commitInterval == 0;
+        if (commit || rowCount % batchSize == 0)
+            ps.executeBatch();
+        if (commit){
+            if (progress != null){
+                // Written just before the commit, so that the progress table is the last one a worker locks
+                progress.setRowsLoaded(part, rowCount);
+                ledger.saveProgress(dataMartConnection, progress);
+            }
+            dataMartConnection.commit();
+        }
+    }
+
+    /**
+     * Send the rows left in the last, partial batch. Their progress is
+     * written with the next commit.
+     * @param ps
+     * @param rowCount the rows of the table
+     * @param skipped the rows committed before, that were not added again
+     * @param progress the progress of the import, null if not in incremental mode
+     * @param part the table, or segment file, in the progress
+     * @throws SQLException
+     */
+    private void finishRows(PreparedStatement ps, int rowCount, int skipped,
+                            ImportLedger.Progress progress, String part) throws SQLException{
+        boolean sent = rowCount == skipped || rowCount % batchSize == 0
+                       || (commitInterval > 0 && rowCount % commitInterval == 0);
+        if (!sent)
+            ps.executeBatch();
+        if (progress != null)
+            progress.setRowsLoaded(part, rowCount);
+    }
+
+    private void logLoadRate(String tableName, int rowCount, long started){
+        long nanos = System.nanoTime() - started;
+        long rowsPerSecond = nanos > 0 ? rowCount * 1000000000L / nanos : 0;
+        logger.info("Loaded " + rowCount + " rows into " + tableName + " in " + nanos / 1000000 + " ms, "
+                    + rowsPerSecond + " rows/s.");
+    }
+
 
 
 
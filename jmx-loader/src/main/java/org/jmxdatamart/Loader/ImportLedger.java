@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jmxdatamart.Loader;
+
+import org.jmxdatamart.common.*;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * The source files imported to the data mart, by path, size and content
+ * hash, and how many rows of each of their tables have been committed. It
+ * is kept in the data mart itself, so that it is committed together with
+ * the rows it describes: a file whose import was interrupted resumes after
+ * its last committed batch, and a completed file that hasn't changed since
+ * is skipped.
+ */
+public class ImportLedger {
+    private static final String LEDGER_TABLE = "importLedger";
+    private static final String PROGRESS_TABLE = "importProgress";
+    private final DataType.SupportedDatabase databaseType;
+    private final FieldAttribute importFile = new FieldAttribute("importFile", DataType.STRING, false);
+    private final FieldAttribute fileSize = new FieldAttribute("fileSize", DataType.LONG, false);
+    private final FieldAttribute contentHash = new FieldAttribute("contentHash", DataType.STRING, false);
+    private final FieldAttribute testId = new FieldAttribute("testId", DataType.LONG, false);
+    private final FieldAttribute completed = new FieldAttribute("completed", DataType.BOOLEAN, false);
+    private final FieldAttribute part = new FieldAttribute("part", DataType.STRING, false);
+    private final FieldAttribute rowsLoaded = new FieldAttribute("rowsLoaded", DataType.LONG, false);
+
+    /**
+     * The size and content hash of the files making up a source
+     */
+    public static class Fingerprint {
+        private final long size;
+        private final String hash;
+
+        public Fingerprint(long size, String hash) {
+            this.size = size;
+            this.hash = hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Fingerprint))
+                return false;
+            Fingerprint other = (Fingerprint) obj;
+            return size == other.size && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+
+    /**
+     * What the ledger knows of a source file
+     */
+    public static class Entry {
+        private final Fingerprint fingerprint;
+        private final int testId;
+        private final boolean completed;
+
+        public Entry(Fingerprint fingerprint, int testId, boolean completed) {
+            this.fingerprint = fingerprint;
+            this.testId = testId;
+            this.completed = completed;
+        }
+
+        public Fingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        public int getTestId() {
+            return testId;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    /**
+     * The rows of each table of a file committed so far, and those loaded
+     * since that are saved with the next commit
+     */
+    public static class Progress {
+        private final String importFile;
+        private final Map<String,Long> rows = new HashMap<String, Long>();
+        private final Map<String,Long> pending = new LinkedHashMap<String, Long>();
+
+        private Progress(String importFile) {
+            this.importFile = importFile;
+        }
+
+        public long getRowsLoaded(String part) {
+            Long loaded = rows.get(part);
+            return loaded == null ? 0 : loaded;
+        }
+
+        public void setRowsLoaded(String part, long count) {
+            rows.put(part, count);
+            pending.put(part, count);
+        }
+    }
+
+    public ImportLedger(DataType.SupportedDatabase databaseType) {
+        this.databaseType = databaseType;
+    }
+
+    /**
+     * @return the size and content hash of the files, in the given order,
+     * leaving out those that don't exist
+     * @throws IOException
+     */
+    public static Fingerprint fingerprint(List<File> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long size = 0;
+        byte[] buffer = new byte[65536];
+        for (File file : files) {
+            if (!file.isFile())
+                continue;
+            InputStream in = new FileInputStream(file);
+            try {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return new Fingerprint(size, hash.toString());
+    }
+
+    /**
+     * @return whether a data mart table is one of the ledger's
+     */
+    public boolean isLedgerTable(String table) {
+        return table.equalsIgnoreCase(LEDGER_TABLE) || table.equalsIgnoreCase(PROGRESS_TABLE);
+    }
+
+    /**
+     * Add the ledger tables to the data mart if it doesn't have them yet
+     * @param conn
+     */
+    public void createTables(Connection conn) {
+        if (!DBHandler.tableExists(LEDGER_TABLE, conn)) {
+            DBHandler.addTable(conn, LEDGER_TABLE, importFile, databaseType);
+            for (FieldAttribute field : new FieldAttribute[]{fileSize, contentHash, testId, completed})
+                DBHandler.addColumn(conn, LEDGER_TABLE, field, databaseType);
+        }
+        if (!DBHandler.tableExists(PROGRESS_TABLE, conn)) {
+            DBHandler.addTable(conn, PROGRESS_TABLE, importFile, databaseType);
+            for (FieldAttribute field : new FieldAttribute[]{part, rowsLoaded})
+                DBHandler.addColumn(conn, PROGRESS_TABLE, field, databaseType);
+        }
+    }
+
+    /**
+     * @return the entry of a source file, null if it has never been imported
+     * @throws SQLException
+     */
+    public Entry find(Connection conn, String file) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement("select " + fileSize.getFieldName() + "," + contentHash.getFieldName() + ","
+                    + testId.getFieldName() + "," + completed.getFieldName() + " from " + LEDGER_TABLE
+                    + " where " + importFile.getFieldName() + " = ?");
+            ps.setString(1, file);
+            rs = ps.executeQuery();
+            if (!rs.next())
+                return null;
+            return new Entry(new Fingerprint(rs.getLong(1), rs.getString(2)), rs.getInt(3), rs.getBoolean(4));
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(rs, null, ps, null);
+        }
+    }
+
+    /**
+     * @return the test id after the highest one in the ledger, which may
+     * belong to a file whose import isn't completed yet
+     * @throws SQLException
+     */
+    public int getNextTestID(Connection conn) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement("select max(" + testId.getFieldName() + ") from " + LEDGER_TABLE);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getInt(1) + 1 : 1;
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(rs, null, ps, null);
+        }
+    }
+
+    /**
+     * Record that a file is being imported as the given test, forgetting any
+     * previous import of it
+     * @throws SQLException
+     */
+    public void start(Connection conn, String file, Fingerprint fingerprint, int test) throws SQLException {
+        delete(conn, LEDGER_TABLE, file);
+        delete(conn, PROGRESS_TABLE, file);
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement("insert into " + LEDGER_TABLE + "(" + importFile.getFieldName() + ","
+                    + fileSize.getFieldName() + "," + contentHash.getFieldName() + "," + testId.getFieldName() + ","
+                    + completed.getFieldName() + ") values(?,?,?,?,?)");
+            ps.setString(1, file);
+            ps.setLong(2, fingerprint.getSize());
+            ps.setString(3, fingerprint.getHash());
+            ps.setLong(4, test);
+            ps.setBoolean(5, false);
+            ps.executeUpdate();
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(null, null, ps, null);
+        }
+    }
+
+    /**
+     * @return the rows of each table of the file committed so far
+     * @throws SQLException
+     */
+    public Progress loadProgress(Connection conn, String file) throws SQLException {
+        Progress progress = new Progress(file);
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement("select " + part.getFieldName() + "," + rowsLoaded.getFieldName()
+                    + " from " + PROGRESS_TABLE + " where " + importFile.getFieldName() + " = ?");
+            ps.setString(1, file);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                progress.rows.put(rs.getString(1), rs.getLong(2));
+            }
+            return progress;
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(rs, null, ps, null);
+        }
+    }
+
+    /**
+     * Write the rows loaded since the last save, to be committed with them
+     * @throws SQLException
+     */
+    public void saveProgress(Connection conn, Progress progress) throws SQLException {
+        if (progress.pending.isEmpty())
+            return;
+        PreparedStatement update = null, insert = null;
+        try {
+            update = conn.prepareStatement("update " + PROGRESS_TABLE + " set " + rowsLoaded.getFieldName() + " = ? where "
+                    + importFile.getFieldName() + " = ? and " + part.getFieldName() + " = ?");
+            for (Map.Entry<String,Long> loaded : progress.pending.entrySet()) {
+                update.setLong(1, loaded.getValue());
+                update.setString(2, progress.importFile);
+                update.setString(3, loaded.getKey());
+                if (update.executeUpdate() > 0)
+                    continue;
+                if (insert == null)
+                    insert = conn.prepareStatement("insert into " + PROGRESS_TABLE + "(" + importFile.getFieldName() + ","
+                            + part.getFieldName() + "," + rowsLoaded.getFieldName() + ") values(?,?,?)");
+                insert.setString(1, progress.importFile);
+                insert.setString(2, loaded.getKey());
+                insert.setLong(3, loaded.getValue());
+                insert.executeUpdate();
+            }
+            progress.pending.clear();
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(null, null, update, null);
+            DBHandler.releaseDatabaseResource(null, null, insert, null);
+        }
+    }
+
+    /**
+     * Record that a file is imported, as it looks now
+     * @throws SQLException
+     */
+    public void complete(Connection conn, String file, Fingerprint fingerprint) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement("update " + LEDGER_TABLE + " set " + fileSize.getFieldName() + " = ?,"
+                    + contentHash.getFieldName() + " = ?," + completed.getFieldName() + " = ? where "
+                    + importFile.getFieldName() + " = ?");
+            ps.setLong(1, fingerprint.getSize());
+            ps.setString(2, fingerprint.getHash());
+            ps.setBoolean(3, true);
+            ps.setString(4, file);
+            ps.executeUpdate();
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(null, null, ps, null);
+        }
+        delete(conn, PROGRESS_TABLE, file);
+    }
+
+    private void delete(Connection conn, String table, String file) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement("delete from " + table + " where " + importFile.getFieldName() + " = ?");
+            ps.setString(1, file);
+            ps.executeUpdate();
+        }
+        finally {
+            DBHandler.releaseDatabaseResource(null, null, ps, null);
+        }
+    }
+}
@@ -73,6 +73,11 @@ public class Setting {
 
     private DBInfo source, target;
     private Properties additional;
+    private int batchSize = 1000;
+    private int commitInterval = 0;
+    private int threads = 1;
+    private int fetchSize = 1000;
+    private boolean incremental = false;
 
     public DBInfo getSource() {
         return source;
@@ -91,6 +96,67 @@ public class Setting {
         this.additional = additional;
     }
 
+    /**
+     * @return the number of rows sent to the data mart in one JDBC batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return the number of rows of a table after which the data mart is
+     * committed, 0 to commit once per source file. Only used in incremental
+     * mode, where an interrupted import resumes after its last commit.
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = Math.max(0, commitInterval);
+    }
+
+    /**
+     * @return the number of source files loaded at the same time, each over
+     * a connection of its own to the data mart. With more than one, files
+     * get their test ids in the order they are opened.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return the number of rows the source database driver is asked to
+     * read at a time
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = Math.max(0, fetchSize);
+    }
+
+    /**
+     * @return whether source files already in the import ledger are skipped,
+     * and interrupted imports resumed, instead of importing every file again
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     private DataType.SupportedDatabase getSupportedDatabaseType(String type){
         if (type.equalsIgnoreCase("derbydb"))
             return DataType.SupportedDatabase.DERBY;
@@ -148,6 +214,16 @@ public class Setting {
                         target.userInfo.put("user",property);
                     else if(key.equalsIgnoreCase("target.password"))
                         target.userInfo.put("password", property);
+                    else if(key.equalsIgnoreCase("load.batchsize"))
+                        setBatchSize(Integer.parseInt(property.trim()));
+                    else if(key.equalsIgnoreCase("load.commitinterval"))
+                        setCommitInterval(Integer.parseInt(property.trim()));
+                    else if(key.equalsIgnoreCase("load.threads"))
+                        setThreads(Integer.parseInt(property.trim()));
+                    else if(key.equalsIgnoreCase("load.fetchsize"))
+                        setFetchSize(Integer.parseInt(property.trim()));
+                    else if(key.equalsIgnoreCase("load.incremental"))
+                        setIncremental(Boolean.parseBoolean(property.trim()));
                 }
             }
         }
@@ -33,6 +33,7 @@ import java.util.*;
 
 public class SourceDB {
     private Set<String> databaseFiles;
+    private Set<String> segmentDirectories;
     private DBHandler sourceDatabase;
     private Setting.DBInfo dbInfo;
 
@@ -47,6 +48,13 @@ public class SourceDB {
         return databaseFiles;
     }
 
+    /**
+     * @return the directories of segment files written by the extractor
+     */
+    public Set<String> getSegmentDirectories() {
+        return segmentDirectories;
+    }
+
     public SourceDB(Setting.DBInfo dbInfo, File folderLocation) {
         this.dbInfo = dbInfo;
         if (dbInfo.getDatabaseType().equals(DataType.SupportedDatabase.HSQL))
@@ -57,9 +65,13 @@ public class SourceDB {
             throw new RuntimeException("Doesn't support this source database type");
 
         databaseFiles = new TreeSet<String>();
+        segmentDirectories = new TreeSet<String>();
         String fileName, databaseName;
         for (final File fileEntry : folderLocation.listFiles()) {
-            if (fileEntry.isFile()) {
+            if (SegmentFormat.isSegmentDirectory(fileEntry)) {
+                segmentDirectories.add(fileEntry.getAbsolutePath());
+            }
+            else if (fileEntry.isFile()) {
                 fileName= fileEntry.getName();
                 databaseName = fileName.split("\\.")[0];
                 if (databaseName.trim().length()>0)
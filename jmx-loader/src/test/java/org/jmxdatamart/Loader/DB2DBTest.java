@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.Loader;
+
+import junit.framework.TestCase;
+import org.jmxdatamart.common.HypersqlHandler;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Loads extractor database files written to a temporary folder into an
+ * in-memory HSQL data mart
+ */
+public class DB2DBTest extends TestCase {
+    private static int dataMarts;
+    private File folder;
+    private String dataMartName;
+    // Kept open so that the in-memory data mart outlives the loader's connections
+    private Connection dataMart;
+
+    @Override
+    protected void setUp() throws Exception {
+        HypersqlHandler hsql = new HypersqlHandler();
+        hsql.loadDriver(hsql.getDriver());
+        folder = File.createTempFile("DB2DB", "");
+        folder.delete();
+        folder.mkdir();
+        dataMartName = "mem:DB2DBTest" + ++dataMarts;
+        dataMart = DriverManager.getConnection("jdbc:hsqldb:" + dataMartName, "sa", "");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new HypersqlHandler().shutdownDatabase(dataMart);
+        dataMart.close();
+        delete(folder);
+    }
+
+    public void testPartialLastBatchIsLoaded() throws Exception {
+        createSource("run", 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        load("load.batchSize=3");
+
+        assertEquals("1;2;3;4;5;6;7;8;9;10", rows("select used from Memory order by used"));
+        assertEquals("1", rows("select distinct testId from Memory"));
+        assertEquals("1", rows("select testId from mainTable"));
+    }
+
+    public void testFailedFileCommitsNothingWithoutIncremental() throws Exception {
+        // The data mart rejects the eighth value
+        execute("create table Memory(testId bigint, used bigint constraint small check (used < 100000), time timestamp)");
+        createSource("run", 1, 2, 3, 4, 5, 6, 7, 100000, 9, 10);
+        try {
+            load("load.batchSize=2", "load.commitInterval=2");
+            fail("The file should have failed to load");
+        }
+        catch (SQLException expected) {
+        }
+
+        assertEquals("0", rows("select count(*) from Memory"));
+        assertEquals("0", rows("select count(*) from mainTable"));
+    }
+
+    public void testResumedTableLoadsTheRestInPartialBatches() throws Exception {
+        execute("create table Memory(testId bigint, used bigint constraint small check (used < 100000), time timestamp)");
+        createSource("run", 1, 2, 3, 4, 5, 6, 7, 8, 100000, 10);
+        try {
+            load("load.batchSize=3", "load.commitInterval=4", "load.incremental=true");
+            fail("The file should have failed to load");
+        }
+        catch (SQLException expected) {
+        }
+        assertEquals("1;2;3;4;5;6;7;8", rows("select used from Memory order by used"));
+
+        // Resumed after the eighth row, the last two are sent in batches of one
+        execute("alter table Memory drop constraint small");
+        load("load.batchSize=3", "load.commitInterval=4", "load.incremental=true");
+        assertEquals("1;2;3;4;5;6;7;8;10;100000", rows("select used from Memory order by used"));
+        assertEquals("1", rows("select distinct testId from Memory"));
+        assertEquals("1", rows("select testId from mainTable"));
+    }
+
+    public void testParallelFilesGetDistinctTestIds() throws Exception {
+        createSource("a", 1);
+        createSource("b", 1, 2);
+        createSource("c", 1, 2, 3);
+        createSource("d", 1, 2, 3, 4);
+        load("load.threads=3");
+
+        assertEquals("1;2;3;4", rows("select testId from mainTable order by testId"));
+        // Every file's rows under a test id of their own
+        assertEquals("1;2;3;4", rows("select count(*) from Memory group by testId order by 1"));
+    }
+
+    public void testInvalidFileGetsNoTestId() throws Exception {
+        createSource("a", 1);
+        PrintWriter out = new PrintWriter(new File(folder, "b.script"));
+        out.println("not a database");
+        out.close();
+        createSource("c", 3);
+        load();
+
+        assertEquals("1;2", rows("select testId from mainTable order by testId"));
+        assertEquals("1;3", rows("select used from Memory order by testId"));
+    }
+
+    public void testFailedFileDoesNotAbortTheOthers() throws Exception {
+        execute("create table Memory(testId bigint, used bigint constraint small check (used < 100000), time timestamp)");
+        createSource("a", 1, 2);
+        createSource("b", 3, 100000);
+        createSource("c", 5, 6);
+        try {
+            load("load.threads=2");
+            fail("The second file should have failed to load");
+        }
+        catch (SQLException expected) {
+        }
+
+        assertEquals("1;2;5;6", rows("select used from Memory order by used"));
+        assertEquals("2", rows("select count(*) from mainTable"));
+    }
+
+    public void testRecreatedDataMartIsLoadedAgain() throws Exception {
+        createSource("run", 1, 2);
+        load();
+        new HypersqlHandler().shutdownDatabase(dataMart);
+        dataMart.close();
+        // The same in-memory data mart, without the tables of the first load
+        dataMart = DriverManager.getConnection("jdbc:hsqldb:" + dataMartName, "sa", "");
+        load();
+
+        assertEquals("1;2", rows("select used from Memory order by used"));
+        assertEquals("1", rows("select testId from mainTable"));
+    }
+
+    public void testCompletedFileIsSkipped() throws Exception {
+        createSource("run", 1, 2, 3);
+        load("load.incremental=true");
+        load("load.incremental=true");
+
+        assertEquals("1;2;3", rows("select used from Memory order by used"));
+        assertEquals("1", rows("select testId from mainTable"));
+    }
+
+    public void testResumedFileIsReadInTimeOrder() throws Exception {
+        execute("create table Memory(testId bigint, used bigint constraint small check (used < 100000), time timestamp)");
+        // Written latest first, with the value the data mart rejects in the middle
+        createSource("run", new long[]{10, 9, 8, 7, 6, 100000, 5, 4, 3, 2, 1},
+                            new long[]{10000, 9000, 8000, 7000, 6000, 5500, 5000, 4000, 3000, 2000, 1000});
+        try {
+            load("load.batchSize=1", "load.commitInterval=2", "load.incremental=true");
+            fail("The file should have failed to load");
+        }
+        catch (SQLException expected) {
+        }
+        assertEquals("1;2;3;4", rows("select used from Memory order by used"));
+
+        execute("alter table Memory drop constraint small");
+        load("load.batchSize=1", "load.commitInterval=2", "load.incremental=true");
+        assertEquals("1;2;3;4;5;6;7;8;9;10;100000", rows("select used from Memory order by used"));
+        assertEquals("1", rows("select distinct testId from Memory"));
+        assertEquals("1", rows("select testId from mainTable"));
+    }
+
+    public void testChangedFileIsImportedAsNewTest() throws Exception {
+        createSource("run", 1, 2);
+        load("load.incremental=true");
+        for (File file : folder.listFiles())
+            if (file.getName().startsWith("run."))
+                delete(file);
+        createSource("run", 3, 4, 5);
+        load("load.incremental=true");
+
+        assertEquals("1;2", rows("select testId from mainTable order by testId"));
+        assertEquals("2;3", rows("select count(*) from Memory group by testId order by testId"));
+    }
+
+    public void testInterruptedThenChangedFileIsImportedAgain() throws Exception {
+        execute("create table Memory(testId bigint, used bigint constraint small check (used < 100000), time timestamp)");
+        createSource("run", 1, 2, 3, 4, 100000, 6);
+        try {
+            load("load.batchSize=1", "load.commitInterval=2", "load.incremental=true");
+            fail("The file should have failed to load");
+        }
+        catch (SQLException expected) {
+        }
+        assertEquals("1;2;3;4", rows("select used from Memory order by used"));
+
+        // The rows committed before the interruption don't stay behind
+        for (File file : folder.listFiles())
+            if (file.getName().startsWith("run."))
+                delete(file);
+        createSource("run", 7, 8, 9);
+        load("load.batchSize=1", "load.commitInterval=2", "load.incremental=true");
+        assertEquals("7;8;9", rows("select used from Memory order by used"));
+        assertEquals("1", rows("select distinct testId from Memory"));
+        assertEquals("1", rows("select testId from mainTable"));
+    }
+
+    /**
+     * Write an extractor database file with a Memory table holding the
+     * values, one second apart
+     */
+    private void createSource(String name, long... used) throws SQLException {
+        long[] times = new long[used.length];
+        for (int i = 0; i < used.length; i++)
+            times[i] = i * 1000L;
+        createSource(name, used, times);
+    }
+
+    /**
+     * Write an extractor database file with a Memory table holding the
+     * values, in the given order, at the given times
+     */
+    private void createSource(String name, long[] used, long[] times) throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:hsqldb:file:" + new File(folder, name).getPath(), "sa", "");
+        try {
+            conn.createStatement().execute("create table Memory(used bigint, time timestamp)");
+            PreparedStatement ps = conn.prepareStatement("insert into Memory(used, time) values(?,?)");
+            for (int i = 0; i < used.length; i++) {
+                ps.setLong(1, used[i]);
+                ps.setTimestamp(2, new Timestamp(times[i]));
+                ps.executeUpdate();
+            }
+            ps.close();
+        }
+        finally {
+            new HypersqlHandler().shutdownDatabase(conn);
+            conn.close();
+        }
+    }
+
+    private void load(String... properties) throws Exception {
+        File settings = File.createTempFile("loader", ".ini");
+        try {
+            PrintWriter out = new PrintWriter(settings);
+            out.println("source.type=hsqldb");
+            out.println("source.user=sa");
+            out.println("source.password=");
+            out.println("target.type=hsqldb");
+            out.println("target.databaseName=" + dataMartName);
+            out.println("target.user=sa");
+            out.println("target.password=");
+            for (String property : properties)
+                out.println(property);
+            out.close();
+            new DB2DB(new Setting(settings.getPath()), folder).loadData();
+        }
+        finally {
+            settings.delete();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement st = dataMart.createStatement();
+        st.execute(sql);
+        st.close();
+    }
+
+    private String rows(String query) throws SQLException {
+        Statement st = dataMart.createStatement();
+        ResultSet rs = st.executeQuery(query);
+        StringBuilder rows = new StringBuilder();
+        while (rs.next())
+            rows.append(rows.length() > 0 ? ";" : "").append(rs.getObject(1));
+        rs.close();
+        st.close();
+        return rows.toString();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
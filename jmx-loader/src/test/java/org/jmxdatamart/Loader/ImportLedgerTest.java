@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013, Tripwire, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jmxdatamart.Loader;
+
+import junit.framework.TestCase;
+import org.jmxdatamart.common.DBHandler;
+import org.jmxdatamart.common.DataType;
+import org.jmxdatamart.common.HypersqlHandler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Arrays;
+
+/**
+ * Keeps the import ledger in an in-memory HSQL data mart
+ */
+public class ImportLedgerTest extends TestCase {
+    private static int dataMarts;
+    private Connection conn;
+    private ImportLedger ledger;
+
+    @Override
+    protected void setUp() throws Exception {
+        HypersqlHandler hsql = new HypersqlHandler();
+        hsql.loadDriver(hsql.getDriver());
+        conn = DriverManager.getConnection("jdbc:hsqldb:mem:ImportLedgerTest" + ++dataMarts, "sa", "");
+        ledger = new ImportLedger(DataType.SupportedDatabase.HSQL);
+        ledger.createTables(conn);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new HypersqlHandler().shutdownDatabase(conn);
+        DBHandler.releaseDatabaseResource(null, null, null, conn);
+    }
+
+    public void testStartedImportIsFoundUncompleted() throws Exception {
+        ImportLedger.Fingerprint fingerprint = new ImportLedger.Fingerprint(10, "abc");
+        assertNull(ledger.find(conn, "run"));
+        assertEquals(1, ledger.getNextTestID(conn));
+
+        ledger.start(conn, "run", fingerprint, 3);
+        ImportLedger.Entry entry = ledger.find(conn, "run");
+        assertEquals(fingerprint, entry.getFingerprint());
+        assertEquals(3, entry.getTestId());
+        assertFalse(entry.isCompleted());
+        assertEquals(4, ledger.getNextTestID(conn));
+    }
+
+    public void testProgressIsSavedUntilCompleted() throws Exception {
+        ledger.start(conn, "run", new ImportLedger.Fingerprint(10, "abc"), 1);
+        ImportLedger.Progress progress = ledger.loadProgress(conn, "run");
+        assertEquals(0, progress.getRowsLoaded("Memory"));
+
+        progress.setRowsLoaded("Memory", 8);
+        ledger.saveProgress(conn, progress);
+        progress.setRowsLoaded("Memory", 10);
+        progress.setRowsLoaded("Threads", 4);
+        ledger.saveProgress(conn, progress);
+        progress = ledger.loadProgress(conn, "run");
+        assertEquals(10, progress.getRowsLoaded("Memory"));
+        assertEquals(4, progress.getRowsLoaded("Threads"));
+
+        ImportLedger.Fingerprint changed = new ImportLedger.Fingerprint(12, "def");
+        ledger.complete(conn, "run", changed);
+        assertTrue(ledger.find(conn, "run").isCompleted());
+        assertEquals(changed, ledger.find(conn, "run").getFingerprint());
+        assertEquals(0, ledger.loadProgress(conn, "run").getRowsLoaded("Memory"));
+    }
+
+    public void testStartForgetsThePreviousImport() throws Exception {
+        ledger.start(conn, "run", new ImportLedger.Fingerprint(10, "abc"), 1);
+        ImportLedger.Progress progress = ledger.loadProgress(conn, "run");
+        progress.setRowsLoaded("Memory", 8);
+        ledger.saveProgress(conn, progress);
+
+        ledger.start(conn, "run", new ImportLedger.Fingerprint(12, "def"), 2);
+        assertEquals(2, ledger.find(conn, "run").getTestId());
+        assertEquals(0, ledger.loadProgress(conn, "run").getRowsLoaded("Memory"));
+    }
+
+    public void testFingerprintFollowsContent() throws Exception {
+        File first = File.createTempFile("ledger", ".script");
+        File second = File.createTempFile("ledger", ".log");
+        File missing = new File(first.getPath() + ".missing");
+        try {
+            write(first, "create table Memory");
+            write(second, "insert into Memory");
+            ImportLedger.Fingerprint fingerprint = ImportLedger.fingerprint(Arrays.asList(first, second));
+            assertEquals(first.length() + second.length(), fingerprint.getSize());
+            assertEquals(fingerprint, ImportLedger.fingerprint(Arrays.asList(first, missing, second)));
+
+            write(second, "insert into Memory values(1)");
+            assertFalse(fingerprint.equals(ImportLedger.fingerprint(Arrays.asList(first, second))));
+        }
+        finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+}